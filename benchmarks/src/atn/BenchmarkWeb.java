@@ -0,0 +1,102 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import metadata.Constants;
+import simulation.simjob.EcosystemTimesteps;
+import simulation.simjob.NodeTimesteps;
+import simulation.simjob.SimJob;
+import simulation.simjob.SimJobRandom;
+import simulation.simjob.SimJobSZT;
+import simulation.simjob.SimTestParams;
+
+/**
+ * A food web for the benchmarks, generated by SimJobRandom from the species
+ * and consume tables of the configured database, and set up as ATNEngine
+ * sets up a job.
+ *
+ * Webs are not pruned, so every web has the requested number of species
+ * (more nodes where a plant species has several).  The species are chosen
+ * from the given seed, so runs with the same seed and database benchmark the
+ * same web.
+ */
+final class BenchmarkWeb {
+
+    private static boolean paramsLoaded = false;
+
+    final SimJobRandom job;
+    final int[] nodeIDs;
+    final EcosystemTimesteps ecosysTimesteps;
+    final Map<Integer, NodeRelationships> ecosysRelationships;
+    final ATNWeb web;
+    final double[] initBiomass;  //as ATNEngine, divided by biomassScale
+
+    BenchmarkWeb(ATNEngine engine, int speciesCnt, int timesteps, long seed)
+            throws SQLException {
+        loadParams();
+
+        job = new SimJobRandom();
+        job.setMinSpecies(speciesCnt);
+        job.setMaxSpecies(speciesCnt);
+        job.setMaxBiomass(SimJobRandom.DFLT_MAX_BIOMASS);
+        job.setPpTotalBiomass(SimJobRandom.DFLT_PP_TOTAL_BIOMASS);
+        job.setPpPerUnitBiomass(SimJobRandom.DFLT_PP_PER_UNIT_BIOMASS);
+        job.setPpParamK(SimJobRandom.DFLT_PP_PARAMK);
+        job.setPrune(false);
+        job.setTimesteps(timesteps);
+        job.setSeed(seed);
+        job.configRandomSimJob();
+        nodeIDs = job.getSpeciesNodeList();
+
+        ecosysTimesteps = new EcosystemTimesteps();
+        ecosysRelationships = new HashMap<>();
+        engine.initEcosystem(job, ecosysTimesteps, ecosysRelationships);
+
+        //species order, parameters and initial biomass as genSpeciesDataset
+        int n = ecosysTimesteps.getNodeList().size();
+        int[] speciesID = new int[n];
+        SimJobSZT[] sztArray = new SimJobSZT[n];
+        initBiomass = new double[n];
+        int spNum = 0;
+        for (NodeTimesteps nodeTimesteps : ecosysTimesteps.getTimestepMapValues()) {
+            SimJobSZT sjSzt = job.getSpeciesZoneByNodeId(nodeTimesteps.getNodeId());
+            sztArray[spNum] = sjSzt;
+            speciesID[spNum] = sjSzt.getNodeIndex();
+            initBiomass[spNum] = nodeTimesteps.getBiomass(0) / Constants.BIOMASS_SCALE;
+            spNum++;
+        }
+        web = new ATNWeb(speciesID, sztArray, ecosysRelationships,
+                new LinkParams(ATNEngine.propertiesConfig));
+    }
+
+    //experimental node parameters, as loaded for simulation jobs
+    private static synchronized void loadParams() {
+        if (!paramsLoaded && SimJob.DFLT_USE_SIMTESTNODE_VALS) {
+            SimTestParams.load(Constants.ECOSYSTEM_TYPE);
+        }
+        paramsLoaded = true;
+    }
+
+    //engine whose dataset output is discarded
+    static ATNEngine newEngine() {
+        ATNEngine engine = new ATNEngine();
+        engine.setOutputStream(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        return engine;
+    }
+}
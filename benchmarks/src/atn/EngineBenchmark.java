@@ -0,0 +1,59 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of ATNEngine.genSpeciesDataset for a job whose ecosystem has
+ * already been set up: building the web and integrator, integrating every
+ * timestep and formatting the dataset (to a discarded stream), with the
+ * integrator and tolerance configured in SimJobConfig.properties.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EngineBenchmark {
+
+    @Param({"5", "15", "30", "60", "120"})
+    public int nodes;
+
+    @Param({"100", "400", "1000"})
+    public int timesteps;
+
+    @Param({"1"})
+    public long seed;
+
+    private ATNEngine engine;
+    private BenchmarkWeb bw;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        engine = BenchmarkWeb.newEngine();
+        bw = new BenchmarkWeb(engine, nodes, timesteps, seed);
+    }
+
+    @Benchmark
+    public void genSpeciesDataset() {
+        engine.genSpeciesDataset(bw.job, bw.ecosysTimesteps, bw.ecosysRelationships);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of BulirschStoerIntegration.performIntegration over a whole
+ * simulation: one invocation integrates the web for the given number of
+ * timesteps, as ATNEngine.genSpeciesDataset does, including copying out the
+ * contributions of each timestep.  Each invocation starts from a new
+ * integrator, so no step size carries over from the last one, and a failed
+ * integration fails the trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IntegrationBenchmark {
+
+    //as ATNEngine
+    private static final double TIME_INTVL = 0.1;
+
+    @Param({"5", "15", "30", "60", "120"})
+    public int nodes;
+
+    @Param({"100", "400", "1000"})
+    public int timesteps;
+
+    @Param({"1.0E-3", "1.0E-5"})
+    public double maxErr;
+
+    @Param({"1"})
+    public long seed;
+
+    private BenchmarkWeb bw;
+    private Integrator integrator;
+    private double[] biomass;
+    private double[][] contribs;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        bw = new BenchmarkWeb(BenchmarkWeb.newEngine(), nodes, timesteps, seed);
+        biomass = new double[bw.web.getSpeciesCnt()];
+        contribs = new double[biomass.length][biomass.length];
+    }
+
+    //one invocation is a whole simulation, long enough for per-invocation setup
+    @Setup(Level.Invocation)
+    public void newIntegrator() {
+        integrator = new BulirschStoerIntegration(TIME_INTVL, bw.web, maxErr);
+    }
+
+    @Benchmark
+    public double integrate() {
+        System.arraycopy(bw.initBiomass, 0, biomass, 0, biomass.length);
+        for (int t = 1; t < timesteps; t++) {
+            if (!integrator.performIntegration((t - 1) * TIME_INTVL, biomass)) {
+                throw new IllegalStateException("Integration failed at timestep " + t);
+            }
+            integrator.copyYNew(biomass);
+            integrator.copyContribs(contribs);
+        }
+        return biomass[0];
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import metadata.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import simulation.simjob.ConsumeMap;
+import simulation.simjob.PathTable;
+
+/**
+ * Throughput of the ecosystem setup done for every job before integration:
+ * ConsumeMap construction (which reads the consume tables from the
+ * database) and PathTable construction from a ConsumeMap.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WebSetupBenchmark {
+
+    @Param({"5", "15", "30", "60", "120"})
+    public int nodes;
+
+    @Param({"1"})
+    public long seed;
+
+    private int[] nodeIDs;
+    private ConsumeMap consumeMap;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        nodeIDs = new BenchmarkWeb(BenchmarkWeb.newEngine(), nodes, 1, seed).nodeIDs;
+        consumeMap = new ConsumeMap(nodeIDs, Constants.ECOSYSTEM_TYPE);
+    }
+
+    @Benchmark
+    public ConsumeMap consumeMap() throws SQLException {
+        return new ConsumeMap(nodeIDs, Constants.ECOSYSTEM_TYPE);
+    }
+
+    @Benchmark
+    public PathTable pathTable() throws SQLException {
+        return new PathTable(consumeMap, nodeIDs, !PathTable.PP_ONLY);
+    }
+}
@@ -32,6 +32,7 @@ import java.util.Map;
 
 import javax.swing.JFrame;
 
+import simulation.simjob.BiomassMatrix;
 import simulation.simjob.EcosystemTimesteps;
 import simulation.simjob.NodeTimesteps;
 import simulation.simjob.SimJobSZT;
@@ -119,7 +120,6 @@ public class ATN {
         //define objects to track species' contributions
         double[][][] contribs = new double[timesteps][speciesCnt][speciesCnt];
         double[][] calcBiomass = new double[timesteps][speciesCnt];
-        double[][] contribsT; //current timestep
 
         //note: WebServices ATN Model uses B0 with default = 0.5.  This presumes
         //that biomasses are small, i.e. < 1.0.  Division by biomassScale
@@ -161,13 +161,10 @@ public class ATN {
                 System.out.print(bsi.extrapArrayToString(biomassScale));
                 break;
             }
-            currBiomass = bsi.getYNew();
+            bsi.copyYNew(currBiomass);
             System.arraycopy(currBiomass, 0, calcBiomass[t], 0, speciesCnt);
 
-            contribsT = bsi.getContribs();
-            for (int i = 0; i < speciesCnt; i++) {
-                System.arraycopy(contribsT[i], 0, contribs[t - 1][i], 0, speciesCnt);
-            }
+            bsi.copyContribs(contribs[t - 1]);
 
         }  //timestep loop
 
@@ -342,7 +339,10 @@ public class ATN {
             Map<Integer, NodeRelationships> ecosysRelationships = new HashMap<>();
 
             //extract timestep data from CSV
-            Functions.extractCSVDataRelns(job.getCsv(), ecosysTimesteps, ecosysRelationships);
+            BiomassMatrix matrix = job.getBiomassMatrix();
+            matrix.putTimesteps(ecosysTimesteps);
+            Functions.extractCSVRelns(matrix.getSuffix(), matrix.getNodeList(),
+                    ecosysRelationships);
             if (ecosysTimesteps.getTimestepMap().isEmpty()) {
                 continue;
             }
@@ -0,0 +1,286 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import core.GameServer;
+import db.SimJobDAO;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import metadata.Constants;
+import model.SpeciesType;
+import simulation.simjob.SimJob;
+
+/**
+ * Headless batch processing of SimJobs with the local ATN model, as
+ * ATNEngine.processUnprocessedJobs but on a pool of worker threads and
+ * without the output directory dialog.
+ *
+ * Each job's dataset is written to its own file, ATN_job_[id].csv, in the
+ * output directory.  Completed job ids are appended to a checkpoint file,
+ * and jobs already listed there are skipped, so an interrupted batch can be
+ * rerun and continues where it stopped.  Failed jobs are not checkpointed
+ * and are retried by the next run.
+ *
+ * Usage: ATNBatch [-threads n] [-out dir] [-checkpoint file] [ids...]
+ * where ids are job ids or ranges (e.g. 100-200); with no ids, all
+ * unprocessed jobs are processed.
+ */
+public class ATNBatch {
+
+    private static final String CHECKPOINT_FILENAME = "ATN_batch.done";
+    private static final long REPORT_INTVL_SECS = 30;
+
+    private final String destDir;
+    private final File checkpointFile;
+    private final int threads;
+    private final Set<Integer> doneJobIds = new HashSet<>();
+    private PrintStream psCheckpoint;
+
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private int total;
+    private long startTime;
+
+    public ATNBatch(String destDir, File checkpointFile, int threads) {
+        this.destDir = destDir;
+        this.checkpointFile = checkpointFile;
+        this.threads = threads;
+    }
+
+    /**
+     * Process jobs on the worker pool, skipping those already checkpointed.
+     *
+     * @param jobIds
+     * @return number of jobs that failed
+     * @throws IOException if the checkpoint file cannot be read or written
+     */
+    public int process(List<Integer> jobIds) throws IOException {
+        new File(destDir).mkdirs();
+        readCheckpoint();
+        List<Integer> pending = new ArrayList<>();
+        for (int jobId : jobIds) {
+            if (!doneJobIds.contains(jobId)) {
+                pending.add(jobId);
+            }
+        }
+        System.out.printf("%d jobs, %d already done, %d threads\n",
+                jobIds.size(), jobIds.size() - pending.size(), threads);
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        //engines are created here rather than by the workers: the constructor
+        //reloads the shared ATNEngine.propertiesConfig
+        final BlockingQueue<ATNEngine> engines = new ArrayBlockingQueue<>(threads);
+        for (int i = 0; i < threads; i++) {
+            engines.add(new ATNEngine());
+        }
+
+        psCheckpoint = new PrintStream(new FileOutputStream(checkpointFile, true), true);
+        total = pending.size();
+        startTime = System.nanoTime();
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(
+                new WorkerThreadFactory("ATN-report"));
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        }, REPORT_INTVL_SECS, REPORT_INTVL_SECS, TimeUnit.SECONDS);
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads,
+                new WorkerThreadFactory("ATN-worker"));
+        for (final int jobId : pending) {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ATNEngine engine = engines.poll();
+                    try {
+                        processJob(engine, jobId);
+                    } finally {
+                        engines.add(engine);
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException ex) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        reporter.shutdownNow();
+        psCheckpoint.close();
+
+        report();
+        return failed.get();
+    }
+
+    private void processJob(ATNEngine engine, int jobId) {
+        boolean success = false;
+        PrintStream ps = null;
+        try {
+            SimJob job = SimJobDAO.loadJobNoHistory(jobId, false);
+            if (job == null) {
+                System.out.printf("Job ID %d not found\n", jobId);
+            } else {
+                ps = new PrintStream(new BufferedOutputStream(new FileOutputStream(
+                        new File(destDir, "ATN_job_" + jobId + ".csv"))));
+                engine.processSimJob(job, ps);
+                success = !ps.checkError();
+            }
+        } catch (SQLException | FileNotFoundException | RuntimeException ex) {
+            Logger.getLogger(ATNBatch.class.getName()).log(
+                    Level.SEVERE, "Job ID " + jobId, ex);
+        } finally {
+            if (ps != null) {
+                ps.close();
+            }
+        }
+
+        if (success) {
+            checkpoint(jobId);
+            completed.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+        }
+    }
+
+    private synchronized void checkpoint(int jobId) {
+        psCheckpoint.println(jobId);
+    }
+
+    private void readCheckpoint() throws IOException {
+        if (!checkpointFile.exists()) {
+            return;
+        }
+        BufferedReader br = new BufferedReader(new FileReader(checkpointFile));
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    doneJobIds.add(Integer.valueOf(line));
+                }
+            }
+        } finally {
+            br.close();
+        }
+    }
+
+    private void report() {
+        int done = completed.get(), fails = failed.get();
+        double minutes = (System.nanoTime() - startTime) / 6.0E10;
+        System.out.printf("%d/%d jobs done, %d failed, %.1f jobs/minute\n",
+                done + fails, total, fails, minutes > 0 ? done / minutes : 0.0);
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private WorkerThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: ATNBatch [-threads n] [-out dir] "
+                + "[-checkpoint file] [ids...]");
+        System.out.println("  ids are job ids or ranges (e.g. 100-200); "
+                + "default is all unprocessed jobs");
+        System.exit(1);
+    }
+
+    public static void main(String args[]) throws IOException, SQLException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String destDir = System.getProperty("user.dir");
+        String checkpoint = null;
+        List<Integer> jobIds = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "-out":
+                        destDir = args[++i];
+                        break;
+                    case "-checkpoint":
+                        checkpoint = args[++i];
+                        break;
+                    default:
+                        int dash = args[i].indexOf('-', 1);
+                        if (dash < 0) {
+                            jobIds.add(Integer.valueOf(args[i]));
+                        } else {
+                            int end = Integer.parseInt(args[i].substring(dash + 1));
+                            for (int id = Integer.parseInt(args[i].substring(0, dash));
+                                    id <= end; id++) {
+                                jobIds.add(id);
+                            }
+                        }
+                        break;
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+            usage();
+        }
+        if (threads < 1) {
+            usage();
+        }
+
+        //read in non-std variables used for running sim jobs, as ATNEngine.main
+        GameServer.getInstance();
+        SpeciesType.loadSimTestNodeParams(Constants.ECOSYSTEM_TYPE);
+        SpeciesType.loadSimTestLinkParams(Constants.ECOSYSTEM_TYPE);
+
+        if (jobIds.isEmpty()) {
+            System.out.println("Processing unprocessed jobs");
+            jobIds = SimJobDAO.getUnprocessedJobIds(true, 0, 0, "");
+        }
+
+        File checkpointFile = checkpoint == null
+                ? new File(destDir, CHECKPOINT_FILENAME) : new File(checkpoint);
+        ATNBatch batch = new ATNBatch(destDir, checkpointFile, threads);
+        int fails = batch.process(jobIds);
+
+        System.out.println("Processing complete.");
+        System.exit(fails == 0 ? 0 : 2);
+    }
+}
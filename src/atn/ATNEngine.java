@@ -17,6 +17,7 @@ import java.io.PrintStream;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -46,6 +47,7 @@ import java.util.Map;
 
 import javax.swing.JFrame;
 
+import simulation.simjob.BiomassMatrix;
 import simulation.simjob.ConsumeMap;
 import simulation.simjob.EcosystemTimesteps;
 import simulation.simjob.NodeTimesteps;
@@ -113,8 +115,13 @@ public class ATNEngine {
 		this.currentSimJob = job;
 	} 
 
+   //send dataset output to ps rather than a file in the output directory
+   void setOutputStream(PrintStream ps) {
+       psATN = ps;
+   }
+
    //loop through current job/results, assembling dataset
-   private void genSpeciesDataset(SimJob job,
+   void genSpeciesDataset(SimJob job,
            EcosystemTimesteps ecosysTimesteps,
            Map<Integer, NodeRelationships> ecosysRelationships
    ) {
@@ -148,10 +155,33 @@ public class ATNEngine {
            spNum++;
        }
 
-       //define objects to track species' contributions
-       double[][][] contribs = new double[timesteps][speciesCnt][speciesCnt];
-       double[][] calcBiomass = new double[timesteps][speciesCnt];
-       double[][] contribsT; //current timestep
+       //define objects to track species' contributions; what is held
+       //depends on the output layout (see ContribOutput)
+       ContribOutput contribOutput = ContribOutput.fromName(
+               propertiesConfig.getProperty("contribOutput"));
+       double[][][] contribs = null;  //MATRIX: all timesteps
+       double[][] stepContribs = null;  //other layouts: current timestep
+       double[][] calcBiomass = null;  //all but STREAM
+       double[][] contribSum = null, contribMin = null, contribMax = null;
+       switch (contribOutput) {
+           case MATRIX:
+               contribs = new double[timesteps][speciesCnt][speciesCnt];
+               break;
+           case SUMMARY:
+               contribSum = new double[speciesCnt][speciesCnt];
+               contribMin = new double[speciesCnt][speciesCnt];
+               contribMax = new double[speciesCnt][speciesCnt];
+               stepContribs = new double[speciesCnt][speciesCnt];
+               break;
+           case STREAM:
+               stepContribs = new double[speciesCnt][speciesCnt];
+               break;
+           default:
+               break;
+       }
+       if (contribOutput != ContribOutput.STREAM) {
+           calcBiomass = new double[timesteps][speciesCnt];
+       }
 
        //note: WebServices ATN Model uses B0 with default = 0.5.  This presumes
        //that biomasses are small, i.e. < 1.0.  Division by biomassScale
@@ -160,7 +190,7 @@ public class ATNEngine {
        //need to store bm as it varies over time through integration; 
        //start with initial bm for each species
        double[] currBiomass = new double[speciesCnt];
-       double[] hjrCurrBiomass = new double[speciesCnt];
+       double[] prevBiomass = new double[speciesCnt];
        for (int i = 0; i < speciesCnt; i++) {
     	   NodeTimesteps nodeTimeSteps = ecosysTimesteps.getTimestepMap().get(speciesID[i]);
            //manually set biomass vals for excluded initial timesteps; this
@@ -172,43 +202,92 @@ public class ATNEngine {
 //           currBiomass[i] = calcBiomass[initTimeIdx][i];
 //           currBiomass[i] = calcBiomass[0][i]; //HJR
            currBiomass[i] = nodeTimeSteps.getBiomass(initTimeIdx)/biomassScale;
-    	   calcBiomass[0][i] =  currBiomass[i];
+       }
+       System.arraycopy(currBiomass, 0, prevBiomass, 0, speciesCnt);
+       if (calcBiomass != null) {
+           System.arraycopy(currBiomass, 0, calcBiomass[0], 0, speciesCnt);
        }
 
-       //create integration object
+       //create integration object, of the type configured for the job
        boolean isTest = false;
-       BulirschStoerIntegration bsi = new BulirschStoerIntegration(
+       IntegratorType integratorType = IntegratorType.fromName(
+               propertiesConfig.getProperty("integratorDefault"));
+       Integrator integrator = integratorType.create(
                timeIntvl,
-               speciesID,
-               sztArray,
-               ecosysRelationships,
-               lPs,
-               maxBSIErr,
-               equationSet
+               new ODESystem(new ATNWeb(speciesID, sztArray, ecosysRelationships, lPs)),
+               maxBSIErr
        );
 
+       //A. print header
+       psATN.printf("node_config, \"" + job.getNode_Config() + "\"\n");
+       if (contribOutput == ContribOutput.STREAM) {
+           printStreamHeader(speciesID);
+       }
+
        //calculate delta-biomass and biomass "contributions" from each related
-       //species
+       //species; as in the MATRIX layout, the contributions of timestep t are
+       //those of the step from t to t + 1, and timesteps after a failed step
+       //are left 0.  Once the web is steady or extinct, the last state and
+       //contributions are held rather than integrated.
+       SteadyStateDetector detector = new SteadyStateDetector(
+               speciesCnt, timeIntvl, propertiesConfig);
+       boolean steady = detector.update(currBiomass);
+       boolean failed = false;
        for (int t = initTimeIdx + 1; t < timesteps; t++) {
-           boolean success = bsi.performIntegration(time(initTime, t), currBiomass);
-           if (!success) {
+           if (!failed && !steady
+                   && !integrator.performIntegration(time(initTime, t), currBiomass)) {
                System.out.printf("Integration failed to converge, t = %d\n", t);
-               System.out.print(bsi.extrapArrayToString(biomassScale));
-               break;
+               System.out.print(integrator.stateToString(biomassScale));
+               failed = true;
+           }
+           if (failed) {
+               if (contribOutput != ContribOutput.STREAM) {
+                   break;
+               }
+               Arrays.fill(currBiomass, 0.0);
+               for (double[] row : stepContribs) {
+                   Arrays.fill(row, 0.0);
+               }
+           } else if (steady) {
+               if (contribs != null && t - 1 > initTimeIdx) {
+                   for (int i = 0; i < speciesCnt; i++) {
+                       System.arraycopy(contribs[t - 2][i], 0, contribs[t - 1][i], 0, speciesCnt);
+                   }
+               }
+           } else {
+               integrator.copyYNew(currBiomass);
+               if (contribs != null) {
+                   integrator.copyContribs(contribs[t - 1]);
+               } else if (stepContribs != null) {
+                   integrator.copyContribs(stepContribs);
+               }
+               steady = detector.update(currBiomass);
            }
-           currBiomass = bsi.getYNew();
-           System.arraycopy(currBiomass, 0, calcBiomass[t], 0, speciesCnt);
 
-           contribsT = bsi.getContribs();
-           for (int i = 0; i < speciesCnt; i++) {
-               System.arraycopy(contribsT[i], 0, contribs[t - 1][i], 0, speciesCnt);
+           if (calcBiomass != null) {
+               System.arraycopy(currBiomass, 0, calcBiomass[t], 0, speciesCnt);
+           }
+           if (contribSum != null) {
+               summarizeContribs(stepContribs, t - 1 - initTimeIdx,
+                       contribSum, contribMin, contribMax);
+           }
+           if (contribOutput == ContribOutput.STREAM) {
+               printStreamRow(t - 1, webServicesData, prevBiomass, stepContribs);
+               System.arraycopy(currBiomass, 0, prevBiomass, 0, speciesCnt);
            }
 
        }  //timestep loop
 
        //output data
-       //A. print header
-       psATN.printf("node_config, \"" + job.getNode_Config() + "\"\n");
+       if (contribOutput == ContribOutput.STREAM) {
+           //last timestep has no step, and so no contributions
+           for (double[] row : stepContribs) {
+               Arrays.fill(row, 0.0);
+           }
+           printStreamRow(timesteps - 1, webServicesData, prevBiomass, stepContribs);
+           return;
+       }
+
        psATN.printf("timesteps");
        for (int i = 0; i < timesteps; i++) {
            psATN.printf(",%d", i);
@@ -234,6 +313,9 @@ public class ATNEngine {
            psATN.println();
 
            //D. print individual biomass contributions from other species
+           if (contribs == null) {
+               continue;
+           }
            for (int j = 0; j < speciesCnt; j++) {
                psATN.printf("i.%d.j.%d.", speciesID[i], speciesID[j]);
                for (int t = 0; t < timesteps; t++) {
@@ -243,6 +325,64 @@ public class ATNEngine {
            }
        }
 
+       //E. print summary of contributions as a separate chart
+       if (contribSum != null) {
+           psATN.println();
+           psATN.println("contributions,sum,min,max");
+           for (int i = 0; i < speciesCnt; i++) {
+               for (int j = 0; j < speciesCnt; j++) {
+                   psATN.printf("i.%d.j.%d.,%9.0f,%9.0f,%9.0f\n",
+                           speciesID[i], speciesID[j],
+                           contribSum[i][j] * biomassScale,
+                           contribMin[i][j] * biomassScale,
+                           contribMax[i][j] * biomassScale);
+               }
+           }
+       }
+
+   }
+
+   //STREAM layout: a column per species (simulated and calculated biomass)
+   //and species pair (contributions)
+   private void printStreamHeader(int[] speciesID) {
+       psATN.printf("timesteps");
+       for (int i = 0; i < speciesID.length; i++) {
+           psATN.printf(",i.%d.sim,i.%d.calc", speciesID[i], speciesID[i]);
+           for (int j = 0; j < speciesID.length; j++) {
+               psATN.printf(",i.%d.j.%d.", speciesID[i], speciesID[j]);
+           }
+       }
+       psATN.println();
+   }
+
+   //STREAM layout: the values of one timestep
+   private void printStreamRow(int t, double[][] webServicesData,
+           double[] biomass, double[][] stepContribs) {
+       psATN.printf("%d", t);
+       for (int i = 0; i < biomass.length; i++) {
+           psATN.printf(",%9.0f,%9.0f", webServicesData[i][t], biomass[i] * biomassScale);
+           for (int j = 0; j < biomass.length; j++) {
+               psATN.printf(",%9.0f", stepContribs[i][j] * biomassScale);
+           }
+       }
+       psATN.println();
+   }
+
+   //SUMMARY layout: accumulate the contributions of the step'th step
+   private static void summarizeContribs(double[][] stepContribs, int step,
+           double[][] sum, double[][] min, double[][] max) {
+       for (int i = 0; i < stepContribs.length; i++) {
+           for (int j = 0; j < stepContribs.length; j++) {
+               double c = stepContribs[i][j];
+               sum[i][j] += c;
+               if (step == 0 || c < min[i][j]) {
+                   min[i][j] = c;
+               }
+               if (step == 0 || c > max[i][j]) {
+                   max[i][j] = c;
+               }
+           }
+       }
    }
 
    /*
@@ -285,27 +425,24 @@ public class ATNEngine {
        initOutputStreams();
 
        //create integration object
-       BulirschStoerIntegration bsi = new BulirschStoerIntegration(
+       Integrator integrator = IntegratorType.fromName(
+               propertiesConfig.getProperty("integratorDefault")).create(
                timeIntvl,
-               new int[1],  //needed to calc number of elements
-               null,
-               null,
-               null,
-               maxBSIErr,
-               equationSet
+               new ODESystem(equationSet, 1),
+               maxBSIErr
        );
 
        //calculate integration solution
        double[] currVal = new double[1];
        currVal[0] = bsiSoln[0][0];
        for (int t = initTimeIdx + 1; t < timesteps; t++) {
-           boolean success = bsi.performIntegration(time(initTime, t - 1), currVal);
+           boolean success = integrator.performIntegration(time(initTime, t - 1), currVal);
            if (!success) {
                System.out.printf("Integration failed to converge, t = %d\n", t);
-               System.out.print(bsi.extrapArrayToString(1));
+               System.out.print(integrator.stateToString(1));
                break;
            }
-           currVal[0] = bsi.getYNew()[0];
+           currVal[0] = integrator.getYNew()[0];
            bsiSoln[t][0] = currVal[0];
        }  //timestep loop
 
@@ -366,7 +503,8 @@ public class ATNEngine {
 
     /**
      * Fetch all unprocessed SimJobs from the database and process them using
-     * the local ATN model.
+     * the local ATN model.  See ATNBatch for processing them in parallel
+     * without the output directory dialog.
      */
     public void processUnprocessedJobs() throws SQLException {
         List<Integer> jobIds = SimJobDAO.getUnprocessedJobIds(true, 0, 0, "");
@@ -415,7 +553,10 @@ public class ATNEngine {
         Map<Integer, NodeRelationships> ecosysRelationships = new HashMap<>();
 
         //extract timestep data from CSV
-        Functions.extractCSVDataRelns(job.getCsv(), ecosysTimesteps, ecosysRelationships);
+        BiomassMatrix matrix = job.getBiomassMatrix();
+        matrix.putTimesteps(ecosysTimesteps);
+        Functions.extractCSVRelns(matrix.getSuffix(), matrix.getNodeList(),
+                ecosysRelationships);
         if (ecosysTimesteps.getTimestepMap().isEmpty()) {
             return;
         }
@@ -435,16 +576,47 @@ public class ATNEngine {
    }
  	
 	public void processSimJob(SimJob job) throws SQLException, SimulationException {
+       initOutputStreams();
+
+       long start = System.nanoTime();
+
+       processSimJob(job, psATN);
+
+       System.out.printf("\nTime... %d seconds\n\n", (System.nanoTime() - start)
+               / (long) Math.pow(10, 9));
+	}
+
+   /**
+    * Process a job, writing its dataset to ps rather than a new file in the
+    * output directory. Used by ATNBatch, which gives each job its own file.
+    *
+    * @param job
+    * @param ps
+    * @throws SQLException
+    */
+   void processSimJob(SimJob job, PrintStream ps) throws SQLException {
        //init ecosystem data sets
        EcosystemTimesteps ecosysTimesteps = new EcosystemTimesteps();
        Map<Integer, NodeRelationships> ecosysRelationships = new HashMap<>();
-       NodeTimesteps nodeTimesteps;
        //extract timestep data from CSV
 //       Functions.extractCSVDataRelns(job.getCsv(), ecosysTimesteps, ecosysRelationships);
 //       if (ecosysTimesteps.getTimestepMap().isEmpty()) {
 //           continue;
 //       }
-       initOutputStreams();
+       psATN = ps;
+       initEcosystem(job, ecosysTimesteps, ecosysRelationships);
+       status = Constants.STATUS_SUCCESS;
+
+       //generate data for current job
+       genSpeciesDataset(job, ecosysTimesteps, ecosysRelationships);
+   }
+	
+   //set up initial biomass and relationships of the job's ecosystem
+   void initEcosystem(SimJob job,
+           EcosystemTimesteps ecosysTimesteps,
+           Map<Integer, NodeRelationships> ecosysRelationships
+   ) throws SQLException {
+       NodeTimesteps nodeTimesteps;
        int[] nodeListArray = job.getSpeciesNodeList();
        List<SpeciesZoneType> speciesZoneList = job.getSpeciesZoneList();
        
@@ -464,18 +636,69 @@ public class ATNEngine {
                job.getSpeciesNodeList(), !PathTable.PP_ONLY);
        Log.consoleln("consumeMap " + consumeMap.toString());
        Log.consoleln("pathTable " + pathTable.toString());
-       status = Constants.STATUS_SUCCESS;
-       
        createEcoSysRelationships(ecosysTimesteps, ecosysRelationships, pathTable.toString());
-       
-       long start = System.nanoTime();
+   }
 
-       //generate data for current job
-       genSpeciesDataset(job, ecosysTimesteps, ecosysRelationships);
+   /**
+    * Integrate parameter variants of a job's ecosystem together with
+    * ATNEnsemble. The variants supply species parameters x, r and K by node
+    * id; topology, link parameters and initial biomass come from job.
+    *
+    * @param job
+    * @param variants
+    * @param sink receives biomass per variant and timestep, on the job's
+    * biomass scale
+    * @return number of variants whose integration failed
+    */
+   public int processEnsemble(SimJob job, List<SimJob> variants, final ATNEnsemble.Sink sink)
+           throws SQLException {
+       EcosystemTimesteps ecosysTimesteps = new EcosystemTimesteps();
+       Map<Integer, NodeRelationships> ecosysRelationships = new HashMap<>();
+       initEcosystem(job, ecosysTimesteps, ecosysRelationships);
 
-       System.out.printf("\nTime... %d seconds\n\n", (System.nanoTime() - start)
-               / (long) Math.pow(10, 9));
-	}
+       int speciesCnt = ecosysTimesteps.getNodeList().size();
+       int[] nodeID = new int[speciesCnt];
+       int[] speciesID = new int[speciesCnt];
+       SimJobSZT[] sztArray = new SimJobSZT[speciesCnt];
+       double[] initBiomass = new double[speciesCnt];
+       int spNum = 0;
+       for (NodeTimesteps nodeTimesteps : ecosysTimesteps.getTimestepMapValues()) {
+           SimJobSZT sjSzt = job.getSpeciesZoneByNodeId(nodeTimesteps.getNodeId());
+           nodeID[spNum] = nodeTimesteps.getNodeId();
+           sztArray[spNum] = sjSzt;
+           speciesID[spNum] = sjSzt.getNodeIndex();
+           initBiomass[spNum] = nodeTimesteps.getBiomass(initTimeIdx) / biomassScale;
+           spNum++;
+       }
+
+       ATNWeb web = new ATNWeb(speciesID, sztArray, ecosysRelationships,
+               new LinkParams(propertiesConfig));
+       ATNEnsemble ensemble = new ATNEnsemble(web, variants.size(), timeIntvl,
+               maxBSIErr, ATNEnsemble.Precision.DOUBLE);
+       for (int v = 0; v < variants.size(); v++) {
+           for (int i = 0; i < speciesCnt; i++) {
+               SimJobSZT varSzt = variants.get(v).getSpeciesZoneByNodeId(nodeID[i]);
+               if (varSzt == null) {
+                   continue;
+               }
+               ensemble.setParamX(v, i, varSzt.getParamX());
+               ensemble.setParamR(v, i, varSzt.getParamR());
+               ensemble.setParamK(v, i, varSzt.getParamK());
+           }
+       }
+
+       //report biomass on the job's scale
+       final double[] scaled = new double[speciesCnt];
+       return ensemble.run(initBiomass, initTime, job.getTimesteps(), new ATNEnsemble.Sink() {
+           @Override
+           public void write(int variant, int timestep, double time, double[] biomass) {
+               for (int i = 0; i < biomass.length; i++) {
+                   scaled[i] = biomass[i] * biomassScale;
+               }
+               sink.write(variant, timestep, time, scaled);
+           }
+       });
+   }
 	
    public void createEcoSysRelationships(
 		   EcosystemTimesteps ecosysTimesteps,
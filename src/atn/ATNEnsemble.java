@@ -0,0 +1,430 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import metadata.Constants;
+
+/**
+ * ATNEnsemble integrates many parameter variants of one food web in a single
+ * pass, for parameter sweeps. The topology, link parameters and prey lists
+ * come from one ATNWeb and are shared; each variant has its own species
+ * parameters x, r and K (set with setParamX/R/K, initially those of the
+ * web).
+ *
+ * State is held as [species][variant] (y[i * variantCnt + v]), so every
+ * inner loop of the right-hand side runs over variants with unit stride and
+ * no branches. All variants advance together with Dormand-Prince 5(4)
+ * substeps (see RK45Integration) sized for the variant with the largest
+ * error. A variant whose state stops being finite is dropped from the error
+ * estimate and reported as failed, rather than stopping the others.
+ *
+ * Results go to a Sink one timestep at a time, so a sweep of any size needs
+ * no more memory than one timestep. With Precision.SINGLE the results are
+ * rounded to float; integration is always carried out in double, which the
+ * error control needs.
+ */
+public class ATNEnsemble {
+
+    public enum Precision {
+
+        DOUBLE,
+        SINGLE
+    }
+
+    /**
+     * Receives the biomass of each variant at each timestep.
+     */
+    public interface Sink {
+
+        /**
+         * @param variant
+         * @param timestep
+         * @param time
+         * @param biomass one value per species, scaled as the initial
+         * biomass given to run(); NaN for a failed variant. Reused between
+         * calls.
+         */
+        void write(int variant, int timestep, double time, double[] biomass);
+    }
+
+    /**
+     * Writes one CSV row per variant and timestep:
+     * variant,timestep,time,biomass of each species.
+     */
+    public static class CSVSink implements Sink {
+
+        private final PrintStream ps;
+        private final Precision precision;
+
+        public CSVSink(PrintStream ps, int[] speciesID, Precision precision) {
+            this.ps = ps;
+            this.precision = precision;
+
+            StringBuilder header = new StringBuilder("variant,timestep,time");
+            for (int id : speciesID) {
+                header.append(",").append(id);
+            }
+            ps.println(header);
+        }
+
+        @Override
+        public void write(int variant, int timestep, double time, double[] biomass) {
+            StringBuilder row = new StringBuilder();
+            row.append(variant).append(',').append(timestep).append(',').append(time);
+            for (double bm : biomass) {
+                row.append(',');
+                if (precision == Precision.SINGLE) {
+                    row.append((float) bm);
+                } else {
+                    row.append(bm);
+                }
+            }
+            ps.println(row);
+        }
+    }
+
+    //Dormand-Prince coefficients, as RK45Integration
+    private static final double A21 = 1.0 / 5;
+    private static final double A31 = 3.0 / 40, A32 = 9.0 / 40;
+    private static final double A41 = 44.0 / 45, A42 = -56.0 / 15, A43 = 32.0 / 9;
+    private static final double A51 = 19372.0 / 6561, A52 = -25360.0 / 2187,
+            A53 = 64448.0 / 6561, A54 = -212.0 / 729;
+    private static final double A61 = 9017.0 / 3168, A62 = -355.0 / 33,
+            A63 = 46732.0 / 5247, A64 = 49.0 / 176, A65 = -5103.0 / 18656;
+    private static final double B1 = 35.0 / 384, B3 = 500.0 / 1113, B4 = 125.0 / 192,
+            B5 = -2187.0 / 6784, B6 = 11.0 / 84;
+    private static final double E1 = 71.0 / 57600, E3 = -71.0 / 16695, E4 = 71.0 / 1920,
+            E5 = -17253.0 / 339200, E6 = 22.0 / 525, E7 = -1.0 / 40;
+
+    private static final double SAFETY = 0.9;
+    private static final double MIN_FACTOR = 0.2;
+    private static final double MAX_FACTOR = 5.0;
+
+    private final ATNWeb web;
+    private final int speciesCnt;
+    private final int variantCnt;
+    private final double hOrig;
+    private final double maxErr;
+    private final Precision precision;
+    private double hNext;
+
+    //species parameters, [i * variantCnt + v]
+    private final double[] paramX;
+    private final double[] paramR;
+    private final double[] paramKScaled;
+
+    private final boolean[] failed;
+
+    //workspace, [i * variantCnt + v]
+    private final double[] y;
+    private final double[] yStart;
+    private final double[] yStage;
+    private final double[] k1, k2, k3, k4, k5, k6, k7;
+    private final double[] bmPowH;
+    private final double[] denom;
+    private final double[] out;  //[i]
+
+    /**
+     * @param web topology, link parameters, and the initial species
+     * parameters of every variant
+     * @param variantCnt
+     * @param hOrig timestep interval
+     * @param maxErr
+     * @param precision of the results passed to the sink
+     */
+    public ATNEnsemble(ATNWeb web, int variantCnt, double hOrig, double maxErr,
+            Precision precision) {
+        this.web = web;
+        this.speciesCnt = web.speciesCnt;
+        this.variantCnt = variantCnt;
+        this.hOrig = hOrig;
+        this.maxErr = maxErr;
+        this.precision = precision;
+        hNext = hOrig;
+
+        final int size = speciesCnt * variantCnt;
+        paramX = new double[size];
+        paramR = new double[size];
+        paramKScaled = new double[size];
+        for (int i = 0; i < speciesCnt; i++) {
+            Arrays.fill(paramX, i * variantCnt, (i + 1) * variantCnt, web.paramX[i]);
+            Arrays.fill(paramR, i * variantCnt, (i + 1) * variantCnt, web.paramR[i]);
+            Arrays.fill(paramKScaled, i * variantCnt, (i + 1) * variantCnt, web.paramKScaled[i]);
+        }
+
+        failed = new boolean[variantCnt];
+        y = new double[size];
+        yStart = new double[size];
+        yStage = new double[size];
+        k1 = new double[size];
+        k2 = new double[size];
+        k3 = new double[size];
+        k4 = new double[size];
+        k5 = new double[size];
+        k6 = new double[size];
+        k7 = new double[size];
+        bmPowH = new double[size];
+        denom = new double[size];
+        out = new double[speciesCnt];
+    }
+
+    public int getVariantCnt() {
+        return variantCnt;
+    }
+
+    public void setParamX(int variant, int species, double x) {
+        paramX[species * variantCnt + variant] = x;
+    }
+
+    public void setParamR(int variant, int species, double r) {
+        paramR[species * variantCnt + variant] = r;
+    }
+
+    /**
+     * @param variant
+     * @param species
+     * @param k carrying capacity, unscaled (as SimJobSZT.getParamK)
+     */
+    public void setParamK(int variant, int species, double k) {
+        paramKScaled[species * variantCnt + variant] = k / Constants.BIOMASS_SCALE;
+    }
+
+    public boolean isFailed(int variant) {
+        return failed[variant];
+    }
+
+    /**
+     * Integrate every variant from the same initial biomass, writing
+     * timesteps 0..timesteps-1 to the sink.
+     *
+     * @param initBiomass one value per species
+     * @param initTime
+     * @param timesteps
+     * @param sink
+     * @return number of failed variants
+     */
+    public int run(double[] initBiomass, double initTime, int timesteps, Sink sink) {
+        Arrays.fill(failed, false);
+        for (int i = 0; i < speciesCnt; i++) {
+            Arrays.fill(y, i * variantCnt, (i + 1) * variantCnt, initBiomass[i]);
+        }
+        hNext = hOrig;
+        write(sink, 0, initTime);
+
+        for (int t = 1; t < timesteps; t++) {
+            double x = initTime + (double) (t - 1) * hOrig;
+            if (!performIntegration(x)) {
+                //step size collapsed: nothing that is left can be trusted
+                Arrays.fill(failed, true);
+            }
+            write(sink, t, initTime + (double) t * hOrig);
+        }
+
+        int failedCnt = 0;
+        for (boolean f : failed) {
+            if (f) {
+                failedCnt++;
+            }
+        }
+        return failedCnt;
+    }
+
+    private void write(Sink sink, int timestep, double time) {
+        for (int v = 0; v < variantCnt; v++) {
+            for (int i = 0; i < speciesCnt; i++) {
+                double bm = failed[v] ? Double.NaN : y[i * variantCnt + v];
+                out[i] = (precision == Precision.SINGLE) ? (double) (float) bm : bm;
+            }
+            sink.write(v, timestep, time, out);
+        }
+    }
+
+    /*
+     performIntegration() - advance y from xOrig to xOrig + hOrig in substeps
+     that end on the timestep grid (see AdaptiveIntegration)
+     */
+    private boolean performIntegration(double xOrig) {
+        final double xEnd = xOrig + hOrig;
+
+        double x = xOrig;
+        while (true) {
+            double hTry = Math.min(hNext, hOrig);
+            double remaining = (x == xOrig) ? hOrig : xEnd - x;
+            boolean last = hTry >= remaining * (1 - AdaptiveIntegration.MIN_STEP_FRAC);
+            double h = last ? remaining : hTry;
+
+            if (!step(h)) {
+                if (hNext < hOrig * AdaptiveIntegration.MIN_STEP_FRAC) {
+                    hNext = hOrig;
+                    return false;
+                }
+                continue;
+            }
+
+            if (last) {
+                hNext = Math.max(hNext, hTry);
+                return true;
+            }
+            x += h;
+        }
+    }
+
+    /*
+     step() - one Dormand-Prince substep of size h for all variants
+     */
+    private boolean step(double h) {
+        final int size = y.length;
+        final double tol = maxErr * h / hOrig;
+
+        System.arraycopy(y, 0, yStart, 0, size);
+        calcSlope(yStart, k1);
+
+        for (int e = 0; e < size; e++) {
+            yStage[e] = yStart[e] + h * A21 * k1[e];
+        }
+        calcSlope(yStage, k2);
+        for (int e = 0; e < size; e++) {
+            yStage[e] = yStart[e] + h * (A31 * k1[e] + A32 * k2[e]);
+        }
+        calcSlope(yStage, k3);
+        for (int e = 0; e < size; e++) {
+            yStage[e] = yStart[e] + h * (A41 * k1[e] + A42 * k2[e] + A43 * k3[e]);
+        }
+        calcSlope(yStage, k4);
+        for (int e = 0; e < size; e++) {
+            yStage[e] = yStart[e] + h * (A51 * k1[e] + A52 * k2[e] + A53 * k3[e] + A54 * k4[e]);
+        }
+        calcSlope(yStage, k5);
+        for (int e = 0; e < size; e++) {
+            yStage[e] = yStart[e] + h * (A61 * k1[e] + A62 * k2[e] + A63 * k3[e]
+                    + A64 * k4[e] + A65 * k5[e]);
+        }
+        calcSlope(yStage, k6);
+        for (int e = 0; e < size; e++) {
+            y[e] = yStart[e] + h * (B1 * k1[e] + B3 * k3[e] + B4 * k4[e]
+                    + B5 * k5[e] + B6 * k6[e]);
+        }
+        calcSlope(y, k7);
+
+        //largest error of the variants still running; a variant that is no
+        //longer finite fails
+        double errMax = 0;
+        for (int i = 0; i < speciesCnt; i++) {
+            int base = i * variantCnt;
+            for (int v = 0; v < variantCnt; v++) {
+                if (failed[v]) {
+                    continue;
+                }
+                int e = base + v;
+                double err = Math.abs(h * (E1 * k1[e] + E3 * k3[e] + E4 * k4[e]
+                        + E5 * k5[e] + E6 * k6[e] + E7 * k7[e]));
+                if (Double.isNaN(err) || Double.isInfinite(err) || Double.isInfinite(y[e])) {
+                    failed[v] = true;
+                } else {
+                    errMax = Math.max(errMax, err);
+                }
+            }
+        }
+
+        double fac = (errMax == 0) ? MAX_FACTOR : SAFETY * Math.pow(tol / errMax, 0.25);
+        if (!(errMax < tol)) {
+            System.arraycopy(yStart, 0, y, 0, size);
+            hNext = h * Math.max(MIN_FACTOR, Math.min(1.0, fac));
+            return false;
+        }
+        hNext = h * Math.max(MIN_FACTOR, Math.min(MAX_FACTOR, fac));
+
+        //ATN: extinct species stay extinct, others stay above the floor
+        for (int e = 0; e < size; e++) {
+            y[e] = (yStart[e] == 0) ? 0 : Math.max(y[e], ODESystem.MIN_BIOMASS);
+        }
+        for (int v = 0; v < variantCnt; v++) {
+            if (failed[v]) {
+                for (int i = 0; i < speciesCnt; i++) {
+                    y[i * variantCnt + v] = 0;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /*
+     calcSlope() - ATN right-hand side of every variant, per unit step; the
+     same terms as ATNWeb.calcYDelta, with the variant loop innermost
+     */
+    private void calcSlope(double[] bm, double[] dy) {
+        final int n = speciesCnt;
+        final int m = variantCnt;
+        final double h = web.paramH;
+        final double b0PowH = web.b0PowH;
+        final double paramD = web.paramD;
+        final double paramY = web.paramY;
+
+        for (int e = 0; e < n * m; e++) {
+            bmPowH[e] = Math.pow(bm[e], h);
+        }
+
+        //functional response denominator of each species as predator
+        for (int i = 0; i < n; i++) {
+            int base = i * m;
+            Arrays.fill(denom, base, base + m, 0.0);
+            for (int p = web.preyStart[i]; p < web.preyStart[i + 1]; p++) {
+                int prey = web.preyList[p] * m;
+                for (int v = 0; v < m; v++) {
+                    denom[base + v] += bmPowH[prey + v];
+                }
+            }
+            double preyCnt = web.preyCnt[i];
+            for (int v = 0; v < m; v++) {
+                denom[base + v] = b0PowH + paramD * bm[base + v] * b0PowH + preyCnt * denom[base + v];
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            int base = i * m;
+            double preyCntI = web.preyCnt[i];
+            double yOverE = paramY / web.paramE[i];
+            Arrays.fill(dy, base, base + m, 0.0);
+
+            for (int k = web.linkStart[i]; k < web.linkStart[i + 1]; k++) {
+                int j = web.linkCol[k];
+                int jBase = j * m;
+
+                //i feeds on j
+                if (web.linkEatsJ[k]) {
+                    for (int v = 0; v < m; v++) {
+                        dy[base + v] += paramX[base + v] * bm[base + v]
+                                * (preyCntI * bmPowH[jBase + v] / denom[base + v]) * paramY;
+                    }
+                }
+                //j feeds on i
+                if (web.linkEatsI[k]) {
+                    double preyCntJ = web.preyCnt[j];
+                    for (int v = 0; v < m; v++) {
+                        dy[base + v] -= paramX[jBase + v] * bm[jBase + v]
+                                * (preyCntJ * bmPowH[base + v] / denom[jBase + v]) * yOverE;
+                    }
+                }
+            }
+
+            //metabolism, and plant growth up to the carrying capacity
+            if (web.isPlant[i]) {
+                for (int v = 0; v < m; v++) {
+                    double iBiomass = bm[base + v];
+                    dy[base + v] += -paramX[base + v] * iBiomass
+                            + paramR[base + v] * iBiomass * (1.0 - iBiomass / paramKScaled[base + v]);
+                }
+            } else {
+                for (int v = 0; v < m; v++) {
+                    dy[base + v] -= paramX[base + v] * bm[base + v];
+                }
+            }
+        }
+    }
+}
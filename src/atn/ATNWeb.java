@@ -0,0 +1,447 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import metadata.Constants;
+import simulation.SpeciesZoneType;
+
+/**
+ * ATNWeb is the ATN model "compiled" for one food web: the species parameters
+ * are held as parallel arrays (structure of arrays) and the species pairs that
+ * can contribute to each other's biomass are held as a sparse, row-compressed
+ * link list. Evaluating the right-hand side then costs one pass over the
+ * links instead of one ATNModel per (i, j) pair.
+ *
+ * Links of species i are link indices linkStart[i]..linkStart[i+1], in
+ * ascending order of j; every species has a link to itself (metabolism and
+ * plant growth). A web is immutable once built, so it can be shared by any
+ * number of integrators; callers supply the per-evaluation scratch arrays.
+ *
+ * The link parameters (y, d, q, B0) are the same for every link in
+ * LinkParams, so they are held as scalars, along with h = 1 + q and B0^h.
+ */
+public final class ATNWeb {
+
+    //webs with at least this many links are evaluated in parallel
+    static final int PARALLEL_LINKS = Integer.getInteger("atn.parallelLinks", 16384);
+    //smallest share of the links given to one task
+    static final int PARALLEL_GRAIN = Integer.getInteger("atn.parallelGrain", 2048);
+
+    //shared by all webs; "atn.parallelism" threads, default one per core
+    private static ForkJoinPool pool;
+
+    //relationship FROM i TO j
+    private static final byte RELN_NONE = 0;
+    private static final byte RELN_PRED = 1;      //"d": i predator of j
+    private static final byte RELN_PREY = 2;      //"y": i prey of j
+    private static final byte RELN_BOTH = 3;      //"b": i and j predate on each other
+    private static final byte RELN_CANNIBAL = 4;  //"c": i==j (cannibal)
+
+    final int speciesCnt;
+    final int[] speciesID;
+
+    //species parameters, [i]
+    final double[] paramX;
+    final double[] paramR;
+    final double[] paramKScaled;
+    final double[] paramE;  //assimilation efficiency with i as prey
+    final boolean[] isPlant;
+    final double[] preyCnt;
+
+    //prey of i are preyList[preyStart[i]..preyStart[i+1])
+    final int[] preyStart;
+    final int[] preyList;
+
+    //links, [k]
+    final int[] linkStart;
+    final int[] linkCol;
+    final boolean[] linkEatsJ;  //i feeds on j
+    final boolean[] linkEatsI;  //j feeds on i
+
+    final double paramY;
+    final double paramD;
+    final double paramH;
+    final double b0PowH;
+
+    public ATNWeb(
+            int[] speciesID,
+            SpeciesZoneType[] sztArray,
+            Map<Integer, NodeRelationships> ecosysRelationships,
+            LinkParams lPs
+    ) {
+        final int n = speciesID.length;
+        speciesCnt = n;
+        this.speciesID = speciesID;  //note: shallow copy
+
+        paramX = new double[n];
+        paramR = new double[n];
+        paramKScaled = new double[n];
+        paramE = new double[n];
+        isPlant = new boolean[n];
+        preyCnt = new double[n];
+        preyStart = new int[n + 1];
+        linkStart = new int[n + 1];
+
+        byte[] reln = new byte[n * n];
+        int preyTotal = 0;
+        int linkTotal = 0;
+        for (int i = 0; i < n; i++) {
+            NodeRelationships relnsI = ecosysRelationships.get(speciesID[i]);
+            preyCnt[i] = relnsI.getPreyCnt();
+
+            for (int j = 0; j < n; j++) {
+                byte code = toCode(relnsI.getReln(speciesID[j]));
+                reln[i * n + j] = code;
+                if (eatsJ(code)) {
+                    preyTotal++;
+                }
+                if (i == j || code != RELN_NONE) {
+                    linkTotal++;
+                }
+            }
+
+            paramX[i] = sztArray[i].getParamX();
+            paramR[i] = sztArray[i].getParamR();
+            paramKScaled[i] = sztArray[i].getParamK() / Constants.BIOMASS_SCALE;
+            isPlant[i] = sztArray[i].getSpeciesType().getOrganismType() == Constants.ORGANISM_TYPE_PLANT;
+            paramE[i] = isPlant[i] ? lPs.getParamEPlant() : lPs.getParamEAnimal();
+        }
+
+        preyList = new int[preyTotal];
+        linkCol = new int[linkTotal];
+        linkEatsJ = new boolean[linkTotal];
+        linkEatsI = new boolean[linkTotal];
+
+        int p = 0;
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            preyStart[i] = p;
+            linkStart[i] = k;
+            for (int j = 0; j < n; j++) {
+                byte code = reln[i * n + j];
+                if (eatsJ(code)) {
+                    preyList[p++] = j;
+                }
+                if (i == j || code != RELN_NONE) {
+                    linkCol[k] = j;
+                    linkEatsJ[k] = eatsJ(code);
+                    linkEatsI[k] = eatsI(code);
+                    k++;
+                }
+            }
+        }
+        preyStart[n] = p;
+        linkStart[n] = k;
+
+        paramY = lPs.getParamY();
+        paramD = lPs.getParamD();
+        paramH = 1 + lPs.getParamQ();
+        b0PowH = Math.pow(lPs.getParamB0(), paramH);
+    }
+
+    private static byte toCode(String reln) {
+        switch (reln) {
+            case "d":
+                return RELN_PRED;
+            case "y":
+                return RELN_PREY;
+            case "b":
+                return RELN_BOTH;
+            case "c":
+                return RELN_CANNIBAL;
+            default:
+                return RELN_NONE;
+        }
+    }
+
+    //i feeds on j
+    private static boolean eatsJ(byte code) {
+        return code == RELN_PRED || code == RELN_BOTH || code == RELN_CANNIBAL;
+    }
+
+    //j feeds on i
+    private static boolean eatsI(byte code) {
+        return code == RELN_PREY || code == RELN_BOTH || code == RELN_CANNIBAL;
+    }
+
+    public int getSpeciesCnt() {
+        return speciesCnt;
+    }
+
+    public int getLinkCnt() {
+        return linkCol.length;
+    }
+
+    /*
+     calcYDelta() - change in biomass of each species over one step, and the
+     contribution of each link to it, using the ATN model formulae (see
+     ATNModel, which this mirrors term for term).
+     bmPowH and denom are scratch arrays of speciesCnt elements;
+     contribs has one element per link.
+     Webs with at least PARALLEL_LINKS links are evaluated on the shared
+     fork-join pool, split by predator row. Every value is still computed by
+     one thread in the same order, so results do not depend on the number
+     of threads.
+     */
+    void calcYDelta(
+            double[] bm,
+            double stepSize,
+            double[] bmPowH,
+            double[] denom,
+            double[] yDelta,
+            double[] contribs
+    ) {
+        final int n = speciesCnt;
+
+        if (linkCol.length < PARALLEL_LINKS) {
+            calcPowH(0, n, bm, bmPowH);
+            calcDenom(0, n, bm, bmPowH, denom);
+            calcRows(0, n, bm, stepSize, bmPowH, denom, yDelta, contribs);
+            return;
+        }
+
+        //each phase needs the one before it complete
+        for (int phase = RowTask.POW_H; phase <= RowTask.ROWS; phase++) {
+            getPool().invoke(new RowTask(phase, 0, n, bm, stepSize, bmPowH, denom, yDelta, contribs));
+        }
+    }
+
+    private void calcPowH(int lo, int hi, double[] bm, double[] bmPowH) {
+        for (int i = lo; i < hi; i++) {
+            bmPowH[i] = Math.pow(bm[i], paramH);
+        }
+    }
+
+    //functional response denominator of each species as predator; has to be
+    //performed prior to contrib calcs
+    private void calcDenom(int lo, int hi, double[] bm, double[] bmPowH, double[] denom) {
+        for (int i = lo; i < hi; i++) {
+            double preyBM = 0;
+            for (int p = preyStart[i]; p < preyStart[i + 1]; p++) {
+                preyBM = preyBM + bmPowH[preyList[p]];
+            }
+            denom[i] = b0PowH + paramD * bm[i] * b0PowH + preyCnt[i] * preyBM;
+        }
+    }
+
+    private void calcRows(
+            int lo,
+            int hi,
+            double[] bm,
+            double stepSize,
+            double[] bmPowH,
+            double[] denom,
+            double[] yDelta,
+            double[] contribs
+    ) {
+        for (int i = lo; i < hi; i++) {
+            double iBiomass = bm[i];
+            double sum = 0;
+
+            for (int k = linkStart[i]; k < linkStart[i + 1]; k++) {
+                int j = linkCol[k];
+                double jBiomass = bm[j];
+                double contrib = 0;
+
+                if (iBiomass != 0 && jBiomass != 0) {
+                    double funcRespIJ = 0;  //functional response - j pred
+                    double funcRespJI = 0;  //functional response - i pred
+
+                    if (linkEatsJ[k]) {
+                        funcRespIJ = (preyCnt[i] * bmPowH[j]) / denom[i];
+                    }
+                    if (linkEatsI[k]) {
+                        funcRespJI = (preyCnt[j] * bmPowH[i]) / denom[j];
+                    }
+
+                    //prey contribution is proportionate to the biomass * met
+                    //rate of the *predator* (i)
+                    contrib = 0 + paramX[i] * iBiomass * funcRespIJ * paramY * stepSize;
+                    //predator contribution is negative - reducing biomass of prey
+                    contrib += 0 - paramX[j] * jBiomass * funcRespJI * paramY * stepSize / paramE[i];
+
+                    if (i == j) {
+                        double val = 0;
+                        //species lose mass via metabolism
+                        val -= paramX[j] * jBiomass;
+                        if (isPlant[j]) {
+                            //plant species gain mass from implicit resources
+                            //up to limiting factor based on param K
+                            val += paramR[j]
+                                    * jBiomass
+                                    * (1.0f - jBiomass / paramKScaled[j]);
+                        }
+                        contrib += val * stepSize;
+                    }
+                }
+
+                //track total change for species i
+                sum += contrib;
+                //track change for this species combo
+                contribs[k] = contrib;
+            }
+
+            yDelta[i] = sum;
+        }
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Integer.getInteger("atn.parallelism",
+                    Runtime.getRuntime().availableProcessors()));
+        }
+        return pool;
+    }
+
+    /*
+     RowTask - one phase of calcYDelta over species lo..hi, split in half
+     until a part has fewer than PARALLEL_GRAIN links
+     */
+    private final class RowTask extends RecursiveAction {
+
+        static final int POW_H = 0;
+        static final int DENOM = 1;
+        static final int ROWS = 2;
+
+        private final int phase;
+        private final int lo;
+        private final int hi;
+        private final double[] bm;
+        private final double stepSize;
+        private final double[] bmPowH;
+        private final double[] denom;
+        private final double[] yDelta;
+        private final double[] contribs;
+
+        RowTask(int phase, int lo, int hi, double[] bm, double stepSize,
+                double[] bmPowH, double[] denom, double[] yDelta, double[] contribs) {
+            this.phase = phase;
+            this.lo = lo;
+            this.hi = hi;
+            this.bm = bm;
+            this.stepSize = stepSize;
+            this.bmPowH = bmPowH;
+            this.denom = denom;
+            this.yDelta = yDelta;
+            this.contribs = contribs;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1 && linkStart[hi] - linkStart[lo] >= PARALLEL_GRAIN) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(
+                        new RowTask(phase, lo, mid, bm, stepSize, bmPowH, denom, yDelta, contribs),
+                        new RowTask(phase, mid, hi, bm, stepSize, bmPowH, denom, yDelta, contribs));
+                return;
+            }
+
+            switch (phase) {
+                case POW_H:
+                    calcPowH(lo, hi, bm, bmPowH);
+                    break;
+                case DENOM:
+                    calcDenom(lo, hi, bm, bmPowH, denom);
+                    break;
+                default:
+                    calcRows(lo, hi, bm, stepSize, bmPowH, denom, yDelta, contribs);
+                    break;
+            }
+        }
+    }
+
+    /*
+     calcJacobian() - d(slope of i) / d(biomass of m), per unit step, into a
+     dense row-major [speciesCnt * speciesCnt] matrix. Derived from the terms
+     of calcYDelta:
+       slope(i) = x(i) y P(i) B(i) S(i) / D(i)
+                - (y / e(i)) B(i)^h sum[j eats i] x(j) P(j) B(j) / D(j)
+                - x(i) B(i) + [plant] r(i) B(i) (1 - B(i) / K(i))
+     with S(i) = sum[prey p of i] B(p)^h and D(i) = B0^h + d B(i) B0^h + P(i) S(i).
+     Only links, and the prey of each predator of i, give non-zero entries,
+     so the work is proportional to links rather than species squared.
+     Species with no biomass get an empty row (they stay extinct).
+     bmPowH, denom and preySum are scratch arrays of speciesCnt elements.
+     */
+    void calcJacobian(
+            double[] bm,
+            double[] bmPowH,
+            double[] denom,
+            double[] preySum,
+            double[] jac
+    ) {
+        final int n = speciesCnt;
+
+        Arrays.fill(jac, 0, n * n, 0.0);
+        for (int i = 0; i < n; i++) {
+            bmPowH[i] = Math.pow(bm[i], paramH);
+        }
+        for (int i = 0; i < n; i++) {
+            double sum = 0;
+            for (int p = preyStart[i]; p < preyStart[i + 1]; p++) {
+                sum += bmPowH[preyList[p]];
+            }
+            preySum[i] = sum;
+            denom[i] = b0PowH + paramD * bm[i] * b0PowH + preyCnt[i] * sum;
+        }
+
+        for (int i = 0; i < n; i++) {
+            double iBiomass = bm[i];
+            if (iBiomass == 0) {
+                continue;
+            }
+            int row = i * n;
+
+            //metabolism and plant growth
+            jac[row + i] -= paramX[i];
+            if (isPlant[i]) {
+                jac[row + i] += paramR[i] * (1.0 - 2.0 * iBiomass / paramKScaled[i]);
+            }
+
+            //i as predator
+            if (preyStart[i] < preyStart[i + 1]) {
+                double c = paramX[i] * paramY * preyCnt[i];
+                double dI = denom[i];
+                jac[row + i] += c * (preySum[i] / dI
+                        - iBiomass * preySum[i] * paramD * b0PowH / (dI * dI));
+                double preyScale = c * iBiomass * (dI - preyCnt[i] * preySum[i]) / (dI * dI);
+                for (int p = preyStart[i]; p < preyStart[i + 1]; p++) {
+                    int m = preyList[p];
+                    jac[row + m] += preyScale * paramH * Math.pow(bm[m], paramH - 1);
+                }
+            }
+
+            //i as prey of each j
+            double iPowHDeriv = paramH * Math.pow(iBiomass, paramH - 1);
+            for (int k = linkStart[i]; k < linkStart[i + 1]; k++) {
+                if (!linkEatsI[k]) {
+                    continue;
+                }
+                int j = linkCol[k];
+                double jBiomass = bm[j];
+                if (jBiomass == 0) {
+                    continue;
+                }
+                double dJ = denom[j];
+                double q = paramX[j] * preyCnt[j] * jBiomass / dJ;
+                double c = -paramY / paramE[i];
+
+                jac[row + i] += c * iPowHDeriv * q;
+
+                double a = c * bmPowH[i] * paramX[j] * preyCnt[j] / (dJ * dJ);
+                jac[row + j] += a * (dJ - jBiomass * paramD * b0PowH);
+                for (int p = preyStart[j]; p < preyStart[j + 1]; p++) {
+                    int m = preyList[p];
+                    jac[row + m] -= a * jBiomass * preyCnt[j] * paramH * Math.pow(bm[m], paramH - 1);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.util.Arrays;
+
+/**
+ * AdaptiveIntegration is the step size driver shared by the integrators.
+ * Each timestep is covered by one or more substeps taken by step(); a
+ * subclass accepts or rejects a substep against maxErr, usually scaled by
+ * the substep's share of the timestep (error per unit step), and proposes
+ * the next step size in hNext, which carries over to the next timestep.
+ *
+ * Substeps never run past the end of the timestep, so results always land
+ * on the caller's timestep grid, and the contributions of a timestep are the
+ * sum of those of its substeps. The timestep fails when the step size would
+ * fall below MIN_STEP_FRAC of the interval.
+ */
+public abstract class AdaptiveIntegration implements Integrator {
+
+    static final boolean TRACE = Boolean.getBoolean("atn.trace");
+    static final double MIN_STEP_FRAC = 1e-6;  //smallest substep, as a fraction of hOrig
+
+    final ODESystem system;
+    final int speciesCnt;
+    final int[] speciesID;
+    final int[] linkStart;
+    final int[] linkCol;
+    double[] yNew;
+    double xOrig;
+    double hOrig;
+    double maxErr;
+    double[] yOrig;
+    int debugIdx = 0;
+
+    //carried from one step to the next
+    double hNext;
+    int substeps = 0;
+    int rejects = 0;
+
+    final double[] yStart;  //state at the start of the current substep
+    final double[] stepContribs;  //set by step() for an accepted substep, [k]
+    private final double[] contribs;  //contributions of last call, [k]
+
+    AdaptiveIntegration(double hOrig, ODESystem system, double maxErr) {
+        this.system = system;
+        this.hOrig = hOrig;
+        this.maxErr = maxErr;
+        speciesCnt = system.speciesCnt;
+        speciesID = system.speciesID;
+        linkStart = system.linkStart;
+        linkCol = system.linkCol;
+
+        hNext = hOrig;
+        yOrig = new double[speciesCnt];
+        yNew = new double[speciesCnt];
+        yStart = new double[speciesCnt];
+        stepContribs = new double[linkCol.length];
+        contribs = new double[linkCol.length];
+    }
+
+    /*
+     step() - attempt one substep of size h from (x, yStart). On success,
+     leaves the estimate in yNew, its contributions in stepContribs, and
+     returns true. Either way sets hNext.
+     */
+    abstract boolean step(double x, double h);
+
+    /**
+     * Integrate from xOrig to xOrig + hOrig, leaving the result in yNew.
+     *
+     * @param xOrig
+     * @param yOrig
+     * @return false if the step size had to be reduced below MIN_STEP_FRAC
+     * of the interval
+     */
+    @Override
+    public boolean performIntegration(double xOrig, double[] yOrig) {
+        final int n = speciesCnt;
+        final double xEnd = xOrig + hOrig;
+
+        this.xOrig = xOrig;
+        System.arraycopy(yOrig, 0, this.yOrig, 0, n);
+        System.arraycopy(yOrig, 0, yStart, 0, n);
+        Arrays.fill(contribs, 0.0);
+        substeps = 0;
+        rejects = 0;
+
+        double x = xOrig;
+        while (true) {
+            double hTry = Math.min(hNext, hOrig);
+            double remaining = (x == xOrig) ? hOrig : xEnd - x;
+            boolean last = hTry >= remaining * (1 - MIN_STEP_FRAC);
+            double h = last ? remaining : hTry;
+
+            if (!step(x, h)) {
+                rejects++;
+                if (hNext < hOrig * MIN_STEP_FRAC) {
+                    hNext = hOrig;
+                    return false;
+                }
+                continue;
+            }
+
+            //sum contributions of the accepted substep
+            for (int j = 0; j < n; j++) {
+                if (yStart[j] == 0) {
+                    continue;
+                }
+                for (int k = linkStart[j]; k < linkStart[j + 1]; k++) {
+                    contribs[k] += stepContribs[k];
+                }
+            }
+            substeps++;
+            if (TRACE) {
+                System.out.printf("substep %d, x=%9.6f, h=%9.6f, yNew[debugIdx]=%9.2f\n",
+                        substeps, x, h, yNew[debugIdx]);
+            }
+
+            if (last) {
+                //a step shortened to meet the grid says nothing about the
+                //step size the solution allows
+                hNext = Math.max(hNext, hTry);
+                return true;
+            }
+            x += h;
+            System.arraycopy(yNew, 0, yStart, 0, n);
+        }
+    }
+
+    @Override
+    public double[] getYNew() {
+        double[] rtn = new double[speciesCnt];
+        System.arraycopy(yNew, 0, rtn, 0, speciesCnt);
+        return rtn;
+    }
+
+    @Override
+    public void copyYNew(double[] dest) {
+        System.arraycopy(yNew, 0, dest, 0, speciesCnt);
+    }
+
+    @Override
+    public double[][] getContribs() {
+        double[][] rtn = new double[speciesCnt][speciesCnt];
+        copyContribs(rtn);
+        return rtn;
+    }
+
+    @Override
+    public void copyContribs(double[][] dest) {
+        system.expandContribs(contribs, dest);
+    }
+
+    @Override
+    public String stateToString(int scale) {
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < speciesCnt; i++) {
+            str.append(String.format("node %2d, %9.2f, %9.2f\n",
+                    speciesID[i], yStart[i] * scale, yNew[i] * scale));
+        }
+
+        return str.toString();
+    }
+
+    /**
+     * @return number of substeps taken by the last call to
+     * performIntegration
+     */
+    public int getSubsteps() {
+        return substeps;
+    }
+
+    /**
+     * @return number of substeps rejected during the last call to
+     * performIntegration
+     */
+    public int getRejects() {
+        return rejects;
+    }
+
+    /*
+     errorNorm() - largest absolute difference between two estimates
+     */
+    static double errorNorm(double[] a, double[] b, int n) {
+        double errMax = 0;
+        for (int j = 0; j < n; j++) {
+            errMax = Math.max(errMax, Math.abs(a[j] - b[j]));
+        }
+        return errMax;
+    }
+}
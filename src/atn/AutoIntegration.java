@@ -0,0 +1,99 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+/**
+ * AutoIntegration switches between RK45Integration and RosenbrockIntegration
+ * as the food web turns stiff and back: it starts explicit, moves to the
+ * implicit method once RK45Integration.isStiff() reports that stability is
+ * limiting the step size, and returns once RosenbrockIntegration.isStiff()
+ * reports that an explicit step of the same size would be stable. A timestep
+ * that fails with one method is retried with the other.
+ */
+public class AutoIntegration implements Integrator {
+
+    private final RK45Integration explicit;
+    private final RosenbrockIntegration implicit;
+    private AdaptiveIntegration current;
+    private AdaptiveIntegration last;  //integrator that produced the results
+    private int switchCnt = 0;
+
+    public AutoIntegration(double hOrig, ODESystem system, double maxErr) {
+        explicit = new RK45Integration(hOrig, system, maxErr);
+        implicit = new RosenbrockIntegration(hOrig, system.copy(), maxErr);
+        current = explicit;
+        last = explicit;
+    }
+
+    @Override
+    public boolean performIntegration(double xOrig, double[] yOrig) {
+        last = current;
+        boolean success = current.performIntegration(xOrig, yOrig);
+
+        if (!success) {
+            last = (current == explicit) ? implicit : explicit;
+            success = last.performIntegration(xOrig, yOrig);
+            if (success) {
+                switchTo(last);
+            }
+        } else if (current == explicit && explicit.isStiff()) {
+            switchTo(implicit);
+        } else if (current == implicit && !implicit.isStiff()) {
+            switchTo(explicit);
+        }
+
+        return success;
+    }
+
+    private void switchTo(AdaptiveIntegration integrator) {
+        if (integrator == current) {
+            return;
+        }
+        if (AdaptiveIntegration.TRACE) {
+            System.out.printf("switching to %s\n", integrator.getClass().getSimpleName());
+        }
+        explicit.resetStiffness();
+        implicit.resetStiffness();
+        current = integrator;
+        switchCnt++;
+    }
+
+    /**
+     * @return true while the implicit method is in use
+     */
+    public boolean isStiff() {
+        return current == implicit;
+    }
+
+    public int getSwitchCnt() {
+        return switchCnt;
+    }
+
+    @Override
+    public double[] getYNew() {
+        return last.getYNew();
+    }
+
+    @Override
+    public void copyYNew(double[] dest) {
+        last.copyYNew(dest);
+    }
+
+    @Override
+    public double[][] getContribs() {
+        return last.getContribs();
+    }
+
+    @Override
+    public void copyContribs(double[][] dest) {
+        last.copyContribs(dest);
+    }
+
+    @Override
+    public String stateToString(int scale) {
+        return last.stateToString(scale);
+    }
+}
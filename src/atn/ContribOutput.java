@@ -0,0 +1,53 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+/**
+ * The layouts of the dataset ATNEngine writes for a job, by the name used for
+ * the "contribOutput" entry of SimJobConfig.properties.
+ *
+ * MATRIX: a row per species of simulated and calculated biomass and a row per
+ * species pair of contributions, with a column per timestep.  All timesteps
+ * are held until the end of the job, T x N x N values.
+ * STREAM: the same values transposed, a row per timestep, written as the
+ * integration proceeds; only one timestep is held.
+ * SUMMARY: the biomass rows of MATRIX, followed by a chart of the sum, min and
+ * max of each pair's contributions over the job.
+ * NONE: the biomass rows of MATRIX only; contributions are not copied out of
+ * the integrator.
+ */
+public enum ContribOutput {
+
+    MATRIX("matrix"),
+    STREAM("stream"),
+    SUMMARY("summary"),
+    NONE("none");
+
+    private final String name;
+
+    private ContribOutput(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name
+     * @return the matching layout, or MATRIX if name is null or unknown
+     */
+    public static ContribOutput fromName(String name) {
+        if (name != null) {
+            for (ContribOutput type : values()) {
+                if (type.name.equalsIgnoreCase(name.trim())) {
+                    return type;
+                }
+            }
+        }
+        return MATRIX;
+    }
+}
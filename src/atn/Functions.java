@@ -145,7 +145,7 @@ public class Functions {
 
         //loop through dataset
         //3 charts: 0: biomass/time, 1: preylist, 2: relationship/distance
-        int chart = 0, nodes = 0, relnOffset = 0, distOffset = 0, pathCntOffset = 0;
+        int chart = 0;
         List<Integer> sortedNodeList = null;
         boolean empty = false;
         boolean newChart = true;
@@ -203,24 +203,10 @@ public class Functions {
                     if (newChart) {
                         sortedNodeList = new ArrayList<>(ecosysTimesteps.getNodeList());
                         Collections.sort(sortedNodeList);
-                        nodes = sortedNodeList.size();
-                        relnOffset = 2;  //offset in csvLine to 1st reln
-                        distOffset = relnOffset + nodes;  //offset in csvLine to distance info
-                        pathCntOffset = distOffset + nodes; //offset in csvLine to pathCnt info
                         newChart = false;
                         break;
                     }
-                    int nodeA = Integer.valueOf(csvLine.get(0));
-                    NodeRelationships nodeRelns = new NodeRelationships(nodeA);
-                    for (int i = 0; i < nodes; i++) {
-                        int nodeB = sortedNodeList.get(i);
-                        String relnStr = csvLine.get(relnOffset + i);
-                        int dist = Integer.valueOf(csvLine.get(distOffset + i));
-                        int pathCnt = Integer.valueOf(csvLine.get(pathCntOffset + i));
-
-                        nodeRelns.addRelationship(nodeB, relnStr, dist, pathCnt);
-                    }
-                    ecosysRelationships.put(nodeA, nodeRelns);
+                    putRelationships(csvLine, sortedNodeList, ecosysRelationships);
                     break;
                 default:
                     break;
@@ -228,6 +214,78 @@ public class Functions {
         }
     }
 
+    /**
+     * Extract relationships only, from the text following the biomass chart
+     * (see BiomassMatrix.getSuffix()): the preylist chart, then the
+     * relationship/distance chart, each preceded by blank lines.
+     *
+     * @param csvSuffix
+     * @param nodeList nodes of the biomass chart
+     * @param ecosysRelationships
+     */
+    public static void extractCSVRelns(String csvSuffix,
+            List<Integer> nodeList,
+            Map<Integer, NodeRelationships> ecosysRelationships
+    ) {
+        List<Integer> sortedNodeList = new ArrayList<>(nodeList);
+        Collections.sort(sortedNodeList);
+
+        csvSuffix = csvSuffix.replaceAll("Grains, seeds", "Grains and seeds");
+        List<List<String>> dataSet = CSVParser.convertCSVtoArrayList(csvSuffix);
+
+        //charts counted as extractCSVDataRelns, biomass/time chart (0) excluded
+        int chart = 0;
+        boolean empty = false;
+        boolean newChart = true;
+        for (List<String> csvLine : dataSet) {
+            if (csvLine.get(0).isEmpty()) {
+                if (empty == true) {
+                    continue;
+                }
+                empty = true;
+                newChart = true;
+                chart++;
+                if (chart > 2) {
+                    break;
+                }
+                continue;
+            }
+            empty = false;
+
+            if (chart == 2) {
+                //bypass first - header - line
+                if (newChart) {
+                    newChart = false;
+                    continue;
+                }
+                putRelationships(csvLine, sortedNodeList, ecosysRelationships);
+            }
+        }
+    }
+
+    //one line of the relationship/distance chart
+    private static void putRelationships(List<String> csvLine,
+            List<Integer> sortedNodeList,
+            Map<Integer, NodeRelationships> ecosysRelationships
+    ) {
+        int nodes = sortedNodeList.size();
+        int relnOffset = 2;  //offset in csvLine to 1st reln
+        int distOffset = relnOffset + nodes;  //offset in csvLine to distance info
+        int pathCntOffset = distOffset + nodes; //offset in csvLine to pathCnt info
+
+        int nodeA = Integer.valueOf(csvLine.get(0));
+        NodeRelationships nodeRelns = new NodeRelationships(nodeA);
+        for (int i = 0; i < nodes; i++) {
+            int nodeB = sortedNodeList.get(i);
+            String relnStr = csvLine.get(relnOffset + i);
+            int dist = Integer.valueOf(csvLine.get(distOffset + i));
+            int pathCnt = Integer.valueOf(csvLine.get(pathCntOffset + i));
+
+            nodeRelns.addRelationship(nodeB, relnStr, dist, pathCnt);
+        }
+        ecosysRelationships.put(nodeA, nodeRelns);
+    }
+
     //open printstream
     public static PrintStream getPrintStream(
             String filename, 
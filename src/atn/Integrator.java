@@ -0,0 +1,52 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+/**
+ * Integrator advances an ODESystem one timestep at a time. Each call to
+ * performIntegration integrates from (xOrig, yOrig) to xOrig + the timestep
+ * interval given at construction; the result and the contribution of each
+ * species to each other species' change over that timestep can then be
+ * copied out.
+ *
+ * Implementations hold working storage and are not thread-safe.
+ */
+public interface Integrator {
+
+    /**
+     * @param xOrig
+     * @param yOrig
+     * @return false if the integration failed to converge
+     */
+    boolean performIntegration(double xOrig, double[] yOrig);
+
+    double[] getYNew();
+
+    /**
+     * Copy the result of the last step into an existing array.
+     *
+     * @param dest array of at least speciesCnt elements
+     */
+    void copyYNew(double[] dest);
+
+    double[][] getContribs();
+
+    /**
+     * Copy the contributions of the last step into an existing matrix.
+     *
+     * @param dest [speciesCnt][speciesCnt] matrix; species pairs with no link
+     * are set to 0
+     */
+    void copyContribs(double[][] dest);
+
+    /**
+     * Describe the integrator state, for reporting a failed step.
+     *
+     * @param scale multiplier applied to biomass values
+     * @return
+     */
+    String stateToString(int scale);
+}
@@ -0,0 +1,56 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+/**
+ * The ODE integrators available to ATNEngine, by the name used for the
+ * "integratorDefault" entry of SimJobConfig.properties.
+ */
+public enum IntegratorType {
+
+    BULIRSCH_STOER("bulirsch-stoer"),
+    RK45("rk45"),
+    ROSENBROCK("rosenbrock"),
+    AUTO("auto");
+
+    private final String name;
+
+    private IntegratorType(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name
+     * @return the matching type, or BULIRSCH_STOER if name is null or unknown
+     */
+    public static IntegratorType fromName(String name) {
+        if (name != null) {
+            for (IntegratorType type : values()) {
+                if (type.name.equalsIgnoreCase(name.trim())) {
+                    return type;
+                }
+            }
+        }
+        return BULIRSCH_STOER;
+    }
+
+    public Integrator create(double hOrig, ODESystem system, double maxErr) {
+        switch (this) {
+            case RK45:
+                return new RK45Integration(hOrig, system, maxErr);
+            case ROSENBROCK:
+                return new RosenbrockIntegration(hOrig, system, maxErr);
+            case AUTO:
+                return new AutoIntegration(hOrig, system, maxErr);
+            default:
+                return new BulirschStoerIntegration(hOrig, system, maxErr);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.util.Arrays;
+
+/**
+ * ODESystem is the right-hand side handed to an Integrator: either the ATN
+ * model of an ATNWeb, or one of the test equations with a known solution
+ * (see ATNEngine.genODETestDataset). Contributions are held per link; links
+ * of species i are linkStart[i]..linkStart[i+1], to species linkCol[k]. The
+ * test equations link every species pair.
+ *
+ * An ODESystem holds scratch arrays, so each integrator needs its own; the
+ * ATNWeb behind it can be shared.
+ */
+public final class ODESystem {
+
+    static final double MIN_BIOMASS = 0.000001;
+
+    final int speciesCnt;
+    final int[] speciesID;
+    final int[] linkStart;
+    final int[] linkCol;
+    private final ATNWeb web;
+    private final int equationSet;  //0=ATN; 1=ODE 1; 2=ODE 2
+
+    //scratch
+    private final double[] bmPowH;
+    private final double[] denom;
+    private final double[] preySum;
+    private double[] yFD;
+    private double[] fFD;
+    private double[] fBaseFD;
+    private double[] contribsFD;
+
+    public ODESystem(ATNWeb web) {
+        this.web = web;
+        this.equationSet = 0;
+        speciesCnt = web.speciesCnt;
+        speciesID = web.speciesID;
+        linkStart = web.linkStart;
+        linkCol = web.linkCol;
+        bmPowH = new double[speciesCnt];
+        denom = new double[speciesCnt];
+        preySum = new double[speciesCnt];
+    }
+
+    /**
+     * @param equationSet 1 or 2 (see ATNEngine.genODETestDataset)
+     * @param speciesCnt number of independent copies of the equation
+     */
+    public ODESystem(int equationSet, int speciesCnt) {
+        this.web = null;
+        this.equationSet = equationSet;
+        this.speciesCnt = speciesCnt;
+        speciesID = new int[speciesCnt];
+        linkStart = new int[speciesCnt + 1];
+        linkCol = new int[speciesCnt * speciesCnt];
+        for (int i = 0; i < speciesCnt; i++) {
+            linkStart[i + 1] = (i + 1) * speciesCnt;
+            for (int j = 0; j < speciesCnt; j++) {
+                linkCol[i * speciesCnt + j] = j;
+            }
+        }
+        bmPowH = null;
+        denom = null;
+        preySum = null;
+    }
+
+    /**
+     * @return a system with the same equations and its own scratch arrays
+     */
+    public ODESystem copy() {
+        return (web != null) ? new ODESystem(web) : new ODESystem(equationSet, speciesCnt);
+    }
+
+    public boolean isATN() {
+        return equationSet == 0;
+    }
+
+    public int getLinkCnt() {
+        return linkCol.length;
+    }
+
+    /*
+     calcYDelta() - change in y over a step of stepSize, from the slope at
+     (x, y), and the contribution of each link to it
+     */
+    void calcYDelta(
+            double x,
+            double[] y,
+            double stepSize,
+            double[] yDelta,
+            double[] contribs
+    ) {
+        if (equationSet == 0) {
+            web.calcYDelta(y, stepSize, bmPowH, denom, yDelta, contribs);
+            return;
+        }
+
+        //sum contributions from each species
+        for (int i = 0; i < speciesCnt; i++) {
+            double sum = 0;
+
+            for (int k = linkStart[i]; k < linkStart[i + 1]; k++) {
+                int j = linkCol[k];
+                double contrib;
+                switch (equationSet) {
+                    case 1:
+                        contrib = stepSize * ((-y[j] * Math.sin(x)) + (2.0 * Math.tan(x))) * y[j];
+                        break;
+                    case 2:
+                        contrib = stepSize * ((-200.0) * x * Math.pow(y[j],2.0));
+                        break;
+                    default:
+                        contrib = 0.0;
+                        break;
+                }
+                //track total change for species i
+                sum += contrib;
+                //track change for this species combo
+                contribs[k] = contrib;
+            }
+
+            yDelta[i] = sum;
+        }
+    }
+
+    /*
+     calcJacobian() - d(slope of i) / d(y of m) at (x, y), into a dense
+     row-major matrix. Analytic for the ATN model; the test equations use
+     forward differences.
+     */
+    void calcJacobian(double x, double[] y, double[] jac) {
+        if (equationSet == 0) {
+            web.calcJacobian(y, bmPowH, denom, preySum, jac);
+            return;
+        }
+
+        final int n = speciesCnt;
+        if (yFD == null) {
+            yFD = new double[n];
+            fFD = new double[n];
+            fBaseFD = new double[n];
+            contribsFD = new double[linkCol.length];
+        }
+
+        calcYDelta(x, y, 1.0, fBaseFD, contribsFD);
+        System.arraycopy(y, 0, yFD, 0, n);
+        for (int m = 0; m < n; m++) {
+            double dy = Math.sqrt(Math.ulp(1.0)) * Math.max(1.0, Math.abs(y[m]));
+            yFD[m] = y[m] + dy;
+            calcYDelta(x, yFD, 1.0, fFD, contribsFD);
+            yFD[m] = y[m];
+            for (int i = 0; i < n; i++) {
+                jac[i * n + m] = (fFD[i] - fBaseFD[i]) / dy;
+            }
+        }
+    }
+
+    /*
+     applyFloor() - ATN: species that were extinct at the start of a step
+     stay extinct, and no other species falls below MIN_BIOMASS
+     */
+    void applyFloor(double[] yStart, double[] y) {
+        if (equationSet != 0) {
+            return;
+        }
+        for (int j = 0; j < speciesCnt; j++) {
+            y[j] = (yStart[j] == 0) ? 0 : Math.max(y[j], MIN_BIOMASS);
+        }
+    }
+
+    /*
+     expandContribs() - copy per-link contributions into a dense matrix
+     */
+    void expandContribs(double[] contribs, double[][] dest) {
+        for (int i = 0; i < speciesCnt; i++) {
+            Arrays.fill(dest[i], 0, speciesCnt, 0.0);
+            for (int k = linkStart[i]; k < linkStart[i + 1]; k++) {
+                dest[i][linkCol[k]] = contribs[k];
+            }
+        }
+    }
+}
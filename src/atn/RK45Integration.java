@@ -0,0 +1,208 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.util.Arrays;
+
+/**
+ * Explicit Runge-Kutta integration using the Dormand-Prince 5(4) pair: each
+ * substep is advanced with the fifth order solution, and the difference from
+ * the embedded fourth order solution is the error estimate. The slope at the
+ * end of an accepted substep is the slope at the start of the next one
+ * (first same as last), so a substep costs six evaluations.
+ *
+ * Contributions of a substep are the slope-weighted contributions of its
+ * stages. After each accepted substep the dominant eigenvalue is estimated
+ * from the last two stages (Hairer and Wanner); when h * lambda stays beyond
+ * the method's stability boundary, isStiff() reports that the problem is
+ * better handled by an implicit method.
+ */
+public class RK45Integration extends AdaptiveIntegration {
+
+    private static final double C2 = 1.0 / 5, C3 = 3.0 / 10, C4 = 4.0 / 5, C5 = 8.0 / 9;
+    private static final double A21 = 1.0 / 5;
+    private static final double A31 = 3.0 / 40, A32 = 9.0 / 40;
+    private static final double A41 = 44.0 / 45, A42 = -56.0 / 15, A43 = 32.0 / 9;
+    private static final double A51 = 19372.0 / 6561, A52 = -25360.0 / 2187,
+            A53 = 64448.0 / 6561, A54 = -212.0 / 729;
+    private static final double A61 = 9017.0 / 3168, A62 = -355.0 / 33,
+            A63 = 46732.0 / 5247, A64 = 49.0 / 176, A65 = -5103.0 / 18656;
+    //fifth order weights; b2 = b7 = 0
+    private static final double B1 = 35.0 / 384, B3 = 500.0 / 1113, B4 = 125.0 / 192,
+            B5 = -2187.0 / 6784, B6 = 11.0 / 84;
+    //fifth minus fourth order weights
+    private static final double E1 = 71.0 / 57600, E3 = -71.0 / 16695, E4 = 71.0 / 1920,
+            E5 = -17253.0 / 339200, E6 = 22.0 / 525, E7 = -1.0 / 40;
+
+    //step size control
+    private static final double SAFETY = 0.9;
+    private static final double MIN_FACTOR = 0.2;
+    private static final double MAX_FACTOR = 5.0;
+
+    //stiffness detection: the real stability boundary is about 3.3, and a
+    //step size held there by stability gives estimates of h * lambda just
+    //under it
+    private static final double STIFF_LIMIT = 2.5;  //h * lambda
+    private static final int STIFF_STEPS = 15;
+    private static final int NONSTIFF_STEPS = 6;
+
+    private boolean stiff = false;
+    private int stiffCnt = 0;
+    private int nonStiffCnt = 0;
+
+    //workspace
+    private final double[] k1, k2, k3, k4, k5, k6, k7;
+    private final double[] c1, c2, c3, c4, c5, c6;  //stage contribs, [k]
+    private final double[] yStage;
+    private final double[] yStage6;
+    private final double[] fsalY;  //state k1 and c1 were evaluated at
+    private boolean fsalValid = false;
+
+    public RK45Integration(double hOrig, ODESystem system, double maxErr) {
+        super(hOrig, system, maxErr);
+
+        final int n = speciesCnt;
+        final int links = linkCol.length;
+        k1 = new double[n];
+        k2 = new double[n];
+        k3 = new double[n];
+        k4 = new double[n];
+        k5 = new double[n];
+        k6 = new double[n];
+        k7 = new double[n];
+        c1 = new double[links];
+        c2 = new double[links];
+        c3 = new double[links];
+        c4 = new double[links];
+        c5 = new double[links];
+        c6 = new double[links];
+        yStage = new double[n];
+        yStage6 = new double[n];
+        fsalY = new double[n];
+    }
+
+    @Override
+    boolean step(double x, double h) {
+        final int n = speciesCnt;
+        final double tol = maxErr * h / hOrig;
+
+        if (!fsalValid || !Arrays.equals(fsalY, yStart)) {
+            system.calcYDelta(x, yStart, 1.0, k1, c1);
+            System.arraycopy(yStart, 0, fsalY, 0, n);
+            fsalValid = true;
+        }
+
+        for (int j = 0; j < n; j++) {
+            yStage[j] = yStart[j] + h * A21 * k1[j];
+        }
+        system.calcYDelta(x + C2 * h, yStage, 1.0, k2, c2);
+
+        for (int j = 0; j < n; j++) {
+            yStage[j] = yStart[j] + h * (A31 * k1[j] + A32 * k2[j]);
+        }
+        system.calcYDelta(x + C3 * h, yStage, 1.0, k3, c3);
+
+        for (int j = 0; j < n; j++) {
+            yStage[j] = yStart[j] + h * (A41 * k1[j] + A42 * k2[j] + A43 * k3[j]);
+        }
+        system.calcYDelta(x + C4 * h, yStage, 1.0, k4, c4);
+
+        for (int j = 0; j < n; j++) {
+            yStage[j] = yStart[j] + h * (A51 * k1[j] + A52 * k2[j] + A53 * k3[j] + A54 * k4[j]);
+        }
+        system.calcYDelta(x + C5 * h, yStage, 1.0, k5, c5);
+
+        for (int j = 0; j < n; j++) {
+            yStage6[j] = yStart[j] + h * (A61 * k1[j] + A62 * k2[j] + A63 * k3[j]
+                    + A64 * k4[j] + A65 * k5[j]);
+        }
+        system.calcYDelta(x + h, yStage6, 1.0, k6, c6);
+
+        for (int j = 0; j < n; j++) {
+            yNew[j] = yStart[j] + h * (B1 * k1[j] + B3 * k3[j] + B4 * k4[j]
+                    + B5 * k5[j] + B6 * k6[j]);
+        }
+        //k7 is the slope at the end of the step; c2 is free to hold its
+        //contribs
+        system.calcYDelta(x + h, yNew, 1.0, k7, c2);
+
+        double errMax = 0;
+        for (int j = 0; j < n; j++) {
+            double e = h * (E1 * k1[j] + E3 * k3[j] + E4 * k4[j] + E5 * k5[j]
+                    + E6 * k6[j] + E7 * k7[j]);
+            errMax = Math.max(errMax, Math.abs(e));
+        }
+
+        //error per unit step scales as h^4
+        double fac = SAFETY * Math.pow(tol / errMax, 0.25);
+        if (Double.isNaN(fac)) {
+            fac = MIN_FACTOR;
+        }
+
+        if (!(errMax < tol)) {
+            hNext = h * Math.max(MIN_FACTOR, Math.min(1.0, fac));
+            return false;
+        }
+        hNext = h * Math.max(MIN_FACTOR, Math.min(MAX_FACTOR, fac));
+
+        for (int k = 0; k < stepContribs.length; k++) {
+            stepContribs[k] = h * (B1 * c1[k] + B3 * c3[k] + B4 * c4[k]
+                    + B5 * c5[k] + B6 * c6[k]);
+        }
+
+        detectStiffness(h);
+
+        //first same as last
+        System.arraycopy(k7, 0, k1, 0, n);
+        System.arraycopy(c2, 0, c1, 0, c1.length);
+        System.arraycopy(yNew, 0, fsalY, 0, n);
+        system.applyFloor(yStart, yNew);
+
+        return true;
+    }
+
+    /*
+     detectStiffness() - h * lambda ~ h |k7 - k6| / |yNew - yStage6|
+     */
+    private void detectStiffness(double h) {
+        double num = 0;
+        double den = 0;
+        for (int j = 0; j < speciesCnt; j++) {
+            double dk = k7[j] - k6[j];
+            double dy = yNew[j] - yStage6[j];
+            num += dk * dk;
+            den += dy * dy;
+        }
+
+        if (den > 0 && h * Math.sqrt(num / den) > STIFF_LIMIT) {
+            nonStiffCnt = 0;
+            if (++stiffCnt >= STIFF_STEPS) {
+                stiff = true;
+            }
+        } else if (++nonStiffCnt >= NONSTIFF_STEPS) {
+            stiffCnt = 0;
+            stiff = false;
+        }
+    }
+
+    /**
+     * @return true once the step size has been limited by stability, rather
+     * than accuracy, for STIFF_STEPS substeps in a row
+     */
+    public boolean isStiff() {
+        return stiff;
+    }
+
+    /**
+     * Forget the stiffness history, e.g. when resuming after an implicit
+     * method has been used for a while.
+     */
+    public void resetStiffness() {
+        stiff = false;
+        stiffCnt = 0;
+        nonStiffCnt = 0;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.util.Arrays;
+
+/**
+ * Linearly implicit integration for stiff food webs, using the two stage,
+ * second order, L-stable Rosenbrock method ROS2 (Verwer et al. 1999):
+ *
+ *   (I - g h J) k1 = f(y)
+ *   (I - g h J) k2 = f(y + h k1) - 2 k1
+ *   y' = y + 3/2 h k1 + 1/2 h k2,      g = 1 + 1/sqrt(2)
+ *
+ * with y + h k1 as the embedded first order solution for the error estimate.
+ * Unlike the explicit integrators, a substep is held to maxErr itself rather
+ * than error per unit step; at second order the latter forces steps too
+ * small for the method to pay off.
+ * J is the analytic Jacobian from ODESystem (ATNWeb.calcJacobian for the ATN
+ * model), rebuilt at the start of every substep and factored with dense LU;
+ * building it only visits the web's links.
+ *
+ * Contributions of a substep are the trapezoidal average of the
+ * contributions at its two ends. The slope at the end of an accepted substep
+ * is reused at the start of the next. isStiff() stays true while a
+ * Gershgorin bound on h * lambda exceeds the stability boundary of
+ * RK45Integration.
+ */
+public class RosenbrockIntegration extends AdaptiveIntegration {
+
+    private static final double GAMMA = 1.0 + 1.0 / Math.sqrt(2.0);
+
+    //step size control
+    private static final double SAFETY = 0.9;
+    private static final double MIN_FACTOR = 0.2;
+    private static final double MAX_FACTOR = 5.0;
+
+    //stiffness detection, as RK45Integration
+    private static final double STABILITY_LIMIT = 3.25;  //h * lambda
+    private static final int NONSTIFF_STEPS = 6;
+
+    private boolean stiff = true;
+    private int nonStiffCnt = 0;
+
+    //workspace
+    private final double[] jac;  //Jacobian, then LU factors, [i * n + m]
+    private final int[] pivot;
+    private final double[] f0;
+    private final double[] f1;
+    private final double[] k1;
+    private final double[] k2;
+    private final double[] cStart;  //contribs per unit step at yStart, [k]
+    private final double[] cEnd;
+    private final double[] yStage;
+    private final double[] fStartY;  //state f0 and cStart were evaluated at
+    private boolean fStartValid = false;
+
+    public RosenbrockIntegration(double hOrig, ODESystem system, double maxErr) {
+        super(hOrig, system, maxErr);
+
+        final int n = speciesCnt;
+        final int links = linkCol.length;
+        jac = new double[n * n];
+        pivot = new int[n];
+        f0 = new double[n];
+        f1 = new double[n];
+        k1 = new double[n];
+        k2 = new double[n];
+        cStart = new double[links];
+        cEnd = new double[links];
+        yStage = new double[n];
+        fStartY = new double[n];
+    }
+
+    @Override
+    boolean step(double x, double h) {
+        final int n = speciesCnt;
+        final double tol = maxErr;
+
+        if (!fStartValid || !Arrays.equals(fStartY, yStart)) {
+            system.calcYDelta(x, yStart, 1.0, f0, cStart);
+            System.arraycopy(yStart, 0, fStartY, 0, n);
+            fStartValid = true;
+        }
+
+        system.calcJacobian(x, yStart, jac);
+        double rho = gershgorin();
+
+        //I - g h J
+        for (int i = 0; i < n; i++) {
+            for (int m = 0; m < n; m++) {
+                jac[i * n + m] *= -GAMMA * h;
+            }
+            jac[i * n + i] += 1.0;
+        }
+        if (!decompose()) {
+            hNext = h * MIN_FACTOR;
+            return false;
+        }
+
+        System.arraycopy(f0, 0, k1, 0, n);
+        solve(k1);
+
+        for (int j = 0; j < n; j++) {
+            yStage[j] = yStart[j] + h * k1[j];
+        }
+        system.calcYDelta(x + h, yStage, 1.0, f1, cEnd);
+        for (int j = 0; j < n; j++) {
+            k2[j] = f1[j] - 2.0 * k1[j];
+        }
+        solve(k2);
+
+        double errMax = 0;
+        for (int j = 0; j < n; j++) {
+            yNew[j] = yStart[j] + 1.5 * h * k1[j] + 0.5 * h * k2[j];
+            errMax = Math.max(errMax, Math.abs(0.5 * h * (k1[j] + k2[j])));
+        }
+
+        //error of the first order estimate scales as h^2
+        double fac = SAFETY * Math.sqrt(tol / errMax);
+        if (Double.isNaN(fac)) {
+            fac = MIN_FACTOR;
+        }
+
+        if (!(errMax < tol)) {
+            hNext = h * Math.max(MIN_FACTOR, Math.min(1.0, fac));
+            return false;
+        }
+        hNext = h * Math.max(MIN_FACTOR, Math.min(MAX_FACTOR, fac));
+
+        system.applyFloor(yStart, yNew);
+
+        //slope at the end is the slope at the start of the next substep
+        system.calcYDelta(x + h, yNew, 1.0, f0, cEnd);
+        for (int k = 0; k < stepContribs.length; k++) {
+            stepContribs[k] = 0.5 * h * (cStart[k] + cEnd[k]);
+        }
+        System.arraycopy(cEnd, 0, cStart, 0, cStart.length);
+        System.arraycopy(yNew, 0, fStartY, 0, n);
+
+        if (h * rho > STABILITY_LIMIT) {
+            nonStiffCnt = 0;
+            stiff = true;
+        } else if (++nonStiffCnt >= NONSTIFF_STEPS) {
+            stiff = false;
+        }
+
+        return true;
+    }
+
+    /*
+     gershgorin() - upper bound on the spectral radius of jac
+     */
+    private double gershgorin() {
+        final int n = speciesCnt;
+        double rho = 0;
+        for (int i = 0; i < n; i++) {
+            double sum = 0;
+            for (int m = 0; m < n; m++) {
+                sum += Math.abs(jac[i * n + m]);
+            }
+            rho = Math.max(rho, sum);
+        }
+        return rho;
+    }
+
+    /*
+     decompose() - LU factorization of jac in place, with partial pivoting;
+     false if the matrix is singular
+     */
+    private boolean decompose() {
+        final int n = speciesCnt;
+        for (int c = 0; c < n; c++) {
+            int p = c;
+            double max = Math.abs(jac[c * n + c]);
+            for (int r = c + 1; r < n; r++) {
+                double v = Math.abs(jac[r * n + c]);
+                if (v > max) {
+                    max = v;
+                    p = r;
+                }
+            }
+            if (!(max > 0)) {
+                return false;
+            }
+            pivot[c] = p;
+            if (p != c) {
+                for (int m = 0; m < n; m++) {
+                    double tmp = jac[c * n + m];
+                    jac[c * n + m] = jac[p * n + m];
+                    jac[p * n + m] = tmp;
+                }
+            }
+
+            double d = jac[c * n + c];
+            for (int r = c + 1; r < n; r++) {
+                double l = jac[r * n + c] / d;
+                jac[r * n + c] = l;
+                if (l != 0) {
+                    for (int m = c + 1; m < n; m++) {
+                        jac[r * n + m] -= l * jac[c * n + m];
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /*
+     solve() - solve (LU) x = b in place, b -> x
+     */
+    private void solve(double[] b) {
+        final int n = speciesCnt;
+        for (int c = 0; c < n; c++) {
+            int p = pivot[c];
+            if (p != c) {
+                double tmp = b[c];
+                b[c] = b[p];
+                b[p] = tmp;
+            }
+        }
+        for (int r = 1; r < n; r++) {
+            double sum = b[r];
+            for (int m = 0; m < r; m++) {
+                sum -= jac[r * n + m] * b[m];
+            }
+            b[r] = sum;
+        }
+        for (int r = n - 1; r >= 0; r--) {
+            double sum = b[r];
+            for (int m = r + 1; m < n; m++) {
+                sum -= jac[r * n + m] * b[m];
+            }
+            b[r] = sum / jac[r * n + r];
+        }
+    }
+
+    /**
+     * @return false once explicit integration would have been stable at the
+     * step size used, for NONSTIFF_STEPS substeps in a row
+     */
+    public boolean isStiff() {
+        return stiff;
+    }
+
+    public void resetStiffness() {
+        stiff = true;
+        nonStiffCnt = 0;
+    }
+}
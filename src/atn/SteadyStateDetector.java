@@ -0,0 +1,96 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package atn;
+
+import java.util.Properties;
+
+/**
+ * SteadyStateDetector watches the biomass of successive timesteps of an
+ * integration and reports when integrating further would not change the
+ * output: either the web has reached steady state, i.e. the relative norm of
+ * the derivative, ||y(t+dt) - y(t)|| / (dt ||y(t+dt)||), has stayed below a
+ * tolerance for a number of consecutive timesteps, or every species is
+ * extinct, i.e. at 0.  The integrators keep a species that starts at 0 at 0,
+ * but hold every other species at no less than ODESystem.MIN_BIOMASS, from
+ * which it can still regrow; a species at that floor is therefore not
+ * extinct.
+ * Callers then hold the last state (and contributions) for the remaining
+ * timesteps instead of integrating them.
+ *
+ * Configured by the "steadyStateTolerance" and "steadyStateSteps" entries of
+ * the properties file; a tolerance of 0 disables steady state detection, but
+ * not extinction.
+ */
+public class SteadyStateDetector {
+
+    public static final double DFLT_TOLERANCE = 1.0E-9;
+    public static final int DFLT_STEPS = 10;
+
+    private final double tolerance;
+    private final int steps;
+    private final double timeIntvl;
+    private final double[] yPrev;
+    private boolean started = false;
+    private int steadyCnt = 0;
+
+    /**
+     * @param speciesCnt
+     * @param timeIntvl time between successive states
+     * @param tolerance relative derivative norm below which a step is steady
+     * @param steps consecutive steady steps needed
+     */
+    public SteadyStateDetector(int speciesCnt, double timeIntvl,
+            double tolerance, int steps) {
+        this.timeIntvl = timeIntvl;
+        this.tolerance = tolerance;
+        this.steps = Math.max(1, steps);
+        yPrev = new double[speciesCnt];
+    }
+
+    public SteadyStateDetector(int speciesCnt, double timeIntvl,
+            Properties propertiesConfig) {
+        this(speciesCnt, timeIntvl,
+                Double.valueOf(propertiesConfig.getProperty("steadyStateTolerance",
+                        String.valueOf(DFLT_TOLERANCE))),
+                Integer.valueOf(propertiesConfig.getProperty("steadyStateSteps",
+                        String.valueOf(DFLT_STEPS))));
+    }
+
+    /**
+     * Record the state at the next timestep.
+     *
+     * @param y
+     * @return true if the integration can stop: every species is extinct, or
+     * the last steps states have been steady
+     */
+    public boolean update(double[] y) {
+        boolean extinct = true;
+        double diffSq = 0, normSq = 0;
+        for (int i = 0; i < yPrev.length; i++) {
+            if (y[i] != 0) {
+                extinct = false;
+            }
+            double diff = y[i] - yPrev[i];
+            diffSq += diff * diff;
+            normSq += y[i] * y[i];
+            yPrev[i] = y[i];
+        }
+        if (extinct) {
+            return true;
+        }
+        if (!started) {
+            started = true;
+            return false;
+        }
+
+        if (tolerance > 0 && Math.sqrt(diffSq) < tolerance * timeIntvl * Math.sqrt(normSq)) {
+            steadyCnt++;
+        } else {
+            steadyCnt = 0;
+        }
+        return steadyCnt >= steps;
+    }
+}
@@ -34,4 +34,59 @@ public class DBConf {
     public String getDBPassword() {
         return confRecords.get("DBPassword");
     }
+
+    /**
+     * @return maximum pooled connections, also the number of DB threads
+     */
+    public int getPoolSize() {
+        return getInt("DBPoolSize", 16);
+    }
+
+    /**
+     * @return milliseconds a caller waits for a pooled connection before
+     *         failing, 0 or less to wait indefinitely
+     */
+    public int getMaxWait() {
+        return getInt("DBMaxWait", 5000);
+    }
+
+    /**
+     * @return milliseconds an asynchronous DB call may take, 0 for no limit
+     */
+    public int getTimeout() {
+        return getInt("DBTimeout", 10000);
+    }
+
+    /**
+     * @return whether statements are timed by QueryProfiler, off by default
+     */
+    public boolean getProfile() {
+        return getInt("DBProfile", 0) != 0;
+    }
+
+    /**
+     * @return milliseconds after which a statement is logged as slow, 0 for
+     *         never
+     */
+    public int getSlowQuery() {
+        return getInt("DBSlowQuery", 250);
+    }
+
+    /**
+     * @return runs of the same statement within one request that are logged
+     *         as a possible N+1 pattern, 0 for never
+     */
+    public int getNPlusOne() {
+        return getInt("DBNPlusOne", 10);
+    }
+
+    private int getInt(String key, int defaultValue) {
+        String value = confRecords.get(key);
+
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
 }
\ No newline at end of file
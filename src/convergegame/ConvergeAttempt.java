@@ -3,6 +3,7 @@ package convergegame;
 // Java Imports
 
 // Other Imports
+import simulation.simjob.BiomassMatrix;
 
 /**
  * The ConvergeAttempt class is contains data representing the configuration of a 
@@ -19,6 +20,8 @@ public class ConvergeAttempt {
     protected int score;
     protected String config;
     protected String csv;
+    // Biomass chart from csv; set directly when loaded in encoded form
+    protected BiomassMatrix biomassMatrix;
 
     public ConvergeAttempt() {
     }
@@ -37,7 +40,7 @@ public class ConvergeAttempt {
         this.hintId = hintId;
         this.time = time;
         this.config = config;
-        this.csv = csv;
+        setCsv(csv);
     }
 
     public int getPlayerId() {
@@ -81,11 +84,30 @@ public class ConvergeAttempt {
     }
 
     public String getCsv() {
+        if (this.csv == null && this.biomassMatrix != null) {
+            this.csv = this.biomassMatrix.toCSV();
+        }
         return this.csv;
     }
 
+    /**
+     * @param csv plain CSV, or a value produced by BiomassMatrix.encode()
+     */
     public void setCsv(String csv) {
-        this.csv = csv;
+        if (BiomassMatrix.isEncoded(csv)) {
+            this.biomassMatrix = BiomassMatrix.load(csv);
+            this.csv = null;
+        } else {
+            this.csv = csv;
+            this.biomassMatrix = null;
+        }
+    }
+
+    public BiomassMatrix getBiomassMatrix() {
+        if (this.biomassMatrix == null) {
+            this.biomassMatrix = BiomassMatrix.parse(this.csv);
+        }
+        return this.biomassMatrix;
     }
 
     public Boolean getAllowHints() {
@@ -10,11 +10,24 @@ import db.ConvergeEcosystemDAO;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import metadata.Constants;
 import simulation.simjob.EcosystemTimesteps;
 import simulation.simjob.ExtractCSVData;
 import util.ConfigureException;
+import util.Log;
 
 /**
  *
@@ -39,37 +52,144 @@ public class ConvergeAttemptAnal {
         ps.println(str);
     }
 
-    public static void main(String args[])
-            throws FileNotFoundException, ConfigureException {
-        List<ConvergeAttempt> attempts = ConvergeAttemptDAO.getConvergeAttempts();
-        if (attempts.isEmpty()) {
-            throw new ConfigureException("Attempt retrieval failed.");
+    /**
+     * Scores and report line for one player's attempts on one ecosystem.
+     */
+    private static class AttemptGroup {
+
+        private final int playerId;
+        private final boolean allowHints;
+        private final int ecoId;
+        private final List<Integer> hintIds = new ArrayList<Integer>();
+        private final List<Future<Integer>> scores = new ArrayList<Future<Integer>>();
+
+        private AttemptGroup(ConvergeAttempt attempt) {
+            this.playerId = attempt.getPlayerId();
+            this.allowHints = attempt.getAllowHints();
+            this.ecoId = attempt.getEcosystemId();
         }
-        PrintStream ps = null;
-        ps = new PrintStream(new FileOutputStream(
-                "/users/justinacotter/documents/sfsuilmi/convergedata.csv"));
+    }
 
-        //first need to count max number of attempts
-        int playerId = Constants.ID_NOT_SET;
-        int ecoId = Constants.ID_NOT_SET;
-        int maxCnt = 0;
-        int currMax = 0;
-        for (ConvergeAttempt attempt : attempts) {
-            if (attempt.getPlayerId() != playerId
-                    || attempt.getEcosystemId() != ecoId) {
-                if (currMax > maxCnt) {
-                    maxCnt = currMax;
+    // Marks the end of the write queue
+    private static final AttemptGroup END = new AttemptGroup(new ConvergeAttempt());
+
+    //parsed target timesteps, loaded once per ecosystem
+    private static final ConcurrentMap<Integer, FutureTask<EcosystemTimesteps>> targets =
+            new ConcurrentHashMap<Integer, FutureTask<EcosystemTimesteps>>();
+    private static final AtomicInteger mismatchCount = new AtomicInteger();
+
+    private static EcosystemTimesteps getTargetData(final int ecoId)
+            throws InterruptedException, ExecutionException {
+        FutureTask<EcosystemTimesteps> target = targets.get(ecoId);
+
+        if (target == null) {
+            FutureTask<EcosystemTimesteps> task = new FutureTask<EcosystemTimesteps>(
+                    new Callable<EcosystemTimesteps>() {
+                @Override
+                public EcosystemTimesteps call() {
+                    //get csv info (etc) about the ecosystem target
+                    ConvergeEcosystem ecosys = ConvergeEcosystemDAO.
+                            getConvergeEcosystem(ecoId);
+                    return ExtractCSVData.extractCSVData(ecosys.getCsvTarget());
                 }
-                currMax = 1;
-                playerId = attempt.getPlayerId();
-                ecoId = attempt.getEcosystemId();
-            } else {
-                currMax++;
+            });
+            target = targets.putIfAbsent(ecoId, task);
+            if (target == null) {
+                target = task;
+                task.run();
             }
         }
-        if (currMax > maxCnt) {
-            maxCnt = currMax;
+
+        return target.get();
+    }
+
+    //score an attempt against its target; stored scores are kept, but
+    //recalculated to check that server scoring is consistent (orig on client)
+    private static Callable<Integer> scoreTask(final ConvergeAttempt attempt) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                EcosystemTimesteps attemptData = attempt.getBiomassMatrix().
+                        getEcosystemTimesteps();
+                int score = attemptData.calculateConvergeScore(
+                        getTargetData(attempt.getEcosystemId()));
+
+                if (attempt.getScore() == Constants.ID_NOT_SET) {
+                    return score;
+                }
+                if (attempt.getScore() != score) {
+                    mismatchCount.incrementAndGet();
+                }
+                return attempt.getScore();
+            }
+        };
+    }
+
+    private static void enqueue(BlockingQueue<AttemptGroup> queue, AttemptGroup group) {
+        try {
+            queue.put(group);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //write each group once its scores are in, keeping input order
+    private static Thread startWriter(final PrintStream ps,
+            final BlockingQueue<AttemptGroup> queue, final int maxCnt) {
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (AttemptGroup group = queue.take(); group != END; group = queue.take()) {
+                        ps.printf(
+                                "%d,%d,%d",
+                                group.playerId,
+                                group.allowHints ? 1 : 0,
+                                group.ecoId);
+
+                        String attemptInfo = "";
+                        for (int i = 0; i < group.scores.size(); i++) {
+                            int hintId = group.hintIds.get(i);
+                            int score;
+                            try {
+                                score = group.scores.get(i).get();
+                            } catch (ExecutionException ex) {
+                                Log.println_e("Scoring failed: " + ex.getCause());
+                                score = Constants.ID_NOT_SET;
+                            }
+                            attemptInfo += String.format(",%s,%d",
+                                    hintId == Constants.ID_NOT_SET ? "" : String.valueOf(hintId),
+                                    score);
+                        }
+                        printAttempts(ps, attemptInfo, group.scores.size() - 1, maxCnt);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "ConvergeAttemptAnal-Writer");
+
+        writer.start();
+        return writer;
+    }
+
+    /**
+     * Write a CSV of every player's hints and scores per ecosystem. Attempts
+     * are streamed from the database and scored in parallel; each line is
+     * written as soon as its scores are ready.
+     *
+     * @param args optional output file path
+     */
+    public static void main(String args[])
+            throws FileNotFoundException, ConfigureException, InterruptedException {
+        //first need to count max number of attempts
+        final int maxCnt = ConvergeAttemptDAO.getMaxAttemptsPerEcosystem();
+        if (maxCnt == 0) {
+            throw new ConfigureException("Attempt retrieval failed.");
         }
+        PrintStream ps = null;
+        ps = new PrintStream(new FileOutputStream(args.length > 0 ? args[0]
+                : "/users/justinacotter/documents/sfsuilmi/convergedata.csv"));
 
         //print header
         ps.print("player,allow-hints,ecosys,attempts,");
@@ -81,66 +201,48 @@ public class ConvergeAttemptAnal {
             }
         }
         ps.println();
-        //ps.close();
-        //ps = new PrintStream(new FileOutputStream(
-        //        "/users/justinacotter/documents/sfsuilmi/convergedata2.csv"));        
-
-        playerId = Constants.ID_NOT_SET;
-        ecoId = Constants.ID_NOT_SET;
-        currMax = Constants.ID_NOT_SET;
-        String header = "";
-        String attemptInfo = "";
-        for (ConvergeAttempt attempt : attempts) {
-            if (attempt.getPlayerId() != playerId
-                    || attempt.getEcosystemId() != ecoId) {
-                //print prior record
-                if (currMax != Constants.ID_NOT_SET) {
-                    printAttempts(ps, attemptInfo, currMax, maxCnt);
+
+        //score on every core; when the queue is full the reader scores
+        //attempts itself, which keeps memory bounded
+        int threads = Runtime.getRuntime().availableProcessors();
+        final ThreadPoolExecutor scorer = new ThreadPoolExecutor(threads, threads,
+                0, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(threads * 4),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        final BlockingQueue<AttemptGroup> queue = new ArrayBlockingQueue<AttemptGroup>(threads * 16);
+        Thread writer = startWriter(ps, queue, maxCnt);
+
+        //groups are queued for the writer once all their attempts are read
+        final AttemptGroup[] current = new AttemptGroup[1];
+        int count = ConvergeAttemptDAO.streamConvergeAttempts(
+                new ConvergeAttemptDAO.AttemptHandler() {
+            @Override
+            public void onAttempt(ConvergeAttempt attempt) {
+                AttemptGroup group = current[0];
+
+                if (group == null
+                        || attempt.getPlayerId() != group.playerId
+                        || attempt.getEcosystemId() != group.ecoId) {
+                    if (group != null) {
+                        enqueue(queue, group);
+                    }
+                    group = new AttemptGroup(attempt);
+                    current[0] = group;
                 }
-                currMax = 0;
-                attemptInfo = "";
-                playerId = attempt.getPlayerId();
-                ecoId = attempt.getEcosystemId();
-                ps.printf(
-                        "%d,%d,%d",
-                        playerId,
-                        attempt.getAllowHints() ? 1 : 0,
-                        ecoId);
-            } else {
-                currMax++;
-            }
 
-            int attemptId = attempt.getAttemptId();
-            int hintId = attempt.getHintId();
-            int score = attempt.getScore();
-            int tempScore = 0;
-
-            //get csv info (etc) about the current attempt
-            ConvergeAttempt fullInfo = ConvergeAttemptDAO.getConvergeAttempt(
-                    playerId, ecoId, attemptId);
-            EcosystemTimesteps attemptData = ExtractCSVData.extractCSVData(
-                    fullInfo.getCsv());
-            //get csv info (etc) about the ecosystem target
-            ConvergeEcosystem ecosys = ConvergeEcosystemDAO.
-                    getConvergeEcosystem(ecoId);
-            EcosystemTimesteps targetData = ExtractCSVData.extractCSVData(
-                    ecosys.getCsvTarget());
-
-            //calculate the score (only doing this for ALL to make sure that
-            //scoring is consistent as I reimplemented on server (orig on client)
-            if (score == Constants.ID_NOT_SET) {
-                score = attemptData.calculateConvergeScore(targetData);
-            } else {
-                tempScore = attemptData.calculateConvergeScore(targetData);
+                group.hintIds.add(attempt.getHintId());
+                group.scores.add(scorer.submit(scoreTask(attempt)));
             }
-            attemptInfo += String.format(",%s,%d",
-                    hintId == Constants.ID_NOT_SET ? "" : String.valueOf(hintId),
-                    score);
-        }
-        //print final records
-        printAttempts(ps, attemptInfo, currMax, maxCnt);
+        });
 
+        if (current[0] != null) {
+            queue.put(current[0]);
+        }
+        queue.put(END);
+        writer.join();
+        scorer.shutdown();
         ps.close();
 
+        Log.printf("Scored %d attempts on %d threads (%d stored scores differ)",
+                count, threads, mismatchCount.get());
     }
 }
@@ -0,0 +1,300 @@
+package core;
+
+// Java Imports
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+// Other Imports
+import db.clashgame.BattleDAO;
+import db.clashgame.ClashPlayerDAO;
+import model.clashgame.Battle;
+import model.clashgame.Player;
+import util.Log;
+
+/**
+ * The ClashOpponentIndex class keeps the Clash of Species players who can be
+ * challenged (those with a defense configuration) in memory, so the opponent
+ * list is served without querying the database.
+ *
+ * Each player carries a strength rating. Ratings are Elo scores rebuilt at
+ * startup by replaying the finished battles in order, then updated as each
+ * battle ends. Players are kept in eligibility order for paging and random
+ * sampling, and in rating order for "similar strength" lookups.
+ */
+public class ClashOpponentIndex {
+
+    public static final double INITIAL_RATING = 1000;
+    // Maximum rating change from a single battle
+    private static final double K_FACTOR = 32;
+
+    private static final ClashOpponentIndex index = new ClashOpponentIndex();
+
+    // Player ID -> Entry
+    private final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+    // Eligibility order, for paging and sampling
+    private final List<Entry> ordered = new ArrayList<Entry>();
+    // Rating order, ties broken by player ID
+    private final TreeSet<Entry> byRating = new TreeSet<Entry>(new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            int c = Double.compare(a.rating, b.rating);
+            return c != 0 ? c : (a.player.id < b.player.id ? -1 : (a.player.id == b.player.id ? 0 : 1));
+        }
+    });
+    // Ratings of players who have fought but have no defense yet
+    private final Map<Integer, Double> pendingRatings = new HashMap<Integer, Double>();
+
+    private ClashOpponentIndex() {
+    }
+
+    public static ClashOpponentIndex getInstance() {
+        return index;
+    }
+
+    /**
+     * Load eligible players and replay the battle history.
+     */
+    public static void init() {
+        Log.console("Loading Clash Opponents...");
+
+        synchronized (index) {
+            for (Player player : ClashPlayerDAO.findEligiblePlayers()) {
+                index.add(player);
+            }
+
+            for (int[] result : BattleDAO.findCompletedResults()) {
+                index.recordBattle(result[0], result[1], result[2]);
+            }
+        }
+
+        Log.println("Done!");
+    }
+
+    /**
+     * Make a player available as an opponent. Called whenever a defense is
+     * saved; a player already in the index only has their details refreshed.
+     *
+     * @param player
+     */
+    public synchronized void add(Player player) {
+        if (player == null) {
+            return;
+        }
+
+        Entry entry = entries.get(player.id);
+
+        if (entry == null) {
+            entry = new Entry(player);
+            Double rating = pendingRatings.remove(player.id);
+            entry.rating = rating == null ? INITIAL_RATING : rating;
+
+            entries.put(player.id, entry);
+            ordered.add(entry);
+            byRating.add(entry);
+        } else {
+            entry.player = player;
+        }
+    }
+
+    /**
+     * Update both players' ratings once a battle has ended.
+     *
+     * @param attacker_id
+     * @param defender_id
+     * @param outcome from the attacker's point of view
+     */
+    public void recordBattle(int attacker_id, int defender_id, Battle.Outcome outcome) {
+        recordBattle(attacker_id, defender_id, outcome.getValue());
+    }
+
+    private synchronized void recordBattle(int attacker_id, int defender_id, int outcome) {
+        double attacker = getRating(attacker_id);
+        double defender = getRating(defender_id);
+        double expected = 1 / (1 + Math.pow(10, (defender - attacker) / 400));
+        double actual;
+
+        if (outcome == Battle.Outcome.WIN.getValue()) {
+            actual = 1;
+        } else if (outcome == Battle.Outcome.LOSE.getValue()) {
+            actual = 0;
+        } else {
+            actual = 0.5;
+        }
+
+        double change = K_FACTOR * (actual - expected);
+        setRating(attacker_id, attacker + change);
+        setRating(defender_id, defender - change);
+    }
+
+    public synchronized double getRating(int player_id) {
+        Entry entry = entries.get(player_id);
+
+        if (entry != null) {
+            return entry.rating;
+        }
+
+        Double rating = pendingRatings.get(player_id);
+        return rating == null ? INITIAL_RATING : rating;
+    }
+
+    private void setRating(int player_id, double rating) {
+        Entry entry = entries.get(player_id);
+
+        if (entry == null) {
+            pendingRatings.put(player_id, rating);
+        } else {
+            byRating.remove(entry);
+            entry.rating = rating;
+            byRating.add(entry);
+        }
+    }
+
+    public synchronized boolean contains(int player_id) {
+        return entries.containsKey(player_id);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param exclude_id player to leave out, usually the one asking
+     * @param offset
+     * @param limit
+     * @return players in the order they became eligible
+     */
+    public synchronized List<Player> getPage(int exclude_id, int offset, int limit) {
+        List<Player> page = new ArrayList<Player>();
+
+        for (int i = 0; i < ordered.size() && page.size() < limit; i++) {
+            Player player = ordered.get(i).player;
+
+            if (player.id == exclude_id) {
+                continue;
+            }
+            if (offset > 0) {
+                offset--;
+            } else {
+                page.add(player);
+            }
+        }
+
+        return page;
+    }
+
+    /**
+     * Pick distinct players at random.
+     *
+     * @param exclude_id
+     * @param count
+     * @param random
+     * @return up to count players
+     */
+    public synchronized List<Player> sample(int exclude_id, int count, Random random) {
+        return sample(exclude_id, count, random, null);
+    }
+
+    private List<Player> sample(int exclude_id, int count, Random random, List<Player> taken) {
+        List<Player> result = new ArrayList<Player>();
+        int n = ordered.size();
+        // Partial Fisher-Yates over index positions, swapped in a sparse map
+        Map<Integer, Integer> swapped = new HashMap<Integer, Integer>();
+
+        for (int i = 0; i < n && result.size() < count; i++) {
+            int j = i + random.nextInt(n - i);
+            Integer at_j = swapped.get(j);
+            Integer at_i = swapped.get(i);
+            int pick = at_j == null ? j : at_j;
+            swapped.put(j, at_i == null ? i : at_i);
+
+            Player player = ordered.get(pick).player;
+            if (player.id != exclude_id && (taken == null || !taken.contains(player))) {
+                result.add(player);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Find the players whose rating is closest to a given rating.
+     *
+     * @param exclude_id
+     * @param rating
+     * @param range maximum rating difference
+     * @param limit
+     * @return players ordered from closest to furthest
+     */
+    public synchronized List<Player> getSimilar(int exclude_id, double rating, double range, int limit) {
+        List<Player> result = new ArrayList<Player>();
+        Entry center = bound(rating, Integer.MIN_VALUE);
+
+        Iterator<Entry> down = byRating.subSet(bound(rating - range, Integer.MIN_VALUE), true,
+                center, false).descendingIterator();
+        Iterator<Entry> up = byRating.subSet(center, true,
+                bound(rating + range, Integer.MAX_VALUE), true).iterator();
+        Entry below = next(down, exclude_id);
+        Entry above = next(up, exclude_id);
+
+        while (result.size() < limit && (below != null || above != null)) {
+            if (above == null || (below != null && rating - below.rating <= above.rating - rating)) {
+                result.add(below.player);
+                below = next(down, exclude_id);
+            } else {
+                result.add(above.player);
+                above = next(up, exclude_id);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Choose the opponents to list for a player: the closest in strength
+     * first, with the rest picked at random so weaker and stronger players
+     * still turn up.
+     *
+     * @param player_id
+     * @param limit
+     * @param random
+     * @return up to limit players
+     */
+    public synchronized List<Player> getOpponents(int player_id, int limit, Random random) {
+        List<Player> result = getSimilar(player_id, getRating(player_id), Double.MAX_VALUE, (limit + 1) / 2);
+        result.addAll(sample(player_id, limit - result.size(), random, result));
+        return result;
+    }
+
+    private static Entry next(Iterator<Entry> it, int exclude_id) {
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.player.id != exclude_id) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static Entry bound(double rating, int player_id) {
+        Entry entry = new Entry(new Player());
+        entry.rating = rating;
+        entry.player.id = player_id;
+        return entry;
+    }
+
+    private static class Entry {
+
+        private Player player;
+        private double rating;
+
+        private Entry(Player player) {
+            this.player = player;
+        }
+    }
+}
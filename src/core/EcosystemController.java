@@ -3,7 +3,6 @@ package core;
 // Java Imports
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -14,7 +13,7 @@ import java.util.TimerTask;
 import core.lobby.EcosystemLobby;
 import core.lobby.LobbyController;
 import core.world.Zone;
-import db.CSVDAO;
+import db.ChartSeriesDAO;
 import db.EcosystemDAO;
 import db.LogDAO;
 import db.ScoreDAO;
@@ -25,10 +24,10 @@ import model.Player;
 import model.Species;
 import model.SpeciesType;
 import net.response.ResponseEcosystem;
-import simulation.SimulationEngine;
+import simulation.SimulationBackend;
+import simulation.SimulationBackendType;
 import simulation.SimulationException;
 import simulation.SpeciesZoneType;
-import util.CSVParser;
 import util.GameFunctions;
 import util.GameTimer;
 import util.Log;
@@ -121,7 +120,7 @@ public class EcosystemController {
     private static void createWebServices(Ecosystem ecosystem, Map<Integer, Integer> nodeBiomassList) {
         Log.println("Creating Web Services...");
         // Prepare Web Services
-        SimulationEngine se = new SimulationEngine();
+        SimulationBackend se = SimulationBackendType.createDefault();
         String networkName = "WoB-" + ecosystem.getID() + "-" + System.currentTimeMillis() % 100000;
         // Create Sub-Foodweb
         int[] nodeList = new int[nodeBiomassList.size()];
@@ -159,15 +158,12 @@ public class EcosystemController {
         new GameTimer().schedule(new TimerTask() {
             @Override
             public void run() {
-                String csv = new SimulationEngine().getBiomassCSVString(ecosystem.getManipulationID());
+                String csv = SimulationBackendType.createDefault().getBiomassCSVString(ecosystem.getManipulationID());
 
                 if (!csv.isEmpty()) {
-                    CSVDAO.createBiomassCSV(ecosystem.getManipulationID(), CSVParser.removeNodesFromCSV(csv));
-                    // Generate Environment Score CSV
-                    List<List<String>> envScoreList = new ArrayList<List<String>>(2);
-                    envScoreList.add(new ArrayList<String>(Arrays.asList(new String[]{"", "1"})));
-                    envScoreList.add(new ArrayList<String>(Arrays.asList(new String[]{"\"Environment Score\"", "0"})));
-                    CSVDAO.createScoreCSV(ecosystem.getID(), CSVParser.createCSV(envScoreList));
+                    ChartSeriesDAO.updateBiomass(ecosystem.getManipulationID(), csv);
+                    // Generate Environment Score Chart
+                    ChartSeriesDAO.createScoreChart(ecosystem.getID());
 
                     cancel();
                     Log.printf("CSV [%s] Retrieval Success!", ecosystem.getManipulationID());
@@ -189,8 +185,6 @@ public class EcosystemController {
         if (zones.isEmpty()) {
             return;
         }
-        // Load Ecosystem Score History
-        ecosystem.setScoreCSV(CSVParser.convertCSVtoArrayList(CSVDAO.getScoreCSV(ecosystem.getID())));
         // Ecosystem Reference
         player.setEcosystem(ecosystem);
         // Create Lobby to Contain Ecosystem
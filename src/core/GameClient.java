@@ -9,12 +9,16 @@ import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 
 // Other Imports
 import core.world.WorldController;
 import db.AccountDAO;
 import db.PlayerDAO;
+import db.QueryProfiler;
 import db.UserLogDAO;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -40,7 +44,7 @@ import util.NetworkFunctions;
  * actively receive incoming requests and send outgoing responses. This thread
  * lasts as long as the connection is alive.
  */
-public class GameClient {
+public class GameClient implements Executor {
 
     // Variables
     private String session_id;
@@ -52,6 +56,8 @@ public class GameClient {
     private String version;
     // Responses
     private final List<GameResponse> responses = Collections.synchronizedList(new ArrayList<GameResponse>()); // Temporarily store responses for client
+    // Work handed back by other threads, such as DB callbacks
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
     // Other Variables
     private Account account;
     private Player player;
@@ -94,6 +100,8 @@ public class GameClient {
      * activity is picked up from the client such as being disconnected.
      */
     public void run() {
+        runTasks();
+
         try {
             // Extract the size of the package from the data stream
             short size = DataReader.readShort(inputStream);
@@ -129,6 +137,7 @@ public class GameClient {
                 // If the request exists, process like following:
                 if (request != null) {
                     request.setGameClient(this);
+                    QueryProfiler.beginRequest(request.getClass().getSimpleName());
 
                     try {
                         // Parse the input stream
@@ -139,6 +148,8 @@ public class GameClient {
                         send();
                     } catch (Exception ex) {
                         Log.printf_e("Request [%d] Error:\n%s", request_id, ex.getMessage());
+                    } finally {
+                        QueryProfiler.endRequest();
                     }
                 }
             }
@@ -168,6 +179,37 @@ public class GameClient {
         }
     }
 
+    /**
+     * Queue work to run on this client's thread, between requests. Used as
+     * the executor for DBFuture callbacks so they can build responses the
+     * same way process() does.
+     *
+     * @param task
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (isAlive) {
+            tasks.add(QueryProfiler.attach(task));
+        }
+    }
+
+    private void runTasks() {
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception ex) {
+                Log.println_e(ex.getMessage());
+            }
+        }
+        // Send responses to client, if any
+        send();
+    }
+
     private void shutdown() {
         if (account != null) {
             // notify game room manager
@@ -28,7 +28,8 @@ import model.SpeciesType;
 import net.response.ResponsePrediction;
 import net.response.ResponseSpeciesCreate;
 import simulation.PredictionRunnable;
-import simulation.SimulationEngine;
+import simulation.SimulationBackend;
+import simulation.SimulationBackendType;
 import simulation.SpeciesZoneType;
 import util.EventType;
 import util.EventListener;
@@ -48,7 +49,7 @@ public class GameEngine {
     private Lobby lobby;
     private final World world;
     private final Ecosystem ecosystem;
-    private final SimulationEngine simEngine;
+    private final SimulationBackend simEngine;
     private boolean isActive;
     private final ExecutorService predictionThreadPool = Executors.newCachedThreadPool();
     private long lastSimulationTime;
@@ -59,7 +60,7 @@ public class GameEngine {
         this.world = world;
         this.ecosystem = ecosystem;
 
-        this.simEngine = new SimulationEngine();
+        this.simEngine = SimulationBackendType.createDefault();
 
         createClockEvents();
     }
@@ -71,13 +72,7 @@ public class GameEngine {
             public void run(Object... args) {
                 int month = (Integer) args[0];
 
-                for (Player player : lobby.getPlayers()) {
-                    if (month % 2 == 0) {
-                        GameResources.updateCredits(player, 400);
-                    } else {
-                        GameResources.updateCredits(player, 350);
-                    }
-                }
+                GameResources.updateCredits(lobby.getPlayers(), month % 2 == 0 ? 400 : 350);
             }
         });
     }
@@ -1,6 +1,10 @@
 package core;
 
+// Java Imports
+import java.util.Collection;
+
 // Other Imports
+import db.CreditLedger;
 import db.PlayerDAO;
 import metadata.Constants;
 import model.Player;
@@ -15,9 +19,11 @@ public class GameResources {
     }
 
     public static boolean useCredits(Player player, int amount) {
-        if (amount <= player.getCredits()) {
-            player.setCredits(player.getCredits() - amount);
-            GameResources.updateCredits(player, 0);
+        int balance = CreditLedger.getInstance().debit(player.getID(), amount);
+
+        if (balance >= 0) {
+            player.setCredits(balance);
+            sendCredits(player, 0);
             return true;
         }
 
@@ -31,9 +37,28 @@ public class GameResources {
      * @param amount contains the amount of money given
      */
     public static void updateCredits(Player player, int amount) {
-        player.setCredits(Math.min(Constants.MAX_CREDITS, player.getCredits() + amount));
+        int balance = CreditLedger.getInstance().add(player.getID(), amount);
+
+        if (balance >= 0) {
+            player.setCredits(balance);
+            sendCredits(player, amount);
+        }
+    }
+
+    /**
+     * Give each player the same amount of money. The ledger writes all of
+     * the new balances back together.
+     *
+     * @param players
+     * @param amount contains the amount of money given to each
+     */
+    public static void updateCredits(Collection<Player> players, int amount) {
+        for (Player player : players) {
+            updateCredits(player, amount);
+        }
+    }
 
-        PlayerDAO.updateCredits(player.getID(), player.getCredits());
+    private static void sendCredits(Player player, int amount) {
         NetworkFunctions.sendToPlayer(
                 new ResponseUpdateResources(
                         Constants.RESOURCE_COINS,
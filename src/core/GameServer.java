@@ -75,11 +75,14 @@ public class GameServer {
     public void configure() throws ConfigureException {
         // Initialize tables for global use
         ServerResources.init();
+        ShopCatalog.init();
         GameRequestTable.init(); // Contains request codes and classes
         ExpTable.init(); // Contains experience required per level
         // Update Badge Thresholds
         WorldController.getInstance().init();
         BadgeController.setBadgeScores();
+        Leaderboard.init();
+        ClashOpponentIndex.init();
     }
 
     /**
@@ -0,0 +1,404 @@
+package core;
+
+// Java Imports
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Other Imports
+import db.PlayerDAO;
+import db.ScoreDAO;
+import model.Player;
+import util.Log;
+
+/**
+ * The Leaderboard class keeps player rankings in memory so that top lists and
+ * ranks can be served without querying the database. Each player is ranked by
+ * their best score across all of their ecosystems. Two boards are kept: one
+ * for the high score and one for the accumulated score.
+ *
+ * Rankings are held in an order-statistic treap, so top-N, rank-of-player and
+ * range queries are O(log n). The boards are built once at startup and then
+ * updated in place by ScoreDAO whenever a score is written.
+ */
+public class Leaderboard {
+
+    // Board Instances
+    private static final Leaderboard highScores = new Leaderboard();
+    private static final Leaderboard accumulatedScores = new Leaderboard();
+    // Player ID -> Name, shared by both boards
+    private static final Map<Integer, String> playerNames = new HashMap<Integer, String>();
+    // Ecosystem ID -> Player ID, shared by both boards
+    private static final Map<Integer, Integer> ecoOwners = new HashMap<Integer, Integer>();
+    // Player ID -> (Ecosystem ID -> Score)
+    private final Map<Integer, Map<Integer, Integer>> ecoScores = new HashMap<Integer, Map<Integer, Integer>>();
+    // Player ID -> Best Score
+    private final Map<Integer, Integer> bestScores = new HashMap<Integer, Integer>();
+    private final RankTree tree = new RankTree();
+
+    private Leaderboard() {
+    }
+
+    public static Leaderboard getHighScores() {
+        return highScores;
+    }
+
+    public static Leaderboard getAccumulatedScores() {
+        return accumulatedScores;
+    }
+
+    /**
+     * Build both boards from the ecosystem table.
+     */
+    public static void init() {
+        Log.console("Loading Leaderboard...");
+
+        synchronized (Leaderboard.class) {
+            for (String[] row : ScoreDAO.getEnvironmentScoreList()) {
+                int eco_id = Integer.parseInt(row[0]);
+                int player_id = Integer.parseInt(row[1]);
+
+                ecoOwners.put(eco_id, player_id);
+                playerNames.put(player_id, row[2]);
+                highScores.set(player_id, eco_id, Integer.parseInt(row[3]));
+                accumulatedScores.set(player_id, eco_id, Integer.parseInt(row[4]));
+            }
+        }
+
+        Log.println("Done!");
+    }
+
+    /**
+     * Register a newly created ecosystem so later score updates can be
+     * attributed to its owner.
+     *
+     * @param eco_id
+     * @param player_id
+     */
+    public static void addEcosystem(int eco_id, int player_id) {
+        synchronized (Leaderboard.class) {
+            ecoOwners.put(eco_id, player_id);
+        }
+    }
+
+    /**
+     * @param eco_id
+     * @param score
+     * @return the ecosystem's previous high score, or null if it had none
+     */
+    public static Integer updateHighScore(int eco_id, int score) {
+        return highScores.update(eco_id, score);
+    }
+
+    /**
+     * @param eco_id
+     * @param score
+     * @return the ecosystem's previous accumulated score, or null if it had none
+     */
+    public static Integer updateAccumulatedScore(int eco_id, int score) {
+        return accumulatedScores.update(eco_id, score);
+    }
+
+    private Integer update(int eco_id, int score) {
+        synchronized (Leaderboard.class) {
+            Integer player_id = ecoOwners.get(eco_id);
+
+            return player_id == null ? null : set(player_id, eco_id, score);
+        }
+    }
+
+    private Integer set(int player_id, int eco_id, int score) {
+        Map<Integer, Integer> scores = ecoScores.get(player_id);
+        if (scores == null) {
+            scores = new HashMap<Integer, Integer>();
+            ecoScores.put(player_id, scores);
+        }
+        Integer previous = scores.put(eco_id, score);
+
+        int best = Integer.MIN_VALUE;
+        for (int value : scores.values()) {
+            best = Math.max(best, value);
+        }
+
+        Integer oldBest = bestScores.get(player_id);
+        if (oldBest != null) {
+            if (oldBest == best) {
+                return previous;
+            }
+            tree.remove(oldBest, player_id);
+        }
+
+        bestScores.put(player_id, best);
+        tree.insert(best, player_id);
+
+        return previous;
+    }
+
+    /**
+     * Get the top entries on this board.
+     *
+     * @param amount
+     * @return List of {name, score} pairs in rank order
+     */
+    public List<String[]> getTop(int amount) {
+        return getRange(1, amount);
+    }
+
+    /**
+     * Get the entries ranked from rank_from to rank_to, inclusive. Ranks start
+     * at 1.
+     *
+     * @param rank_from
+     * @param rank_to
+     * @return List of {name, score} pairs in rank order
+     */
+    public List<String[]> getRange(int rank_from, int rank_to) {
+        List<String[]> scoreList = new ArrayList<String[]>();
+        List<Integer> playerList = new ArrayList<Integer>();
+
+        synchronized (Leaderboard.class) {
+            rank_to = Math.min(rank_to, tree.size());
+
+            for (int rank = Math.max(1, rank_from); rank <= rank_to; rank++) {
+                RankTree.Node node = tree.select(rank - 1);
+                scoreList.add(new String[]{playerNames.get(node.player_id), String.valueOf(node.score)});
+                playerList.add(node.player_id);
+            }
+        }
+
+        // Names not cached yet are fetched without holding the lock
+        for (int i = 0; i < scoreList.size(); i++) {
+            if (scoreList.get(i)[0] == null) {
+                scoreList.get(i)[0] = getName(playerList.get(i));
+            }
+        }
+
+        return scoreList;
+    }
+
+    /**
+     * Get a player's position on this board.
+     *
+     * @param player_id
+     * @return rank starting at 1, or -1 if the player has no score
+     */
+    public int getRank(int player_id) {
+        synchronized (Leaderboard.class) {
+            Integer best = bestScores.get(player_id);
+            return best == null ? -1 : tree.rank(best, player_id) + 1;
+        }
+    }
+
+    /**
+     * Get a player's best score on this board.
+     *
+     * @param player_id
+     * @return score, or -1 if the player has no score
+     */
+    public int getScore(int player_id) {
+        synchronized (Leaderboard.class) {
+            Integer best = bestScores.get(player_id);
+            return best == null ? -1 : best;
+        }
+    }
+
+    /**
+     * Count the players whose best score lies in [min_score, max_score].
+     *
+     * @param min_score
+     * @param max_score
+     * @return number of players
+     */
+    public int countInRange(int min_score, int max_score) {
+        synchronized (Leaderboard.class) {
+            if (min_score > max_score) {
+                return 0;
+            }
+            // Entries are ordered by descending score, so every entry ranked
+            // before (max_score + 1) has a higher score than the range.
+            int above = max_score == Integer.MAX_VALUE ? 0 : tree.rank(max_score + 1, Integer.MAX_VALUE);
+            int atOrAbove = tree.rank(min_score, Integer.MAX_VALUE);
+            return atOrAbove - above;
+        }
+    }
+
+    public int size() {
+        synchronized (Leaderboard.class) {
+            return tree.size();
+        }
+    }
+
+    /**
+     * Look up a name missing from the cache. Must not be called while holding
+     * the Leaderboard lock, since it queries the database.
+     */
+    private static String getName(int player_id) {
+        Player player = PlayerDAO.getPlayer(player_id);
+        String name = player == null ? "" : player.getName();
+
+        synchronized (Leaderboard.class) {
+            String cached = playerNames.get(player_id);
+            if (cached != null) {
+                return cached;
+            }
+            playerNames.put(player_id, name);
+        }
+
+        return name;
+    }
+
+    /**
+     * Treap ordered by descending score, then ascending player ID, with each
+     * node storing the size of its subtree.
+     */
+    private static class RankTree {
+
+        private static class Node {
+
+            private final int score;
+            private final int player_id;
+            private final int priority;
+            private int size = 1;
+            private Node left, right;
+
+            private Node(int score, int player_id, int priority) {
+                this.score = score;
+                this.player_id = player_id;
+                this.priority = priority;
+            }
+        }
+
+        private final Random random = new Random();
+        private Node root;
+
+        private static int size(Node node) {
+            return node == null ? 0 : node.size;
+        }
+
+        private static int compare(int score, int player_id, Node node) {
+            if (score != node.score) {
+                return score > node.score ? -1 : 1;
+            }
+            return player_id < node.player_id ? -1 : (player_id == node.player_id ? 0 : 1);
+        }
+
+        private static Node update(Node node) {
+            node.size = 1 + size(node.left) + size(node.right);
+            return node;
+        }
+
+        private static Node rotateRight(Node node) {
+            Node left = node.left;
+            node.left = left.right;
+            left.right = update(node);
+            return update(left);
+        }
+
+        private static Node rotateLeft(Node node) {
+            Node right = node.right;
+            node.right = right.left;
+            right.left = update(node);
+            return update(right);
+        }
+
+        public int size() {
+            return size(root);
+        }
+
+        public void insert(int score, int player_id) {
+            root = insert(root, new Node(score, player_id, random.nextInt()));
+        }
+
+        private Node insert(Node node, Node entry) {
+            if (node == null) {
+                return entry;
+            }
+
+            if (compare(entry.score, entry.player_id, node) < 0) {
+                node.left = insert(node.left, entry);
+                if (node.left.priority > node.priority) {
+                    node = rotateRight(node);
+                }
+            } else {
+                node.right = insert(node.right, entry);
+                if (node.right.priority > node.priority) {
+                    node = rotateLeft(node);
+                }
+            }
+
+            return update(node);
+        }
+
+        public void remove(int score, int player_id) {
+            root = remove(root, score, player_id);
+        }
+
+        private Node remove(Node node, int score, int player_id) {
+            if (node == null) {
+                return null;
+            }
+
+            int cmp = compare(score, player_id, node);
+            if (cmp < 0) {
+                node.left = remove(node.left, score, player_id);
+            } else if (cmp > 0) {
+                node.right = remove(node.right, score, player_id);
+            } else if (node.left == null) {
+                return node.right;
+            } else if (node.right == null) {
+                return node.left;
+            } else if (node.left.priority > node.right.priority) {
+                node = rotateRight(node);
+                node.right = remove(node.right, score, player_id);
+            } else {
+                node = rotateLeft(node);
+                node.left = remove(node.left, score, player_id);
+            }
+
+            return update(node);
+        }
+
+        /**
+         * Number of entries ordered strictly before (score, player_id).
+         */
+        public int rank(int score, int player_id) {
+            int rank = 0;
+            Node node = root;
+
+            while (node != null) {
+                int cmp = compare(score, player_id, node);
+                if (cmp <= 0) {
+                    node = node.left;
+                } else {
+                    rank += size(node.left) + 1;
+                    node = node.right;
+                }
+            }
+
+            return rank;
+        }
+
+        /**
+         * Entry at the given 0-based position.
+         */
+        public Node select(int index) {
+            Node node = root;
+
+            while (node != null) {
+                int leftSize = size(node.left);
+                if (index < leftSize) {
+                    node = node.left;
+                } else if (index == leftSize) {
+                    return node;
+                } else {
+                    index -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+
+            return null;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package core;
+
+// Java Imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Other Imports
+import db.ShopDAO;
+import metadata.Constants;
+import model.ShopItem;
+import model.SpeciesType;
+import net.response.ResponseSpeciesList;
+import net.response.shop.ResponseShop;
+import util.Log;
+
+/**
+ * The ShopCatalog class holds the contents of the "shop" table in memory,
+ * expanded into ShopItems and indexed by organism type and level. The
+ * catalog is an immutable snapshot; reload() builds a new one and swaps it
+ * in, so readers never see a partly loaded shop.
+ *
+ * Each snapshot also caches the encoded ResponseShop and ResponseSpeciesList
+ * for every filter asked of it, so repeated requests send the same bytes
+ * without rebuilding the packet. The table is checked for changes every
+ * Constants.SAVE_INTERVAL milliseconds.
+ */
+public class ShopCatalog {
+
+    private static volatile Snapshot snapshot;
+    private static long checksum = -1;
+    private static Timer refreshTimer;
+
+    private ShopCatalog() {
+    }
+
+    /**
+     * Load the catalog and start watching the table for changes.
+     */
+    public static synchronized void init() {
+        Log.console("Loading Shop Catalog...");
+        reload();
+        Log.println("Done!");
+
+        if (refreshTimer == null) {
+            refreshTimer = new Timer("ShopCatalog", true);
+            refreshTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    long current = ShopDAO.getChecksum();
+
+                    if (current != -1 && current != getChecksum()) {
+                        Log.println("Shop table changed, reloading catalog");
+                        reload();
+                    }
+                }
+            }, Constants.SAVE_INTERVAL, Constants.SAVE_INTERVAL);
+        }
+    }
+
+    private static synchronized long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Rebuild the catalog from the database and replace the current one.
+     * The current catalog is kept if the table cannot be read.
+     */
+    public static synchronized void reload() {
+        long current = ShopDAO.getChecksum();
+        List<String[]> rows = ShopDAO.getShopRows();
+
+        if (rows != null) {
+            checksum = current;
+            snapshot = new Snapshot(rows);
+        } else if (snapshot == null) {
+            snapshot = new Snapshot(Collections.<String[]>emptyList());
+        }
+    }
+
+    private static Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+
+        if (current == null) {
+            synchronized (ShopCatalog.class) {
+                if (snapshot == null) {
+                    reload();
+                }
+                current = snapshot;
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * @param minLevel
+     * @param maxLevel
+     * @param types organism types to include, or none for all
+     * @return items ordered by level, then as listed in the table
+     */
+    public static List<ShopItem> getItems(int minLevel, int maxLevel, int... types) {
+        return getSnapshot().getItems(minLevel, maxLevel, types);
+    }
+
+    public static ResponseShop getShopResponse(int minLevel, int maxLevel, int... types) {
+        return getSnapshot().getShopResponse(minLevel, maxLevel, types);
+    }
+
+    public static ResponseSpeciesList getSpeciesListResponse(int minLevel, int maxLevel, int... types) {
+        return getSnapshot().getSpeciesListResponse(minLevel, maxLevel, types);
+    }
+
+    private static ShopItem createItem(SpeciesType data, int level) {
+        String type;
+
+        if (data.getOrganismType() == Constants.ORGANISM_TYPE_ANIMAL) {
+            type = "Animal";
+        } else if (data.getOrganismType() == Constants.ORGANISM_TYPE_PLANT) {
+            type = "Plant";
+        } else {
+            return null;
+        }
+
+        ShopItem item = new ShopItem(data.getID(), level, data.getName(), data.getDescription(), data.getCost());
+
+        item.setExtraArgs(Collections.unmodifiableList(Arrays.asList(
+                String.valueOf((int) data.getBiomass()), String.valueOf(data.getDietType()),
+                String.valueOf(data.getTrophicLevel()), join(data.getPredatorIDs()), join(data.getPreyIDs()))));
+        item.setCategoryList(Collections.unmodifiableList(Arrays.asList(type, data.getCategory())));
+        item.setTagList(Collections.<String>emptyList());
+
+        return item;
+    }
+
+    private static String join(int[] values) {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(values[i]);
+        }
+
+        return sb.toString();
+    }
+
+    private static class Snapshot {
+
+        // Level -> Items, in the order of the table's items column
+        private final TreeMap<Integer, List<Entry>> byLevel = new TreeMap<Integer, List<Entry>>();
+        // Filter -> Result
+        private final ConcurrentMap<String, List<ShopItem>> items = new ConcurrentHashMap<String, List<ShopItem>>();
+        private final ConcurrentMap<String, ResponseShop> shopResponses = new ConcurrentHashMap<String, ResponseShop>();
+        private final ConcurrentMap<String, ResponseSpeciesList> speciesResponses = new ConcurrentHashMap<String, ResponseSpeciesList>();
+
+        private Snapshot(List<String[]> rows) {
+            for (String[] row : rows) {
+                int level = Integer.parseInt(row[0]);
+
+                for (String item_id : row[1].split(",")) {
+                    SpeciesType data;
+
+                    try {
+                        data = ServerResources.getSpeciesTable().getSpecies(Integer.parseInt(item_id.trim()));
+                    } catch (NumberFormatException ex) {
+                        Log.println_e("Invalid shop item: " + item_id);
+                        continue;
+                    }
+
+                    ShopItem item = data == null ? null : createItem(data, level);
+
+                    if (item != null) {
+                        List<Entry> list = byLevel.get(level);
+                        if (list == null) {
+                            list = new ArrayList<Entry>();
+                            byLevel.put(level, list);
+                        }
+                        list.add(new Entry(data.getOrganismType(), item));
+                    }
+                }
+            }
+        }
+
+        private static String key(int minLevel, int maxLevel, int[] types) {
+            int[] sorted = types.clone();
+            Arrays.sort(sorted);
+            return minLevel + "," + maxLevel + ":" + Arrays.toString(sorted);
+        }
+
+        private List<ShopItem> getItems(int minLevel, int maxLevel, int[] types) {
+            String key = key(minLevel, maxLevel, types);
+            List<ShopItem> result = items.get(key);
+
+            if (result == null) {
+                result = Collections.unmodifiableList(find(minLevel, maxLevel, types));
+                items.putIfAbsent(key, result);
+            }
+
+            return result;
+        }
+
+        private List<ShopItem> find(int minLevel, int maxLevel, int[] types) {
+            List<ShopItem> result = new ArrayList<ShopItem>();
+
+            if (minLevel > maxLevel) {
+                return result;
+            }
+
+            for (List<Entry> list : byLevel.subMap(minLevel, true, maxLevel, true).values()) {
+                for (Entry entry : list) {
+                    if (types.length == 0 || contains(types, entry.organismType)) {
+                        result.add(entry.item);
+                    }
+                }
+            }
+
+            return result;
+        }
+
+        private static boolean contains(int[] values, int value) {
+            for (int v : values) {
+                if (v == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private ResponseShop getShopResponse(int minLevel, int maxLevel, int[] types) {
+            String key = key(minLevel, maxLevel, types);
+            ResponseShop response = shopResponses.get(key);
+
+            if (response == null) {
+                response = new ResponseShop();
+                response.setShopList(getItems(minLevel, maxLevel, types));
+                response.getBytes();
+
+                ResponseShop existing = shopResponses.putIfAbsent(key, response);
+                if (existing != null) {
+                    response = existing;
+                }
+            }
+
+            return response;
+        }
+
+        private ResponseSpeciesList getSpeciesListResponse(int minLevel, int maxLevel, int[] types) {
+            String key = key(minLevel, maxLevel, types);
+            ResponseSpeciesList response = speciesResponses.get(key);
+
+            if (response == null) {
+                response = new ResponseSpeciesList();
+                response.setSpeciesList(getItems(minLevel, maxLevel, types));
+                response.getBytes();
+
+                ResponseSpeciesList existing = speciesResponses.putIfAbsent(key, response);
+                if (existing != null) {
+                    response = existing;
+                }
+            }
+
+            return response;
+        }
+    }
+
+    private static class Entry {
+
+        private final int organismType;
+        private final ShopItem item;
+
+        private Entry(int organismType, ShopItem item) {
+            this.organismType = organismType;
+            this.item = item;
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package core.badge;
 
 // Java Imports
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,17 +24,26 @@ import util.EventType;
 import core.Objective;
 import db.badge.BadgeDAO;
 import db.ScoreDAO;
+import metadata.Constants;
 import model.Ecosystem;
 import net.response.badge.ResponseBadgeList;
 import net.response.badge.ResponseBadgeUpdate;
 import util.GameTimer;
+import util.Log;
 import util.NetworkFunctions;
+import util.QuantileSketch;
 
 public class BadgeController {
 
     // Environment Score Max Threshold
     public static int maxScoreThreshold;
     public static GameTimer badgeScoreTimer = new GameTimer();
+    private static boolean badgeScoreTimerStarted;
+    // Environment Score Distribution
+    private static final double SCORE_SKETCH_ACCURACY = 0.01;
+    private static volatile QuantileSketch scoreSketch;
+    // Set when a recorded score did not match the sketch; rebuilt on the next update
+    private static volatile boolean scoreSketchDrifted;
     // Other
     private int player_id;
     private EventHandler eventHandler;
@@ -43,44 +58,179 @@ public class BadgeController {
         load();
     }
 
+    /**
+     * Update badge thresholds from the environment score sketch. The first
+     * time this is called, the sketch is read from the copy saved at the last
+     * clean shutdown, or rebuilt from the database if there is none. The
+     * saved copy is deleted once read, so after an unclean stop, which may
+     * have lost recorded scores, the sketch is always rebuilt.
+     */
     public static void setBadgeScores() {
-        int threshold = 0;
-
-        List<Integer> scoreList = ScoreDAO.getEnvironmentScores();
-
-        if (scoreList.size() >= 10) {
-            // Create 10 Bins
-            int numBins = 10;
-            List<Integer[]> binList = new ArrayList<Integer[]>(numBins);
-            int interval = scoreList.get(0) / numBins;
-            // Initialize Bins
-            for (int i = 0; i < numBins; i++) {
-                binList.add(new Integer[]{i * interval, 0});
+        synchronized (BadgeController.class) {
+            if (scoreSketch == null || scoreSketchDrifted) {
+                if (scoreSketch == null) {
+                    loadScoreSketch();
+                } else {
+                    Log.println_e("Score sketch drifted from the database; rebuilding");
+                    recomputeScoreSketch();
+                }
+                scoreSketchDrifted = false;
             }
-            // Determine Frequencies
-            for (int score : scoreList) {
-                binList.get(score / (interval + 1))[1]++;
+
+            if (!badgeScoreTimerStarted) {
+                badgeScoreTimerStarted = true;
+                // Update Every 30 Minutes
+                badgeScoreTimer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        setBadgeScores();
+                    }
+                }, 1800000, 1800000);
+
+                Runtime.getRuntime().addShutdownHook(new Thread("ScoreSketch-Shutdown") {
+                    @Override
+                    public void run() {
+                        saveScoreSketch();
+                    }
+                });
             }
-            // Sort Frequecies by Descending Order
-            Collections.sort(binList, new Comparator<Integer[]>() {
-                @Override
-                public int compare(Integer[] t, Integer[] t1) {
-                    int value = t1[1].compareTo(t[1]);
-                    return value == 0 ? t1[0].compareTo(t[0]) : value;
-                }
-            });
-            // Get Most Frequent Score
-            threshold = binList.get(0)[0] + interval;
-            // Update Every 30 Minutes
-            badgeScoreTimer.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    setBadgeScores();
+        }
+
+        maxScoreThreshold = Math.max(50000, calcScoreThreshold(scoreSketch));
+    }
+
+    /**
+     * Find the most frequent score among 10 equal-width bins spanning zero to
+     * the highest score, and return the upper bound of that bin.
+     *
+     * @param sketch
+     * @return threshold, or 0 if there are fewer than 10 scores
+     */
+    private static int calcScoreThreshold(QuantileSketch sketch) {
+        if (sketch.getCount() < 10) {
+            return 0;
+        }
+
+        // Create 10 Bins
+        int numBins = 10;
+        int interval = (int) Math.round(sketch.getMax()) / numBins;
+        if (interval == 0) {
+            return 0;
+        }
+        // Determine Frequencies, keeping the highest bin among ties
+        int bestBin = 0;
+        long bestCount = -1;
+        for (int i = 0; i < numBins; i++) {
+            long lower = i == 0 ? 0 : sketch.rank(i * (interval + 1) - 1);
+            long upper = i == numBins - 1 ? sketch.getCount() : sketch.rank((i + 1) * (interval + 1) - 1);
+
+            if (upper - lower >= bestCount) {
+                bestCount = upper - lower;
+                bestBin = i;
+            }
+        }
+        // Get Most Frequent Score
+        return bestBin * interval + interval;
+    }
+
+    /**
+     * Record a change to an ecosystem's high score.
+     *
+     * @param previous the ecosystem's previous high score, or null if new
+     * @param score
+     */
+    public static void recordScore(Integer previous, int score) {
+        QuantileSketch sketch = scoreSketch;
+
+        if (sketch != null
+                && !sketch.replace(previous == null ? null : previous.doubleValue(), score)) {
+            scoreSketchDrifted = true;
+        }
+    }
+
+    public static QuantileSketch getScoreSketch() {
+        return scoreSketch;
+    }
+
+    /**
+     * Rebuild the score sketch from every ecosystem in the database. This is
+     * a full table scan and is only needed when no saved sketch exists or the
+     * saved one is suspected to have drifted.
+     */
+    public static void recomputeScoreSketch() {
+        QuantileSketch sketch = new QuantileSketch(SCORE_SKETCH_ACCURACY);
+
+        for (int score : ScoreDAO.getEnvironmentScores()) {
+            sketch.add(score);
+        }
+
+        scoreSketch = sketch;
+    }
+
+    private static void loadScoreSketch() {
+        File file = new File(Constants.SCORE_SKETCH_PATH);
+
+        if (file.exists()) {
+            DataInputStream in = null;
+
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                scoreSketch = QuantileSketch.read(in);
+            } catch (IOException ex) {
+                Log.println_e("Score sketch could not be read: " + ex.getMessage());
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException ex) {
+                    }
                 }
-            }, 1800000, 1800000);
+            }
+
+            // Only valid until scores change; saved again at shutdown
+            file.delete();
+            if (scoreSketch != null) {
+                return;
+            }
+        }
+
+        recomputeScoreSketch();
+    }
+
+    public static void saveScoreSketch() {
+        QuantileSketch sketch = scoreSketch;
+
+        if (sketch == null) {
+            return;
         }
 
-        maxScoreThreshold = Math.max(50000, threshold);
+        File file = new File(Constants.SCORE_SKETCH_PATH);
+        File temp = new File(Constants.SCORE_SKETCH_PATH + ".tmp");
+        DataOutputStream out = null;
+
+        try {
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            sketch.write(out);
+            out.close();
+            out = null;
+
+            if (!temp.renameTo(file)) {
+                file.delete();
+                temp.renameTo(file);
+            }
+        } catch (IOException ex) {
+            Log.println_e("Score sketch could not be saved: " + ex.getMessage());
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
     }
 
     public final void load() {
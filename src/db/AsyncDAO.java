@@ -0,0 +1,150 @@
+package db;
+
+// Java Imports
+import java.util.concurrent.Callable;
+
+// Other Imports
+import convergegame.ConvergeAttempt;
+import convergegame.ConvergeHint;
+import db.clashgame.ClashPlayerDAO;
+import db.clashgame.DefenseConfigDAO;
+import model.Account;
+import model.Ecosystem;
+import model.Player;
+import model.clashgame.DefenseConfig;
+
+/**
+ * The AsyncDAO class wraps the DAO calls made by the busiest request handlers
+ * so they run on DBExecutor and return a DBFuture instead of blocking the
+ * network thread. Calls that are always made together are combined into a
+ * single task.
+ */
+public final class AsyncDAO {
+
+    private AsyncDAO() {
+    }
+
+    public static DBFuture<Account> getAccount(final String user_id, final String password) {
+        return DBExecutor.submit(new Callable<Account>() {
+            @Override
+            public Account call() {
+                return AccountDAO.getAccount(user_id, password);
+            }
+        });
+    }
+
+    public static DBFuture<Player> getPlayerByAccount(final int account_id) {
+        return DBExecutor.submit(new Callable<Player>() {
+            @Override
+            public Player call() {
+                return PlayerDAO.getPlayerByAccount(account_id);
+            }
+        });
+    }
+
+    /**
+     * Look up a player's ecosystem and render one of its charts.
+     *
+     * @param world_id
+     * @param player_id
+     * @param type 0 for biomass, otherwise score
+     * @return CSV, or null if there is no chart
+     */
+    public static DBFuture<String> getChartCSV(final int world_id, final int player_id, final short type) {
+        return DBExecutor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                Ecosystem ecosystem = EcosystemDAO.getEcosystem(world_id, player_id);
+
+                if (ecosystem == null) {
+                    return null;
+                } else if (type == 0) {
+                    return ChartSeriesDAO.getBiomassCSV(ecosystem.getManipulationID());
+                } else {
+                    return ChartSeriesDAO.getScoreCSV(ecosystem.getID());
+                }
+            }
+        });
+    }
+
+    public static DBFuture<ConvergeHint> getNextConvergeHint(final int hint_id_offset) {
+        return DBExecutor.submit(new Callable<ConvergeHint>() {
+            @Override
+            public ConvergeHint call() {
+                return ConvergeHintDAO.getNextConvergeHint(hint_id_offset);
+            }
+        });
+    }
+
+    public static DBFuture<Integer> getConvergeHintCount() {
+        return DBExecutor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return ConvergeHintDAO.getConvergeHintCount();
+            }
+        });
+    }
+
+    public static DBFuture<ConvergeAttempt> getNextConvergeAttempt(final int player_id,
+            final int ecosystem_id, final int attempt_id_offset) {
+        return DBExecutor.submit(new Callable<ConvergeAttempt>() {
+            @Override
+            public ConvergeAttempt call() {
+                return ConvergeAttemptDAO.getNextConvergeAttempt(player_id, ecosystem_id, attempt_id_offset);
+            }
+        });
+    }
+
+    public static DBFuture<int[]> getMostRecentConvergeAttemptCount(final int player_id) {
+        return DBExecutor.submit(new Callable<int[]>() {
+            @Override
+            public int[] call() {
+                return ConvergeAttemptDAO.getMostRecentConvergeAttemptCount(player_id);
+            }
+        });
+    }
+
+    public static DBFuture<Integer> getConvergeAttemptCount(final int player_id, final int ecosystem_id) {
+        return DBExecutor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return ConvergeAttemptDAO.getConvergeAttemptCount(player_id, ecosystem_id);
+            }
+        });
+    }
+
+    public static DBFuture<Integer> updateConvergeAttemptScore(final int player_id,
+            final int ecosystem_id, final int attempt_id, final int score) {
+        return DBExecutor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return ConvergeAttemptDAO.updateConvergeAttemptScore(player_id, ecosystem_id, attempt_id, score);
+            }
+        });
+    }
+
+    /**
+     * @param player_id
+     * @return the player's defense, or null if the player or defense is missing
+     */
+    public static DBFuture<DefenseConfig> findClashDefense(final int player_id) {
+        return DBExecutor.submit(new Callable<DefenseConfig>() {
+            @Override
+            public DefenseConfig call() {
+                if (ClashPlayerDAO.findById(player_id) == null) {
+                    return null;
+                }
+                return DefenseConfigDAO.findByPlayerId(player_id);
+            }
+        });
+    }
+
+    public static DBFuture<DefenseConfig> findDefenseConfig(final int player_id) {
+        return DBExecutor.submit(new Callable<DefenseConfig>() {
+            @Override
+            public DefenseConfig call() {
+                return DefenseConfigDAO.findByPlayerId(player_id);
+            }
+        });
+    }
+}
@@ -0,0 +1,211 @@
+package db;
+
+// Java Imports
+import java.io.IOException;
+
+// Other Imports
+import util.CSVParser;
+import util.Log;
+import util.TimeSeriesStore;
+
+/**
+ * Storage for the score and biomass charts. Points are appended to
+ * TimeSeriesStore segment files as they are produced, and the legacy CSV
+ * strings are rendered only when a client asks for them.
+ *
+ * Score charts saved before this store existed are imported once from
+ * csv_score the first time they are used. Biomass charts are rewritten in full
+ * by each simulation run, so older ones are read from csv_biomass until the
+ * next run records them here.
+ */
+public final class ChartSeriesDAO {
+
+    private static final String HEADER_KEY = "";
+    private static final String SCORE_KEY = "\"Environment Score\"";
+
+    private ChartSeriesDAO() {
+    }
+
+    private static String scoreSeriesName(int eco_id) {
+        return "score_" + eco_id;
+    }
+
+    private static String biomassSeriesName(String manipulation_id) {
+        return "biomass_" + manipulation_id.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+
+    /**
+     * Start a new score chart at month 1 with a score of 0.
+     *
+     * @param eco_id
+     */
+    public static void createScoreChart(int eco_id) {
+        try {
+            TimeSeriesStore.Series series = TimeSeriesStore.getInstance().open(scoreSeriesName(eco_id));
+            int header = series.defineRow(HEADER_KEY, "", false);
+            int row = series.defineRow(SCORE_KEY, SCORE_KEY, false);
+
+            series.setLength(header, 1);
+            series.put(header, 1, 1);
+            series.setLength(row, 1);
+            series.put(row, 1, 0);
+            series.commit();
+        } catch (IOException ex) {
+            Log.println_e(ex.getMessage());
+        }
+    }
+
+    /**
+     * Record the score for the current month. If months were skipped since
+     * the last update, they are filled with the same score; if this month
+     * already has a score, it is replaced.
+     *
+     * @param eco_id
+     * @param currentMonth
+     * @param score
+     */
+    public static void updateScore(int eco_id, int currentMonth, int score) {
+        try {
+            TimeSeriesStore.Series series = openScore(eco_id);
+            synchronized (series) {
+                int header = series.defineRow(HEADER_KEY, "", false);
+                int row = series.defineRow(SCORE_KEY, SCORE_KEY, false);
+
+                int lastMonth = series.getLength(header);
+
+                if (lastMonth == currentMonth) {
+                    series.put(row, currentMonth, score);
+                } else {
+                    for (int month = lastMonth + 1; month <= currentMonth; month++) {
+                        series.put(header, month, month);
+                        series.put(row, month, score);
+                    }
+                    if (currentMonth > lastMonth) {
+                        series.setLength(header, currentMonth);
+                        series.setLength(row, currentMonth);
+                    }
+                }
+
+                series.commit();
+            }
+        } catch (IOException ex) {
+            Log.println_e(ex.getMessage());
+        }
+    }
+
+    public static String getScoreCSV(int eco_id) {
+        try {
+            TimeSeriesStore.Series series = openScore(eco_id);
+            return series.isEmpty() ? null : series.toCSV();
+        } catch (IOException ex) {
+            Log.println_e(ex.getMessage());
+        }
+
+        return CSVDAO.getScoreCSV(eco_id);
+    }
+
+    /**
+     * Record a biomass chart produced by the simulation. Only cells that are
+     * new or changed since the last call are written.
+     *
+     * @param manipulation_id
+     * @param csv biomass CSV with node IDs in the labels
+     * @return the same chart with species names as labels
+     */
+    public static String updateBiomass(String manipulation_id, String csv) {
+        String biomass_csv = CSVParser.removeNodesFromCSV(csv);
+
+        try {
+            TimeSeriesStore.Series series = TimeSeriesStore.getInstance().open(biomassSeriesName(manipulation_id));
+            synchronized (series) {
+                append(series, csv, biomass_csv, true);
+                series.commit();
+            }
+        } catch (IOException ex) {
+            Log.println_e(ex.getMessage());
+        }
+
+        return biomass_csv;
+    }
+
+    public static String getBiomassCSV(String manipulation_id) {
+        try {
+            TimeSeriesStore.Series series = TimeSeriesStore.getInstance().open(biomassSeriesName(manipulation_id));
+            if (!series.isEmpty()) {
+                return series.toCSV();
+            }
+        } catch (IOException ex) {
+            Log.println_e(ex.getMessage());
+        }
+
+        return CSVDAO.getBiomassCSV(manipulation_id);
+    }
+
+    private static TimeSeriesStore.Series openScore(int eco_id) throws IOException {
+        TimeSeriesStore.Series series = TimeSeriesStore.getInstance().open(scoreSeriesName(eco_id));
+
+        synchronized (series) {
+            if (series.isEmpty()) {
+                String csv = CSVDAO.getScoreCSV(eco_id);
+                if (csv != null) {
+                    append(series, csv, csv, false);
+                    series.commit();
+                }
+            }
+        }
+
+        return series;
+    }
+
+    /**
+     * Copy a CSV into a series. keyCSV and labelCSV have the same lines in the
+     * same order; the first supplies each row's sort key and the second its
+     * displayed label and values.
+     */
+    private static void append(TimeSeriesStore.Series series, String keyCSV, String labelCSV,
+            boolean decimal) throws IOException {
+        String[] keyLines = keyCSV.split("\n", -1);
+        String[] labelLines = labelCSV.split("\n", -1);
+
+        for (int i = 0; i < keyLines.length && i < labelLines.length; i++) {
+            String line = labelLines[i];
+            boolean isHeader = i == 0;
+
+            if (!isHeader && line.isEmpty()) {
+                continue;
+            }
+
+            int labelEnd = labelEnd(line);
+            String sortKey = isHeader ? HEADER_KEY : keyLines[i].substring(0, labelEnd(keyLines[i]));
+            int row = series.defineRow(sortKey, line.substring(0, labelEnd), decimal && !isHeader);
+            // Keep empty cells, including trailing ones
+            String[] cells = labelEnd < line.length()
+                    ? line.substring(labelEnd + 1).split(",", -1)
+                    : new String[0];
+
+            for (int col = 1; col <= cells.length; col++) {
+                String value = cells[col - 1];
+                if (value.isEmpty()) {
+                    series.clear(row, col);
+                } else {
+                    series.put(row, col, (long) Double.parseDouble(value));
+                }
+            }
+
+            series.setLength(row, cells.length);
+        }
+    }
+
+    // Index just past a line's label: a quoted label may contain commas.
+    private static int labelEnd(String line) {
+        int start = 0;
+
+        if (line.startsWith("\"")) {
+            int close = line.indexOf('"', 1);
+            start = close < 0 ? line.length() : close;
+        }
+
+        int comma = line.indexOf(',', start);
+        return comma < 0 ? line.length() : comma;
+    }
+}
@@ -20,7 +20,7 @@ import org.apache.commons.dbcp.DriverManagerConnectionFactory;
  */
 public class ConnectionPool {
 
-    public static DataSource setupDataSource(String connectURI) {
+    public static DataSource setupDataSource(String connectURI, int maxActive, long maxWait) {
         /*
          * First, we'll need a ObjectPool that serves as the
          * actual pool of connections.
@@ -47,10 +47,10 @@ public class ConnectionPool {
          * job for now.
          */
         ObjectPool connectionPool = new GenericObjectPool(null,
-                -1, // Default is 8 changed to 16. Can change to -1 for no limit.
+                maxActive, // DBPoolSize in db.conf; -1 for no limit.
                 // GenericObjectPool.DEFAULT_MAX_ACTIVE,
                 GenericObjectPool.DEFAULT_WHEN_EXHAUSTED_ACTION,
-                GenericObjectPool.DEFAULT_MAX_WAIT,
+                maxWait > 0 ? maxWait : -1, // DBMaxWait in db.conf
                 GenericObjectPool.DEFAULT_MAX_IDLE, true, false, 3600000,
                 GenericObjectPool.DEFAULT_MAX_ACTIVE,
                 GenericObjectPool.DEFAULT_MIN_EVICTABLE_IDLE_TIME_MILLIS, true);
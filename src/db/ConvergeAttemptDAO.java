@@ -8,10 +8,13 @@ import java.sql.SQLException;
 
 // Other Imports
 import convergegame.ConvergeAttempt;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import metadata.Constants;
+import simulation.simjob.BiomassMatrix;
 import util.Log;
 
 /**
@@ -21,9 +24,88 @@ import util.Log;
  */
 public final class ConvergeAttemptDAO {
 
+    // Last attempt_id handed out per (player_id, ecosystem_id)
+    private static final ConcurrentMap<Long, AtomicInteger> lastAttemptIds =
+            new ConcurrentHashMap<Long, AtomicInteger>();
+    // Seed value when a player has no attempts for an ecosystem
+    private static final int NO_ATTEMPTS = Integer.MIN_VALUE;
+
     private ConvergeAttemptDAO() {
     }
 
+    private static long attemptKey(int player_id, int ecosystem_id) {
+        return ((long) player_id << 32) | (ecosystem_id & 0xffffffffL);
+    }
+
+    /**
+     * Reserve a unique attempt_id for a player's ecosystem. The requested id
+     * is used unless it is not greater than the last id already in use, in
+     * which case the next id after that is returned. The counter is seeded
+     * with a single MAX(attempt_id) query the first time a (player,
+     * ecosystem) pair is seen.
+     *
+     * @param player_id
+     * @param ecosystem_id
+     * @param attempt_id requested id
+     * @return reserved id
+     * @throws SQLException
+     */
+    public static int allocateAttemptId(int player_id, int ecosystem_id,
+            int attempt_id) throws SQLException {
+        Long key = attemptKey(player_id, ecosystem_id);
+        AtomicInteger lastId = lastAttemptIds.get(key);
+
+        if (lastId == null) {
+            AtomicInteger seeded = new AtomicInteger(getMaxAttemptId(player_id, ecosystem_id));
+            lastId = lastAttemptIds.putIfAbsent(key, seeded);
+            if (lastId == null) {
+                lastId = seeded;
+            }
+        }
+
+        int last, next;
+        do {
+            last = lastId.get();
+            next = last == NO_ATTEMPTS ? attempt_id : Math.max(attempt_id, last + 1);
+        } while (!lastId.compareAndSet(last, next));
+
+        return next;
+    }
+
+    //get highest attempt_id in use for specified ecosystem
+    private static int getMaxAttemptId(int player_id, int ecosystem_id)
+            throws SQLException {
+        int maxId = NO_ATTEMPTS;
+
+        String query = ""
+                + "SELECT MAX(`attempt_id`) FROM `converge_attempt` "
+                + "WHERE `player_id` = ? AND `ecosystem_id` = ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = GameDB.getConnection();
+            pstmt = con.prepareStatement(query);
+            pstmt.setInt(1, player_id);
+            pstmt.setInt(2, ecosystem_id);
+
+            rs = pstmt.executeQuery();
+
+            if (rs.next()) {
+                int value = rs.getInt(1);
+                if (!rs.wasNull()) {
+                    maxId = value;
+                }
+            }
+        } finally {
+            GameDB.closeConnection(con, pstmt, rs);
+        }
+
+        return maxId;
+    }
+
     public static int createAttempt(
             int player_id,
             int ecosystem_id,
@@ -41,27 +123,27 @@ public final class ConvergeAttemptDAO {
         
         Connection connection = null;
         PreparedStatement pstmt = null;
-        
-        //make sure attempt_id is unique
-        while (getConvergeAttempt (player_id, ecosystem_id, attempt_id) != null) {
-            attempt_id++;
-        }
 
         try {
+            //make sure attempt_id is unique
+            attempt_id = allocateAttemptId(player_id, ecosystem_id, attempt_id);
+
             connection = GameDB.getConnection();
-            pstmt = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+            pstmt = connection.prepareStatement(query);
             pstmt.setInt(1, player_id);
             pstmt.setInt(2, ecosystem_id);
             pstmt.setInt(3, attempt_id);
             pstmt.setBoolean(4, allow_hints);
             pstmt.setInt(5, hint_id);
             pstmt.setString(6, config);
-            pstmt.setString(7, csv);
+            pstmt.setString(7, BiomassMatrix.encode(csv));
             pstmt.executeUpdate();
             pstmt.close();
             
         } catch (SQLException ex) {
             attempt_id = Constants.ID_NOT_SET;
+            //drop the counter so the next attempt reseeds from the table
+            lastAttemptIds.remove(attemptKey(player_id, ecosystem_id));
             System.err.println ("SQL exception: " + ex.getMessage() + 
                     ", cause: " + ex.getCause());
         } finally {
@@ -295,6 +377,100 @@ public final class ConvergeAttemptDAO {
         return attempts;
     }
 
+    /**
+     * Receives rows from streamConvergeAttempts().
+     */
+    public interface AttemptHandler {
+
+        void onAttempt(ConvergeAttempt attempt);
+    }
+
+    /**
+     * Read every attempt, including config and csv, ordered by player,
+     * ecosystem and attempt. Rows are read with a forward-only streaming
+     * cursor, so only the current row is held in memory.
+     *
+     * @param handler called for each row, on the calling thread
+     * @return number of rows read
+     */
+    public static int streamConvergeAttempts(AttemptHandler handler) {
+        int count = 0;
+
+        String query = ""
+                + "SELECT * FROM `converge_attempt` "
+                + "ORDER BY `player_id`, `ecosystem_id`, `attempt_id` ASC";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = GameDB.getConnection();
+            pstmt = con.prepareStatement(query,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // MySQL Connector/J streams rows one at a time with this size
+            pstmt.setFetchSize(Integer.MIN_VALUE);
+
+            rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                ConvergeAttempt attempt = new ConvergeAttempt();
+
+                attempt.setPlayerId(rs.getInt("player_id"));
+                attempt.setEcosystemId(rs.getInt("ecosystem_id"));
+                attempt.setAttemptId(rs.getInt("attempt_id"));
+                attempt.setAllowHints(rs.getBoolean("allow_hints"));
+                attempt.setHintId(rs.getInt("hint_id"));
+                attempt.setTime(rs.getTimestamp("time"));
+                attempt.setScore(rs.getInt("score"));
+                attempt.setConfig(rs.getString("config"));
+                attempt.setCsv(rs.getString("csv"));
+
+                handler.onAttempt(attempt);
+                count++;
+            }
+        } catch (SQLException ex) {
+            Log.println_e(ex.getMessage());
+        } finally {
+            GameDB.closeConnection(con, pstmt, rs);
+        }
+
+        return count;
+    }
+
+    /**
+     * @return largest number of attempts any player made on one ecosystem
+     */
+    public static int getMaxAttemptsPerEcosystem() {
+        int maxCount = 0;
+
+        String query = ""
+                + "SELECT MAX(`cnt`) AS `max_cnt` FROM ("
+                + "SELECT COUNT(*) AS `cnt` FROM `converge_attempt` "
+                + "GROUP BY `player_id`, `ecosystem_id`) AS `counts`";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = GameDB.getConnection();
+            pstmt = con.prepareStatement(query);
+
+            rs = pstmt.executeQuery();
+
+            if (rs.next()) {
+                maxCount = rs.getInt("max_cnt");
+            }
+        } catch (SQLException ex) {
+            Log.println_e(ex.getMessage());
+        } finally {
+            GameDB.closeConnection(con, pstmt, rs);
+        }
+
+        return maxCount;
+    }
+
     public static int updateConvergeAttemptScore(int player_id, 
             int ecosystem_id, int attempt_id, int score) {
 
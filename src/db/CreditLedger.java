@@ -0,0 +1,196 @@
+package db;
+
+// Java Imports
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Other Imports
+import metadata.Constants;
+
+/**
+ * The CreditLedger class holds the authoritative credit balance of every
+ * player seen since startup. Balances are atomic counters, so credit changes
+ * are lock-free compare-and-set operations instead of a read and a write to
+ * the "player" table.
+ *
+ * Every change appends the player's ID to a journal. flush() drains the
+ * journal and writes the current balance of each player named in it back to
+ * the database as one batch; a background timer flushes every
+ * Constants.CREDIT_FLUSH_INTERVAL milliseconds, and once more at shutdown.
+ *
+ * A balance that cannot be read from the database is not seeded, since the
+ * next flush would write it over the stored one; the operation fails and
+ * returns -1 instead, and the next one tries to read it again.
+ */
+public final class CreditLedger {
+
+    private static final CreditLedger ledger = new CreditLedger();
+
+    // Player ID -> Balance
+    private final ConcurrentMap<Integer, AtomicInteger> balances = new ConcurrentHashMap<Integer, AtomicInteger>();
+    // IDs of players whose balance changed since the last flush
+    private final Queue<Integer> journal = new ConcurrentLinkedQueue<Integer>();
+    private final Timer flushTimer = new Timer("CreditLedger", true);
+
+    private CreditLedger() {
+        flushTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, Constants.CREDIT_FLUSH_INTERVAL, Constants.CREDIT_FLUSH_INTERVAL);
+
+        Runtime.getRuntime().addShutdownHook(new Thread("CreditLedger-Shutdown") {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+    }
+
+    public static CreditLedger getInstance() {
+        return ledger;
+    }
+
+    /**
+     * Offer a balance read from the database. The ledger keeps its own
+     * balance if it already has one, since it may not have been flushed yet.
+     *
+     * @param player_id
+     * @param credits balance stored in the database
+     * @return the player's current balance
+     */
+    public int seed(int player_id, int credits) {
+        AtomicInteger balance = balances.get(player_id);
+
+        if (balance == null) {
+            AtomicInteger loaded = new AtomicInteger(credits);
+            balance = balances.putIfAbsent(player_id, loaded);
+            if (balance == null) {
+                balance = loaded;
+            }
+        }
+
+        return balance.get();
+    }
+
+    /**
+     * @param player_id
+     * @return the player's counter, or null if the stored balance could not
+     *         be read
+     */
+    private AtomicInteger getCounter(int player_id) {
+        AtomicInteger balance = balances.get(player_id);
+
+        if (balance == null) {
+            Integer credits = PlayerDAO.getCredits(player_id);
+            if (credits == null) {
+                return null;
+            }
+            seed(player_id, credits);
+            balance = balances.get(player_id);
+        }
+
+        return balance;
+    }
+
+    /**
+     * @param player_id
+     * @return the player's balance, or -1 if it could not be read
+     */
+    public int getBalance(int player_id) {
+        AtomicInteger balance = getCounter(player_id);
+
+        return balance == null ? -1 : balance.get();
+    }
+
+    /**
+     * Add credits, capped at Constants.MAX_CREDITS.
+     *
+     * @param player_id
+     * @param amount
+     * @return the new balance, or -1 if the balance could not be read
+     */
+    public int add(int player_id, int amount) {
+        AtomicInteger balance = getCounter(player_id);
+        int current, updated;
+
+        if (balance == null) {
+            return -1;
+        }
+
+        do {
+            current = balance.get();
+            updated = (int) Math.min(Constants.MAX_CREDITS, (long) current + amount);
+        } while (!balance.compareAndSet(current, updated));
+
+        journal.add(player_id);
+        return updated;
+    }
+
+    /**
+     * Take credits only if the player has enough.
+     *
+     * @param player_id
+     * @param amount
+     * @return the new balance, or -1 if the balance was too low or could not
+     *         be read
+     */
+    public int debit(int player_id, int amount) {
+        AtomicInteger balance = getCounter(player_id);
+        int current;
+
+        if (balance == null) {
+            return -1;
+        }
+
+        do {
+            current = balance.get();
+            if (current < amount) {
+                return -1;
+            }
+        } while (!balance.compareAndSet(current, current - amount));
+
+        journal.add(player_id);
+        return current - amount;
+    }
+
+    /**
+     * Write the balances changed since the last flush to the database.
+     *
+     * @return true if there was nothing to write or the write succeeded
+     */
+    public synchronized boolean flush() {
+        Set<Integer> changed = new HashSet<Integer>();
+
+        for (Integer player_id = journal.poll(); player_id != null; player_id = journal.poll()) {
+            changed.add(player_id);
+        }
+
+        if (changed.isEmpty()) {
+            return true;
+        }
+
+        Map<Integer, Integer> rows = new HashMap<Integer, Integer>();
+        for (int player_id : changed) {
+            rows.put(player_id, balances.get(player_id).get());
+        }
+
+        if (PlayerDAO.updateCredits(rows)) {
+            return true;
+        }
+
+        // Put the players back in the journal so the next flush retries them
+        journal.addAll(changed);
+        return false;
+    }
+}
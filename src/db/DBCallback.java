@@ -0,0 +1,53 @@
+package db;
+
+// Java Imports
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+// Other Imports
+import util.Log;
+
+/**
+ * The DBCallback class receives the outcome of a DBFuture. Callbacks are run
+ * on the executor given to DBFuture.addCallback(), such as the GameClient that
+ * made the request, so they may touch game state the same way a request's
+ * process() method does.
+ *
+ * @param <T> result type
+ */
+public abstract class DBCallback<T> {
+
+    public abstract void onSuccess(T result);
+
+    /**
+     * Called instead of onSuccess() if the call failed, timed out or was
+     * rejected because the DB queue was full. This only logs the error;
+     * handlers that owe the client a response must override it to send one.
+     *
+     * @param cause
+     */
+    public void onFailure(Throwable cause) {
+        Log.println_e("Database request failed: " + cause);
+    }
+
+    final void complete(Future<T> future) {
+        T result;
+
+        try {
+            result = future.get();
+        } catch (ExecutionException ex) {
+            onFailure(ex.getCause());
+            return;
+        } catch (CancellationException ex) {
+            onFailure(ex);
+            return;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            onFailure(ex);
+            return;
+        }
+
+        onSuccess(result);
+    }
+}
@@ -0,0 +1,155 @@
+package db;
+
+// Java Imports
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Other Imports
+import util.Log;
+
+/**
+ * The DBExecutor class runs DAO calls on a dedicated pool of threads so that
+ * network and timer threads do not stall while the database is slow. The pool
+ * has one thread per pooled connection (DBPoolSize in conf/db.conf) and a
+ * bounded queue; calls that do not fit in the queue fail immediately rather
+ * than piling up. Each call is given a timeout (DBTimeout, in milliseconds)
+ * after which its future fails with a TimeoutException.
+ */
+public final class DBExecutor {
+
+    private static final int QUEUE_CAPACITY = 1024;
+    // Threads to use when the connection pool is unbounded
+    private static final int DEFAULT_THREADS = 8;
+
+    private static ThreadPoolExecutor executor;
+    private static ScheduledThreadPoolExecutor timer;
+    // Metrics
+    private static final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private static final AtomicLong rejectedCount = new AtomicLong();
+    private static final AtomicLong timeoutCount = new AtomicLong();
+
+    private DBExecutor() {
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            int threads = GameDB.getPoolSize() > 0 ? GameDB.getPoolSize() : DEFAULT_THREADS;
+
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new DBThreadFactory("DB"));
+            executor.allowCoreThreadTimeOut(true);
+            timer = new ScheduledThreadPoolExecutor(1, new DBThreadFactory("DB-Timeout"));
+        }
+
+        return executor;
+    }
+
+    /**
+     * Run a call with the configured timeout.
+     *
+     * @param <T> result type
+     * @param task
+     * @return DBFuture
+     */
+    public static <T> DBFuture<T> submit(Callable<T> task) {
+        return submit(task, GameDB.getTimeout());
+    }
+
+    /**
+     * @param <T> result type
+     * @param task
+     * @param timeout milliseconds, or 0 for none
+     * @return DBFuture
+     */
+    public static <T> DBFuture<T> submit(Callable<T> task, final long timeout) {
+        final DBFuture<T> future = new DBFuture<T>(QueryProfiler.attach(task));
+        ThreadPoolExecutor pool = getExecutor();
+
+        try {
+            pool.execute(future);
+        } catch (RejectedExecutionException ex) {
+            rejectedCount.incrementAndGet();
+            Log.printf_e("DB queue full (%d waiting), request rejected", pool.getQueue().size());
+            future.fail(ex);
+            return future;
+        }
+
+        int depth = pool.getQueue().size();
+        for (int peak = peakQueueDepth.get(); depth > peak; peak = peakQueueDepth.get()) {
+            if (peakQueueDepth.compareAndSet(peak, depth)) {
+                break;
+            }
+        }
+
+        if (timeout > 0 && !future.isDone()) {
+            future.setTimeoutTask(timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (future.expire(timeout)) {
+                        timeoutCount.incrementAndGet();
+                        Log.printf_e("DB request timed out after %d ms", timeout);
+                    }
+                }
+            }, timeout, TimeUnit.MILLISECONDS));
+        }
+
+        return future;
+    }
+
+    /**
+     * @return calls waiting for a thread
+     */
+    public static int getQueueDepth() {
+        return getExecutor().getQueue().size();
+    }
+
+    public static int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    public static int getActiveCount() {
+        return getExecutor().getActiveCount();
+    }
+
+    public static long getCompletedCount() {
+        return getExecutor().getCompletedTaskCount();
+    }
+
+    public static long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public static long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public static String getStatus() {
+        return String.format("DB executor: %d active, %d queued (peak %d), %d completed, %d rejected, %d timed out",
+                getActiveCount(), getQueueDepth(), getPeakQueueDepth(),
+                getCompletedCount(), getRejectedCount(), getTimeoutCount());
+    }
+
+    private static class DBThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private DBThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package db;
+
+// Java Imports
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The DBFuture class is the pending result of a call submitted to DBExecutor.
+ * Besides the usual Future methods, callbacks can be attached so a request
+ * handler can finish its work once the data arrives instead of blocking.
+ *
+ * @param <T> result type
+ */
+public class DBFuture<T> extends FutureTask<T> {
+
+    private final List<Runnable> listeners = new ArrayList<Runnable>();
+    private boolean notified;
+    private ScheduledFuture<?> timeoutTask;
+
+    DBFuture(Callable<T> task) {
+        super(task);
+    }
+
+    /**
+     * Run a callback once the result is available. If it already is, the
+     * callback is handed to the executor right away.
+     *
+     * @param callback
+     * @param executor where the callback runs
+     * @return this future
+     */
+    public DBFuture<T> addCallback(final DBCallback<T> callback, final Executor executor) {
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.complete(DBFuture.this);
+                    }
+                });
+            }
+        };
+
+        synchronized (listeners) {
+            if (!notified) {
+                listeners.add(listener);
+                return this;
+            }
+        }
+
+        listener.run();
+        return this;
+    }
+
+    void setTimeoutTask(ScheduledFuture<?> timeoutTask) {
+        this.timeoutTask = timeoutTask;
+    }
+
+    void fail(Throwable cause) {
+        setException(cause);
+    }
+
+    /**
+     * Fail the call if it has not finished. The query itself is left to run
+     * out on its connection, but its result is discarded.
+     *
+     * @param timeout milliseconds that were allowed
+     * @return true if this call timed out
+     */
+    boolean expire(long timeout) {
+        if (isDone()) {
+            return false;
+        }
+
+        setException(new TimeoutException("Database request exceeded " + timeout + " ms"));
+        return true;
+    }
+
+    @Override
+    protected void done() {
+        if (timeoutTask != null) {
+            timeoutTask.cancel(false);
+        }
+
+        List<Runnable> pending;
+        synchronized (listeners) {
+            notified = true;
+            pending = new ArrayList<Runnable>(listeners);
+            listeners.clear();
+        }
+
+        for (Runnable listener : pending) {
+            listener.run();
+        }
+    }
+}
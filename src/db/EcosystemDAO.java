@@ -8,6 +8,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 
 // Other Imports
+import core.Leaderboard;
 import model.Ecosystem;
 import util.Log;
 
@@ -44,6 +45,7 @@ public final class EcosystemDAO {
             if (rs.next()) {
                 int eco_id = rs.getInt(1);
                 ecosystem = new Ecosystem(eco_id, world_id, player_id, name, type);
+                Leaderboard.addEcosystem(eco_id, player_id);
             }
         } catch (SQLException ex) {
             Log.println_e(ex.getMessage());
@@ -37,7 +37,10 @@ public class GameDB {
                 configuration.getDBUsername(), configuration.getDBPassword()
         );
 
-        dataSource = ConnectionPool.setupDataSource(connectURI);
+        dataSource = ConnectionPool.setupDataSource(connectURI,
+                configuration.getPoolSize(), configuration.getMaxWait());
+        QueryProfiler.configure(configuration.getProfile(),
+                configuration.getSlowQuery(), configuration.getNPlusOne());
     }
 
     /**
@@ -51,17 +54,32 @@ public class GameDB {
     }
 
     /**
-     * Retrieve a connection from data source for database access.
+     * Retrieve a connection from data source for database access. Statements
+     * on it are timed by QueryProfiler unless DBProfile is 0.
      *
      * @return connection
      * @throws SQLException
      */
     public static Connection getConnection() throws SQLException {
+        getInstance();
+
+        return QueryProfiler.wrap(dataSource.getConnection());
+    }
+
+    private static synchronized GameDB getInstance() {
         if (gameDB == null) {
             gameDB = new GameDB();
         }
 
-        return dataSource.getConnection();
+        return gameDB;
+    }
+
+    public static int getPoolSize() {
+        return getInstance().configuration.getPoolSize();
+    }
+
+    public static int getTimeout() {
+        return getInstance().configuration.getTimeout();
     }
 
     public static void closeConnection(Connection con, PreparedStatement pstmt, ResultSet rs) {
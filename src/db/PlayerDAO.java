@@ -6,6 +6,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Map;
 
 // Other Imports
 import model.Player;
@@ -44,7 +45,7 @@ public final class PlayerDAO {
 
             if (rs.next()) {
                 int player_id = rs.getInt(1);
-                player = new Player(player_id, account_id, name, credits, color);
+                player = new Player(player_id, account_id, name, CreditLedger.getInstance().seed(player_id, credits), color);
             }
         } catch (SQLException ex) {
             Log.println_e(ex.getMessage());
@@ -73,7 +74,8 @@ public final class PlayerDAO {
 
             if (rs.next()) {
                 try {
-                    player = new Player(rs.getInt("player_id"), rs.getInt("account_id"), rs.getString("name"), rs.getInt("credits"), Color.parseColor(rs.getString("color")));
+                    player = new Player(rs.getInt("player_id"), rs.getInt("account_id"), rs.getString("name"),
+                            CreditLedger.getInstance().seed(rs.getInt("player_id"), rs.getInt("credits")), Color.parseColor(rs.getString("color")));
                     player.setLevel(rs.getShort("level"));
                     player.setExperience(rs.getInt("experience"));
                     player.setLastPlayed(rs.getString("last_played"));
@@ -108,7 +110,8 @@ public final class PlayerDAO {
 
             if (rs.next()) {
                 try {
-                    player = new Player(rs.getInt("player_id"), rs.getInt("account_id"), rs.getString("name"), rs.getInt("credits"), Color.parseColor(rs.getString("color")));
+                    player = new Player(rs.getInt("player_id"), rs.getInt("account_id"), rs.getString("name"),
+                            CreditLedger.getInstance().seed(rs.getInt("player_id"), rs.getInt("credits")), Color.parseColor(rs.getString("color")));
                     player.setLevel(rs.getShort("level"));
                     player.setExperience(rs.getInt("experience"));
                     player.setLastPlayed(rs.getString("last_played"));
@@ -143,7 +146,8 @@ public final class PlayerDAO {
 
             if (rs.next()) {
                 try {
-                    player = new Player(rs.getInt("player_id"), rs.getInt("account_id"), rs.getString("name"), rs.getInt("credits"), Color.parseColor(rs.getString("color")));
+                    player = new Player(rs.getInt("player_id"), rs.getInt("account_id"), rs.getString("name"),
+                            CreditLedger.getInstance().seed(rs.getInt("player_id"), rs.getInt("credits")), Color.parseColor(rs.getString("color")));
                     player.setLevel(rs.getShort("level"));
                     player.setExperience(rs.getInt("experience"));
                     player.setLastPlayed(rs.getString("last_played"));
@@ -178,7 +182,8 @@ public final class PlayerDAO {
 
             if (rs.next()) {
                 try {
-                    player = new Player(rs.getInt("player_id"), rs.getInt("account_id"), rs.getString("name"), rs.getInt("credits"), Color.parseColor(rs.getString("color")));
+                    player = new Player(rs.getInt("player_id"), rs.getInt("account_id"), rs.getString("name"),
+                            CreditLedger.getInstance().seed(rs.getInt("player_id"), rs.getInt("credits")), Color.parseColor(rs.getString("color")));
                     player.setLevel(rs.getShort("level"));
                     player.setExperience(rs.getInt("experience"));
                     player.setLastPlayed(rs.getString("last_played"));
@@ -243,7 +248,49 @@ public final class PlayerDAO {
         return status;
     }
 
-    public static boolean updateCredits(int player_id, int credits) {
+    /**
+     * Read a stored balance. Use CreditLedger for the current one.
+     *
+     * @param player_id
+     * @return credits column, 0 if the player does not exist, or null if the
+     *         query failed
+     */
+    public static Integer getCredits(int player_id) {
+        Integer credits = 0;
+
+        String query = "SELECT `credits` FROM `player` WHERE `player_id` = ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = GameDB.getConnection();
+            pstmt = con.prepareStatement(query);
+            pstmt.setInt(1, player_id);
+
+            rs = pstmt.executeQuery();
+
+            if (rs.next()) {
+                credits = rs.getInt("credits");
+            }
+        } catch (SQLException ex) {
+            Log.println_e(ex.getMessage());
+            credits = null;
+        } finally {
+            GameDB.closeConnection(con, pstmt, rs);
+        }
+
+        return credits;
+    }
+
+    /**
+     * Write several balances in one batch.
+     *
+     * @param credits Player ID -> Credits
+     * @return true if the batch was committed
+     */
+    public static boolean updateCredits(Map<Integer, Integer> credits) {
         boolean status = false;
 
         String query = "UPDATE `player` SET `credits` = ? WHERE `player_id` = ?";
@@ -253,14 +300,31 @@ public final class PlayerDAO {
 
         try {
             con = GameDB.getConnection();
+            con.setAutoCommit(false);
             pstmt = con.prepareStatement(query);
-            pstmt.setInt(1, credits);
-            pstmt.setInt(2, player_id);
 
-            status = pstmt.executeUpdate() > 0;
+            for (Map.Entry<Integer, Integer> entry : credits.entrySet()) {
+                pstmt.setInt(1, entry.getValue());
+                pstmt.setInt(2, entry.getKey());
+                pstmt.addBatch();
+            }
+
+            pstmt.executeBatch();
+            con.commit();
+            status = true;
         } catch (SQLException ex) {
             Log.println_e(ex.getMessage());
         } finally {
+            if (con != null) {
+                try {
+                    if (!status) {
+                        con.rollback();
+                    }
+                    con.setAutoCommit(true);
+                } catch (SQLException ex) {
+                    Log.println_e(ex.getMessage());
+                }
+            }
             GameDB.closeConnection(con, pstmt);
         }
 
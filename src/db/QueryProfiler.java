@@ -0,0 +1,443 @@
+package db;
+
+// Java Imports
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+// Other Imports
+import util.Log;
+import util.QuantileSketch;
+
+/**
+ * The QueryProfiler class times every statement run on a connection from
+ * GameDB.getConnection(). Connections and statements are wrapped in dynamic
+ * proxies, so the DAOs need no changes.
+ *
+ * Statements are grouped by shape: the SQL with literals and IN lists
+ * replaced by placeholders. For each shape it keeps a latency histogram and
+ * counts by source, where the source is the DAO method that ran it and the
+ * GameRequest being handled at the time. Statements slower than DBSlowQuery
+ * milliseconds are logged. When one request runs the same shape DBNPlusOne
+ * times, the likely N+1 pattern is logged once for that request.
+ *
+ * The summary from getReport() is logged at shutdown.
+ */
+public final class QueryProfiler {
+
+    private static final int MAX_SHAPES = 1000;
+    private static final int REPORT_SIZE = 25;
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static volatile boolean enabled;
+    private static volatile long slowQueryMicros;
+    private static volatile int nPlusOneThreshold;
+
+    // Raw SQL -> Shape
+    private static final ConcurrentMap<String, String> shapes = new ConcurrentHashMap<String, String>();
+    // Shape -> Stats
+    private static final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+    private static final ThreadLocal<Context> context = new ThreadLocal<Context>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread("QueryProfiler-Report") {
+            @Override
+            public void run() {
+                if (enabled && !stats.isEmpty()) {
+                    Log.println(getReport());
+                }
+            }
+        });
+    }
+
+    private QueryProfiler() {
+    }
+
+    /**
+     * @param enable
+     * @param slowQuery milliseconds after which a statement is logged, 0 for
+     *        never
+     * @param nPlusOne runs of one shape within a request that are reported,
+     *        0 for never
+     */
+    public static void configure(boolean enable, int slowQuery, int nPlusOne) {
+        slowQueryMicros = slowQuery > 0 ? slowQuery * 1000L : Long.MAX_VALUE;
+        nPlusOneThreshold = nPlusOne > 0 ? nPlusOne : Integer.MAX_VALUE;
+        enabled = enable;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param con
+     * @return a connection whose statements are timed, or con itself if
+     *         profiling is off
+     */
+    public static Connection wrap(Connection con) {
+        if (!enabled || con == null) {
+            return con;
+        }
+
+        return (Connection) Proxy.newProxyInstance(QueryProfiler.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(con));
+    }
+
+    /**
+     * Attribute statements on this thread to a request until endRequest().
+     *
+     * @param name request type
+     */
+    public static void beginRequest(String name) {
+        if (enabled) {
+            context.set(new Context(name));
+        }
+    }
+
+    public static void endRequest() {
+        context.remove();
+    }
+
+    /**
+     * Carry the current request over to a task run on another thread, such
+     * as a DBExecutor call or a DBFuture callback.
+     *
+     * @param <T> result type
+     * @param task
+     * @return task, wrapped if there is a request to carry
+     */
+    public static <T> Callable<T> attach(final Callable<T> task) {
+        final Context current = context.get();
+
+        if (current == null) {
+            return task;
+        }
+
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                Context previous = context.get();
+                context.set(current);
+
+                try {
+                    return task.call();
+                } finally {
+                    restore(previous);
+                }
+            }
+        };
+    }
+
+    public static Runnable attach(final Runnable task) {
+        final Context current = context.get();
+
+        if (current == null) {
+            return task;
+        }
+
+        return new Runnable() {
+            @Override
+            public void run() {
+                Context previous = context.get();
+                context.set(current);
+
+                try {
+                    task.run();
+                } finally {
+                    restore(previous);
+                }
+            }
+        };
+    }
+
+    private static void restore(Context previous) {
+        if (previous == null) {
+            context.remove();
+        } else {
+            context.set(previous);
+        }
+    }
+
+    /**
+     * Replace literals with placeholders so statements that differ only in
+     * their values are counted together.
+     *
+     * @param sql
+     * @return shape
+     */
+    public static String getShape(String sql) {
+        if (sql == null) {
+            return "(unknown)";
+        }
+
+        String shape = shapes.get(sql);
+
+        if (shape == null) {
+            shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+            shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+            shape = IN_LIST.matcher(shape).replaceAll("IN (?)");
+            shape = WHITESPACE.matcher(shape).replaceAll(" ").trim();
+
+            if (shapes.size() < MAX_SHAPES) {
+                shapes.putIfAbsent(sql, shape);
+            }
+        }
+
+        return shape;
+    }
+
+    private static void record(String sql, long micros) {
+        String shape = getShape(sql);
+        Stats shapeStats = stats.get(shape);
+
+        if (shapeStats == null) {
+            if (stats.size() >= MAX_SHAPES) {
+                shape = "(other)";
+            }
+            shapeStats = new Stats(shape);
+            Stats existing = stats.putIfAbsent(shape, shapeStats);
+            if (existing != null) {
+                shapeStats = existing;
+            }
+        }
+
+        Context current = context.get();
+        String request = current == null ? "-" : current.name;
+        String caller = getCaller();
+        String source = request + " > " + caller;
+
+        shapeStats.add(micros, source);
+
+        if (micros >= slowQueryMicros) {
+            shapeStats.slow.incrementAndGet();
+            Log.printf("Slow query (%d ms) from %s: %s", micros / 1000, source, shape);
+        }
+
+        if (current != null && current.count(shape) == nPlusOneThreshold) {
+            shapeStats.nPlusOne.incrementAndGet();
+            Log.printf("Possible N+1 in %s: %s ran the same statement %d times: %s",
+                    request, caller, nPlusOneThreshold, shape);
+        }
+    }
+
+    /**
+     * @return the DAO method on the stack that issued the statement
+     */
+    private static String getCaller() {
+        StackTraceElement fallback = null;
+
+        for (StackTraceElement frame : new Throwable().getStackTrace()) {
+            String className = frame.getClassName();
+
+            if (className.startsWith("java.") || className.startsWith("javax.")
+                    || className.startsWith("sun.") || className.startsWith("jdk.")
+                    || className.startsWith("com.sun.") || className.contains("$Proxy")
+                    || className.startsWith(QueryProfiler.class.getName())) {
+                continue;
+            }
+
+            if (className.startsWith("db.")) {
+                return className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName();
+            }
+
+            if (fallback == null) {
+                fallback = frame;
+            }
+        }
+
+        if (fallback == null) {
+            return "(unknown)";
+        }
+
+        String className = fallback.getClassName();
+        return className.substring(className.lastIndexOf('.') + 1) + "." + fallback.getMethodName();
+    }
+
+    /**
+     * @return the statement shapes that took the most time in total, with
+     *         their latency percentiles and sources
+     */
+    public static String getReport() {
+        List<Stats> sorted = new ArrayList<Stats>(stats.values());
+        Collections.sort(sorted, new Comparator<Stats>() {
+            @Override
+            public int compare(Stats a, Stats b) {
+                long x = a.totalMicros.get(), y = b.totalMicros.get();
+                return x < y ? 1 : (x == y ? 0 : -1);
+            }
+        });
+
+        StringBuilder sb = new StringBuilder("Query profile (times in ms):\n");
+        sb.append(String.format("%8s %10s %8s %8s %8s %8s %6s %6s  %s%n",
+                "count", "total", "p50", "p95", "p99", "max", "slow", "n+1", "statement"));
+
+        for (Stats s : sorted.subList(0, Math.min(REPORT_SIZE, sorted.size()))) {
+            sb.append(String.format("%8d %10.1f %8.2f %8.2f %8.2f %8.2f %6d %6d  %s%n",
+                    s.count.get(), s.totalMicros.get() / 1000.0,
+                    s.latency.getQuantile(0.5) / 1000, s.latency.getQuantile(0.95) / 1000,
+                    s.latency.getQuantile(0.99) / 1000, s.maxMicros.get() / 1000.0,
+                    s.slow.get(), s.nPlusOne.get(), s.shape));
+
+            for (Map.Entry<String, AtomicLong> entry : s.sources.entrySet()) {
+                sb.append(String.format("%8d %s%n", entry.getValue().get(), entry.getKey()));
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Forget everything recorded so far.
+     */
+    public static void reset() {
+        stats.clear();
+    }
+
+    private static class Stats {
+
+        private static final int MAX_SOURCES = 32;
+
+        private final String shape;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+        private final AtomicLong slow = new AtomicLong();
+        private final AtomicLong nPlusOne = new AtomicLong();
+        private final QuantileSketch latency = new QuantileSketch(0.02);
+        // "Request > DAO.method" -> Count
+        private final ConcurrentMap<String, AtomicLong> sources = new ConcurrentHashMap<String, AtomicLong>();
+
+        private Stats(String shape) {
+            this.shape = shape;
+        }
+
+        private void add(long micros, String source) {
+            count.incrementAndGet();
+            totalMicros.addAndGet(micros);
+            latency.add(micros);
+
+            for (long max = maxMicros.get(); micros > max; max = maxMicros.get()) {
+                if (maxMicros.compareAndSet(max, micros)) {
+                    break;
+                }
+            }
+
+            AtomicLong sourceCount = sources.get(source);
+            if (sourceCount == null) {
+                if (sources.size() >= MAX_SOURCES) {
+                    source = "(other)";
+                }
+                sourceCount = new AtomicLong();
+                AtomicLong existing = sources.putIfAbsent(source, sourceCount);
+                if (existing != null) {
+                    sourceCount = existing;
+                }
+            }
+            sourceCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Statement counts for one request, by shape.
+     */
+    private static class Context {
+
+        private final String name;
+        private final ConcurrentMap<String, AtomicInteger> counts = new ConcurrentHashMap<String, AtomicInteger>();
+
+        private Context(String name) {
+            this.name = name;
+        }
+
+        private int count(String shape) {
+            AtomicInteger count = counts.get(shape);
+
+            if (count == null) {
+                count = new AtomicInteger();
+                AtomicInteger existing = counts.putIfAbsent(shape, count);
+                if (existing != null) {
+                    count = existing;
+                }
+            }
+
+            return count.incrementAndGet();
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private static class ConnectionHandler implements InvocationHandler {
+
+        private final Connection connection;
+
+        private ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = QueryProfiler.invoke(connection, method, args);
+            String name = method.getName();
+
+            if (result instanceof Statement && (name.startsWith("prepare") || name.equals("createStatement"))) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+
+                return Proxy.newProxyInstance(QueryProfiler.class.getClassLoader(),
+                        new Class<?>[]{method.getReturnType()}, new StatementHandler((Statement) result, sql));
+            }
+
+            return result;
+        }
+    }
+
+    private static class StatementHandler implements InvocationHandler {
+
+        private final Statement statement;
+        private final String sql;
+
+        private StatementHandler(Statement statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!method.getName().startsWith("execute")) {
+                return QueryProfiler.invoke(statement, method, args);
+            }
+
+            String executed = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            long start = System.nanoTime();
+
+            try {
+                return QueryProfiler.invoke(statement, method, args);
+            } finally {
+                record(executed, (System.nanoTime() - start) / 1000);
+            }
+        }
+    }
+}
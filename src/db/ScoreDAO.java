@@ -9,6 +9,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 // Other Imports
+import core.Leaderboard;
+import core.badge.BadgeController;
 import util.Log;
 
 /**
@@ -21,23 +23,26 @@ public final class ScoreDAO {
     private ScoreDAO() {
     }
 
+    private static String joinPatterns(List<String> patternList) {
+        StringBuilder pattern = new StringBuilder();
+
+        for (int i = 0; i < patternList.size(); i++) {
+            if (i > 0) {
+                pattern.append("|");
+            }
+            pattern.append(patternList.get(i));
+        }
+
+        return pattern.toString();
+    }
+
     public static List<String[]> getBestEnvScore(int min_range, int max_range, List<String> patternList) {
         List<String[]> scoreList = new ArrayList<String[]>();
 
         String query = "SELECT * FROM `ecosystem` z INNER JOIN `player` p ON z.`player_id` = p.`player_id`";
 
         if (!patternList.isEmpty()) {
-            query += " WHERE p.`username` REGEXP '";
-
-            for (int i = 0; i < patternList.size(); i++) {
-                query += patternList.get(i);
-
-                if (i < patternList.size() - 1) {
-                    query += "|";
-                }
-            }
-
-            query += "'";
+            query += " WHERE p.`username` REGEXP ?";
         }
 
         query += " GROUP BY z.`player_id` ORDER BY z.`high_score` DESC LIMIT ?, ?";
@@ -49,8 +54,12 @@ public final class ScoreDAO {
         try {
             con = GameDB.getConnection();
             pstmt = con.prepareStatement(query);
-            pstmt.setInt(1, min_range);
-            pstmt.setInt(2, max_range);
+            int index = 1;
+            if (!patternList.isEmpty()) {
+                pstmt.setString(index++, joinPatterns(patternList));
+            }
+            pstmt.setInt(index++, min_range);
+            pstmt.setInt(index, max_range);
 
             rs = pstmt.executeQuery();
 
@@ -112,17 +121,7 @@ public final class ScoreDAO {
         String query = "SELECT * FROM `ecosystem` z INNER JOIN `player` p ON z.`player_id` = p.`player_id`";
 
         if (!patternList.isEmpty()) {
-            query += " WHERE p.`username` REGEXP '";
-
-            for (int i = 0; i < patternList.size(); i++) {
-                query += patternList.get(i);
-
-                if (i < patternList.size() - 1) {
-                    query += "|";
-                }
-            }
-
-            query += "'";
+            query += " WHERE p.`username` REGEXP ?";
         }
 
         query += " GROUP BY z.`player_id` ORDER BY z.`accumulated_score` DESC LIMIT ?, ?";
@@ -134,8 +133,12 @@ public final class ScoreDAO {
         try {
             con = GameDB.getConnection();
             pstmt = con.prepareStatement(query);
-            pstmt.setInt(1, min_range);
-            pstmt.setInt(2, max_range);
+            int index = 1;
+            if (!patternList.isEmpty()) {
+                pstmt.setString(index++, joinPatterns(patternList));
+            }
+            pstmt.setInt(index++, min_range);
+            pstmt.setInt(index, max_range);
 
             rs = pstmt.executeQuery();
 
@@ -158,17 +161,7 @@ public final class ScoreDAO {
         String query = "SELECT * FROM `ecosystem` z JOIN `player` p ON z.`player_id` = p.`player_id`";
 
         if (!patternList.isEmpty()) {
-            query += " WHERE p.`username` REGEXP '";
-
-            for (int i = 0; i < patternList.size(); i++) {
-                query += patternList.get(i);
-
-                if (i < patternList.size() - 1) {
-                    query += "|";
-                }
-            }
-
-            query += "'";
+            query += " WHERE p.`username` REGEXP ?";
         }
 
         query += " GROUP BY z.`player_id` ORDER BY z.`score` DESC LIMIT ?, ?";
@@ -180,8 +173,12 @@ public final class ScoreDAO {
         try {
             con = GameDB.getConnection();
             pstmt = con.prepareStatement(query);
-            pstmt.setInt(1, min_range);
-            pstmt.setInt(2, max_range);
+            int index = 1;
+            if (!patternList.isEmpty()) {
+                pstmt.setString(index++, joinPatterns(patternList));
+            }
+            pstmt.setInt(index++, min_range);
+            pstmt.setInt(index, max_range);
 
             rs = pstmt.executeQuery();
 
@@ -214,6 +211,11 @@ public final class ScoreDAO {
             pstmt.setInt(3, eco_id);
 
             status = pstmt.executeUpdate() > 0;
+
+            if (status) {
+                Integer previous = Leaderboard.updateHighScore(eco_id, highEnvScore);
+                BadgeController.recordScore(previous, highEnvScore);
+            }
         } catch (SQLException ex) {
             Log.println_e(ex.getMessage());
         } finally {
@@ -238,6 +240,10 @@ public final class ScoreDAO {
             pstmt.setInt(2, zone_id);
 
             status = pstmt.executeUpdate() > 0;
+
+            if (status) {
+                Leaderboard.updateAccumulatedScore(zone_id, score);
+            }
         } catch (SQLException ex) {
             Log.println_e(ex.getMessage());
         } finally {
@@ -273,4 +279,44 @@ public final class ScoreDAO {
 
         return scoreList;
     }
+
+    /**
+     * Get every ecosystem's scores along with its owner. Used to build the
+     * in-memory Leaderboard at startup.
+     *
+     * @return List of {eco_id, player_id, name, high_score, accumulated_score}
+     */
+    public static List<String[]> getEnvironmentScoreList() {
+        List<String[]> scoreList = new ArrayList<String[]>();
+
+        String query = "SELECT z.`eco_id`, z.`player_id`, p.`name`, z.`high_score`, z.`accumulated_score` "
+                + "FROM `ecosystem` z INNER JOIN `player` p ON z.`player_id` = p.`player_id`";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = GameDB.getConnection();
+            pstmt = con.prepareStatement(query);
+
+            rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                scoreList.add(new String[]{
+                    rs.getString("eco_id"),
+                    rs.getString("player_id"),
+                    rs.getString("name"),
+                    rs.getString("high_score"),
+                    rs.getString("accumulated_score")
+                });
+            }
+        } catch (SQLException ex) {
+            Log.println_e(ex.getMessage());
+        } finally {
+            GameDB.closeConnection(con, pstmt, rs);
+        }
+
+        return scoreList;
+    }
 }
@@ -6,18 +6,18 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 // Other Imports
-import core.ServerResources;
-import metadata.Constants;
+import core.ShopCatalog;
 import model.ShopItem;
-import model.SpeciesType;
 import util.Log;
 
 /**
  * Table(s) Required: shop
+ *
+ * Items are served from ShopCatalog, which loads this table once and keeps
+ * it in memory.
  * 
  * @author Gary
  */
@@ -26,49 +26,85 @@ public final class ShopDAO {
     private ShopDAO() {
     }
 
-    public static List<ShopItem> getItems(String... filters) throws SQLException {
-        List<ShopItem> shopList = new ArrayList<ShopItem>();
-
-        String query = "SELECT * FROM `shop`";
+    /**
+     * Find shop items matching every filter given. Filters take the form
+     * "level:min,max", "level:n" or "type:t1,t2,..." where the types are
+     * organism types.
+     *
+     * @param filters
+     * @return items ordered by level
+     */
+    public static List<ShopItem> getItems(String... filters) {
+        int minLevel = 0, maxLevel = Integer.MAX_VALUE;
+        int[] types = new int[0];
+
+        for (String filter : filters) {
+            String[] var = filter.split(":");
+            String[] value = var.length > 1 ? var[1].split(",", -1) : new String[]{""};
+
+            try {
+                if (var[0].equalsIgnoreCase("level")) {
+                    if (value.length > 1) {
+                        minLevel = value[0].trim().isEmpty() ? 0 : Integer.parseInt(value[0].trim());
+                        maxLevel = value[1].trim().isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(value[1].trim());
+                    } else {
+                        minLevel = maxLevel = Integer.parseInt(value[0].trim());
+                    }
+                } else if (var[0].equalsIgnoreCase("type")) {
+                    types = new int[value.length];
 
-        if (filters.length > 0) {
-            query += " WHERE ";
+                    for (int j = 0; j < value.length; j++) {
+                        types[j] = Integer.parseInt(value[j].trim());
+                    }
+                }
+            } catch (NumberFormatException ex) {
+                Log.println_e("Invalid shop filter: " + filter);
+            }
         }
 
-        for (int i = 0; i < filters.length; i++) {
-            String[] var = filters[i].split(":");
+        return ShopCatalog.getItems(minLevel, maxLevel, types);
+    }
 
-            String filter = var[0];
-            String[] value = var[1].split(",");
+    /**
+     * @return level and comma-separated species IDs of each row, or null if
+     *         the table could not be read
+     */
+    public static List<String[]> getShopRows() {
+        List<String[]> rows = new ArrayList<String[]>();
 
-            if (filter.equalsIgnoreCase("level")) {
-                if (value.length > 1) {
-                    String min = value[0], max = value[1];
+        String query = "SELECT `level`, `items` FROM `shop`";
 
-                    query += min.equals("") ? "`level` >= 0" : "`level` >= " + min;
-                    query += max.equals("") ? "" : " AND `level` <= " + max;
-                } else {
-                    query += "`level` = " + value[0];
-                }
-            } else if (filter.equalsIgnoreCase("type")) {
-                query += "`type` IN (" + value[0];
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
 
-                for (int j = 0; j < value.length; i++) {
-                    query += value[j];
+        try {
+            con = GameDB.getConnection();
+            pstmt = con.prepareStatement(query);
 
-                    if (j < value.length - 1) {
-                        query += ", ";
-                    } else {
-                        query += ")";
-                    }
-                }
-            }
+            rs = pstmt.executeQuery();
 
-            if (i < filters.length - 1) {
-                query += " AND ";
+            while (rs.next()) {
+                rows.add(new String[]{String.valueOf(rs.getInt("level")), rs.getString("items")});
             }
+        } catch (SQLException ex) {
+            Log.println_e(ex.getMessage());
+            rows = null;
+        } finally {
+            GameDB.closeConnection(con, pstmt, rs);
         }
 
+        return rows;
+    }
+
+    /**
+     * @return checksum of the table's contents, or -1 if unavailable
+     */
+    public static long getChecksum() {
+        long checksum = -1;
+
+        String query = "CHECKSUM TABLE `shop`";
+
         Connection con = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
@@ -79,55 +115,8 @@ public final class ShopDAO {
 
             rs = pstmt.executeQuery();
 
-            while (rs.next()) {
-                int itemLevel = rs.getInt("level");
-                String[] tempList = rs.getString("items").split(",");
-
-                ShopItem item = null;
-
-                for (String item_id : tempList) {
-                    SpeciesType data = ServerResources.getSpeciesTable().getSpecies(Integer.parseInt(item_id));
-
-                    if (data != null) {
-                        String type = "Unknown";
-
-                        if (data.getOrganismType() == Constants.ORGANISM_TYPE_ANIMAL) {
-                            type = "Animal";
-                        } else if (data.getOrganismType() == Constants.ORGANISM_TYPE_PLANT) {
-                            type = "Plant";
-                        }
-
-                        if (type.equals("Animal") || type.equals("Plant")) {
-                            item = new ShopItem(data.getID(), itemLevel, data.getName(), data.getDescription(), data.getCost());
-
-                            String predatorStr = "";
-                            int[] predatorList = data.getPredatorIDs();
-                            for (int i = 0; i < predatorList.length; i++) {
-                                if (i > 0) {
-                                    predatorStr += ",";
-                                }
-                                predatorStr += predatorList[i];
-                            }
-
-                            String preyStr = "";
-                            int[] preyList = data.getPreyIDs();
-                            for (int i = 0; i < preyList.length; i++) {
-                                if (i > 0) {
-                                    preyStr += ",";
-                                }
-                                preyStr += preyList[i];
-                            }
-
-                            item.setExtraArgs(Arrays.asList(String.valueOf((int) data.getBiomass()), String.valueOf(data.getDietType()), String.valueOf(data.getTrophicLevel()), predatorStr, preyStr));
-
-                            item.setCategoryList(Arrays.asList(type, data.getCategory()));
-                        }
-
-                        if (item != null) {
-                            shopList.add(item);
-                        }
-                    }
-                }
+            if (rs.next()) {
+                checksum = rs.getLong("Checksum");
             }
         } catch (SQLException ex) {
             Log.println_e(ex.getMessage());
@@ -135,6 +124,6 @@ public final class ShopDAO {
             GameDB.closeConnection(con, pstmt, rs);
         }
 
-        return shopList;
+        return checksum;
     }
 }
@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 // Other Imports
+import simulation.simjob.BiomassMatrix;
 import simulation.simjob.SimJob;
 
 /**
@@ -45,7 +46,7 @@ public final class SimJobDAO {
         if (simJob.getManipulation_Id() != null) {
             pstmt.setString(4, simJob.getManipulation_Id());
             pstmt.setString(5, simJob.getManip_Timestamp());
-            pstmt.setString(6, simJob.getCsv());
+            pstmt.setString(6, BiomassMatrix.encode(simJob.getCsv()));
         } else {
             pstmt.setNull(4, java.sql.Types.VARCHAR);
             pstmt.setNull(5, java.sql.Types.VARCHAR);
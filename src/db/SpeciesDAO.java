@@ -128,8 +128,11 @@ public final class SpeciesDAO {
      * field "hidden" (functionality replaced by Gary Ng).  Added parameter "eco_type".
      * 
      * @param eco_type
+     * @return Map of species ID to (node ID -> SimTestNode)
      */
-    public static void loadSimTestNodeParams(int eco_type) {
+    public static Map<Integer, Map<Integer, SimTestNode>> loadSimTestNodeParams(int eco_type) {
+        Map<Integer, Map<Integer, SimTestNode>> params = new HashMap<Integer, Map<Integer, SimTestNode>>();
+
         String query = ""
                 + "SELECT * "
                 + "FROM `species` s "
@@ -158,7 +161,7 @@ public final class SpeciesDAO {
                 if (rs.getInt("species_id") != species_id) {
                     species_id = rs.getInt("species_id");
                     nodeList = new HashMap<Integer, SimTestNode>();
-                    ServerResources.getSpeciesTable().getSpecies(species_id).setSimTestNodeParams(nodeList);
+                    params.put(species_id, nodeList);
                 }
                 nodeSimTest = new SimTestNode(rs.getInt("node_id"));
                 nodeSimTest.setMetType(rs.getInt("met_type"));
@@ -176,6 +179,8 @@ public final class SpeciesDAO {
         } finally {
             GameDB.closeConnection(con, pstmt, rs);
         }
+
+        return params;
     }
 
     /**
@@ -186,8 +191,10 @@ public final class SpeciesDAO {
      * field "hidden" (functionality replaced by Gary Ng).  Added argument "eco_type".
      * 
      * @param eco_type
+     * @return Map of predator ID to (prey ID -> Consume)
      */
-    public static void loadSimTestLinkParams(int eco_type) {
+    public static Map<Integer, Map<Integer, Consume>> loadSimTestLinkParams(int eco_type) {
+        Map<Integer, Map<Integer, Consume>> params = new HashMap<Integer, Map<Integer, Consume>>();
         Map<Integer, Consume> linkList = null;
 
         String query = "SELECT * FROM `consume` c "
@@ -215,7 +222,7 @@ public final class SpeciesDAO {
                 if (temp_id != predator_id) {
                     predator_id = temp_id;
                     linkList = new HashMap<Integer, Consume>();
-                    ServerResources.getSpeciesTable().getSpecies(predator_id).setSimTestLinkParams(linkList);
+                    params.put(predator_id, linkList);
                 }
 
                 prey_id = rs.getInt("prey_id");
@@ -230,6 +237,8 @@ public final class SpeciesDAO {
         } finally {
             GameDB.closeConnection(con, pstmt, rs);
         }
+
+        return params;
     }
 
     /**
@@ -3,10 +3,8 @@ package db;
 //java imports
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,6 +17,9 @@ import model.Tile;
  * The TileDAO class hold methods that can execute a variety of different
  * queries for very specific purposes. For use with queries utilizing the "tile"
  * table.
+ *
+ * Reads and single-tile updates are served by the in-memory TileGrid, which
+ * writes changes back to the table in batches.
  */
 
 public final class TileDAO {
@@ -33,43 +34,7 @@ public final class TileDAO {
 	 * @throws SQLException
 	 */
 	public static List<Tile> getTileList() throws SQLException {
-
-		List<Tile> tileList = new ArrayList<Tile>();
-		String query = "SELECT * FROM tile ORDER BY tile_id ASC ";
-		Connection connection = null;
-		PreparedStatement pstmt = null;
-                ResultSet rs = null;
-		try {
-			connection = GameDB.getConnection();
-			pstmt = connection.prepareStatement(query);
-			rs = pstmt.executeQuery();
-			int tile_null = -1;
-			Tile tile = null;
-
-			while (rs.next()) {
-				int tile_id = rs.getInt("tile_id");
-				// Log.println("tile id is " + tile_id);
-				if (tile_id != tile_null) {
-					// tile_id = rs.getInt(id_temp);
-					tile = new Tile(tile_id);
-					tile.setOwner(rs.getInt("tile_owner"));
-					tile.setVegetationCapacity(rs.getInt("vegetation_capacity"));
-					tile.setTerrainType(rs.getInt("terrain_type"));
-					tile.setXPosition(rs.getInt("x_position"));
-					tile.setYPosition(rs.getInt("y_position"));
-					tile.setZPosition(rs.getInt("z_position"));
-					tileList.add(tile);
-				}
-			}
-			rs.close();
-			pstmt.close();
-		} finally {
-			if (connection != null) {
-				connection.close();
-			}
-		}
-
-		return tileList;
+		return TileGrid.getInstance().getTiles();
 	}
 
 	/**
@@ -80,40 +45,8 @@ public final class TileDAO {
 	public static Map<Integer, Tile> getTileMap() throws SQLException {
 		Map<Integer, Tile> mapList = new HashMap<Integer, Tile>();
 
-		String query = "SELECT * FROM tile ORDER BY tile_id ASC ";
-
-		Connection connection = null;
-		PreparedStatement pstmt = null;
-                ResultSet rs = null;
-
-		try {
-			connection = GameDB.getConnection();
-			pstmt = connection.prepareStatement(query);
-			rs = pstmt.executeQuery();
-
-			int tile_id = -1;
-			Tile tile = null;
-
-			while (rs.next()) {
-				if (rs.getInt("tile_id") != tile_id) {
-					tile_id = rs.getInt("tile_id");
-					tile = new Tile(tile_id);
-					tile.setOwner(rs.getInt("tile_owner"));
-					tile.setVegetationCapacity(rs.getInt("vegetation_capacity"));
-					tile.setTerrainType(rs.getInt("terrain_type"));
-					tile.setXPosition(rs.getInt("x_position"));
-					tile.setYPosition(rs.getInt("y_position"));
-					tile.setZPosition(rs.getInt("z_position"));
-					mapList.put(tile_id, tile);
-				}
-			}
-
-			rs.close();
-			pstmt.close();
-		} finally {
-			if (connection != null) {
-				connection.close();
-			}
+		for (Tile tile : TileGrid.getInstance().getTiles()) {
+			mapList.put(tile.getTileId(), tile);
 		}
 
 		return mapList;
@@ -127,38 +60,7 @@ public final class TileDAO {
 	 * @throws SQLException
 	 */
 	public static Tile getTile(int tile_id) throws SQLException {
-		Tile tile = null;
-		String query = "SELECT * FROM tile WHERE tile_id = ?";
-
-		Connection connection = null;
-		PreparedStatement pstmt = null;
-                ResultSet rs = null;
-
-		try {
-			connection = GameDB.getConnection();
-			pstmt = connection.prepareStatement(query);
-			pstmt.setInt(1, tile_id);
-			rs = pstmt.executeQuery();
-
-			if (rs.next()) {
-				tile_id = rs.getInt("tile_id");
-				tile = new Tile(tile_id);
-				tile.setOwner(rs.getInt("tile_owner"));
-				tile.setVegetationCapacity(rs.getInt("vegetation_capacity"));
-				tile.setTerrainType(rs.getInt("terrain_type"));
-				tile.setXPosition(rs.getInt("x_position"));
-				tile.setYPosition(rs.getInt("y_position"));
-				tile.setZPosition(rs.getInt("z_position"));
-			}
-
-			rs.close();
-			pstmt.close();
-		} finally {
-			if (connection != null) {
-				connection.close();
-			}
-		}
-		return tile;
+		return TileGrid.getInstance().getTile(tile_id);
 	}
 
 	/**
@@ -171,23 +73,7 @@ public final class TileDAO {
 	 */
 	public static void updateTileOwner(int tile_owner, int tile_id)
 			throws SQLException {
-		Connection connection = null;
-		PreparedStatement pstmt = null;
-
-		try {
-			String query = "UPDATE tile SET tile_owner = ? WHERE tile_id = ?";
-
-			connection = GameDB.getConnection();
-			pstmt = connection.prepareStatement(query);
-			pstmt.setInt(1, tile_owner);
-			pstmt.setInt(2, tile_id);
-			pstmt.execute();
-			pstmt.close();
-		} finally {
-			if (connection != null) {
-				connection.close();
-			}
-		}
+		TileGrid.getInstance().setOwner(tile_id, tile_owner);
 	}
 
 	/**
@@ -200,268 +86,107 @@ public final class TileDAO {
 	 */
 	public static void updateVegetationCapacity(int vegetation_capacity,
 			int tile_id) throws SQLException {
-		Connection connection = null;
-		PreparedStatement pstmt = null;
-
-		try {
-			String query = "UPDATE tile SET vegetation_capacity = ? WHERE tile_id = ?";
-
-			connection = GameDB.getConnection();
-			pstmt = connection.prepareStatement(query);
-			pstmt.setInt(1, vegetation_capacity);
-			pstmt.setInt(2, tile_id);
-			pstmt.execute();
-			pstmt.close();
-		} finally {
-			if (connection != null) {
-				connection.close();
-			}
-		}
+		TileGrid.getInstance().setVegetationCapacity(tile_id, vegetation_capacity);
 	}
 
 	public static int numberOfTilesOwned(int tile_owner) throws SQLException {
-		int numTiles = 0;
-		Connection connection = null;
-		PreparedStatement pstmt = null;
-                ResultSet rs = null;
-
-		try {
-			String query = "SELECT COUNT(tile_owner) AS total FROM tile WHERE tile_owner = ?";
-			connection = GameDB.getConnection();
-			pstmt = connection.prepareStatement(query);
-			pstmt.setInt(1, tile_owner);
-			rs = pstmt.executeQuery();
-			if (rs.next()) {
-				numTiles = rs.getInt("total");
-			}
-			rs.close();
-			pstmt.close();
-		} finally {
-			if (connection != null) {
-				connection.close();
-			}
-		}
-
-		return numTiles;
+		return TileGrid.getInstance().countOwned(tile_owner);
 	}
 
+	/**
+	 * Insert every tile in a single batch, then reload the grid.
+	 *
+	 * @param tileMap
+	 * @throws SQLException
+	 */
 	public static void setTileMap(Map<Integer, Tile> tileMap)
 			throws SQLException {
 		Connection connection = null;
 		PreparedStatement pstmt = null;
-		connection = GameDB.getConnection();
+		boolean done = false;
 
 		try {
+			String query = "INSERT INTO tile VALUES (?,?,?,?,?,?,?)";
+			connection = GameDB.getConnection();
+			connection.setAutoCommit(false);
+			pstmt = connection.prepareStatement(query);
+
 			for (int i = 1; i < tileMap.size() + 1; i++) {
-				String query = "INSERT INTO tile VALUES (?,?,?,?,?,?,?)";
-				pstmt = connection.prepareStatement(query);
-				pstmt.setInt(1, tileMap.get(i).getTileId());
-				Log.println(tileMap.get(i).getTileId() + "");
+				Tile tile = tileMap.get(i);
+				pstmt.setInt(1, tile.getTileId());
 				pstmt.setNull(2, Types.NULL);
-				// pstmt.setInt(2,0);
-				Log.println(tileMap.get(i).getOwner() + "");
-				pstmt.setInt(3, tileMap.get(i).getVegetationCapacity());
-				pstmt.setInt(4, tileMap.get(i).getTerrainType());
-				pstmt.setInt(5, tileMap.get(i).getXPosition());
-				pstmt.setInt(6, tileMap.get(i).getYPosition());
-				pstmt.setInt(7, tileMap.get(i).getZPosition());
-				pstmt.execute();
-
+				pstmt.setInt(3, tile.getVegetationCapacity());
+				pstmt.setInt(4, tile.getTerrainType());
+				pstmt.setInt(5, tile.getXPosition());
+				pstmt.setInt(6, tile.getYPosition());
+				pstmt.setInt(7, tile.getZPosition());
+				pstmt.addBatch();
 			}
-			pstmt.close();
+
+			pstmt.executeBatch();
+			connection.commit();
+			done = true;
+			Log.println("Inserted " + tileMap.size() + " tiles");
 		} finally {
 			if (connection != null) {
-				connection.close();
+				if (!done) {
+					connection.rollback();
+				}
+				connection.setAutoCommit(true);
 			}
+			GameDB.closeConnection(connection, pstmt);
 		}
+
+		TileGrid.reload();
 	}
 
 	public static String getTileUsername(int tile_id) throws SQLException {
-		Connection connection = null;
-		PreparedStatement pstmt = null;
-                ResultSet rs = null;
-		String username = "";
-
-		try {
-			String query = "SELECT player.username AS username FROM player JOIN tile ON player.player_id=tile.tile_owner WHERE tile.tile_id = ?";
-			connection = GameDB.getConnection();
-			pstmt = connection.prepareStatement(query);
-			pstmt.setInt(1, tile_id);
-			rs = pstmt.executeQuery();
-			if (rs.next()) {
-				username = rs.getString("username");
-			}
-			rs.close();
-			pstmt.close();
-		} finally {
-			if (connection != null) {
-				connection.close();
-			}
-		}
-
-		return username;
+		return TileGrid.getInstance().getUsername(tile_id);
 	}
 
 	public static int getTileTerrainType(int tile_id) throws SQLException {
-		Connection connection = null;
-		PreparedStatement pstmt = null;
-                ResultSet rs = null;
-		int terrain_type = -1;
-
-		try {
-			String query = "SELECT terrain_type FROM tile WHERE tile_id = ?";
-			connection = GameDB.getConnection();
-			pstmt = connection.prepareStatement(query);
-			pstmt.setInt(1, tile_id);
-			rs = pstmt.executeQuery();
-			if (rs.next()) {
-				terrain_type = rs.getInt("terrain_type");
-			}
-			rs.close();
-			pstmt.close();
-		} finally {
-			if (connection != null) {
-				connection.close();
-			}
-		}
-
-		return terrain_type;
+		return TileGrid.getInstance().getTerrainType(tile_id);
 	}
 
 	public static void updateNaturalEvent(int event_id, int tile_id)
 			throws SQLException {
-		Connection connection = null;
-		PreparedStatement pstmt = null;
-
-		try {
-			String query = "UPDATE tile SET event_id = ? WHERE tile_id = ?";
-			connection = GameDB.getConnection();
-			pstmt = connection.prepareStatement(query);
-			pstmt.setInt(1, event_id);
-			pstmt.setInt(2, tile_id);
-			pstmt.execute();
-			pstmt.close();
-		} finally {
-			if (connection != null) {
-				connection.close();
-			}
-		}
+		TileGrid.getInstance().setEvent(tile_id, event_id);
 	}
 
 	public static void removeAllEventsByEventID(int event_id)
 			throws SQLException {
-		Connection connection = null;
-		PreparedStatement pstmt = null;
-
-		try {
-			String query = "UPDATE tile SET event_id = 0 WHERE event_id = ?";
-			connection = GameDB.getConnection();
-			pstmt = connection.prepareStatement(query);
-			pstmt.setInt(1, event_id);
-			pstmt.execute();
-			pstmt.close();
-		} finally {
-			if (connection != null) {
-				connection.close();
-			}
-		}
+		TileGrid.getInstance().clearEvent(event_id);
 	}
 
 	public static void removeAllEventsByOwnerID(int tile_owner)
 			throws SQLException {
-		Connection connection = null;
-		PreparedStatement pstmt = null;
-
-		try {
-			String query = "UPDATE tile SET event_id = 0 WHERE tile_owner = ?";
-			connection = GameDB.getConnection();
-			pstmt = connection.prepareStatement(query);
-			pstmt.setInt(1, tile_owner);
-			pstmt.execute();
-			pstmt.close();
-		} finally {
-			if (connection != null) {
-				connection.close();
-			}
-		}
+		TileGrid.getInstance().clearEventsByOwner(tile_owner);
 	}
 
 	public static List<Integer> getTileIDByEventID(int event_id)
 			throws SQLException {
-		List<Integer> tileIDList = new ArrayList<Integer>();
-
-		String query = "SELECT tile_id FROM tile where event_id = ?";
-		Connection connection = null;
-		PreparedStatement pstmt = null;
-                ResultSet rs = null;
-		try {
-			connection = GameDB.getConnection();
-			pstmt = connection.prepareStatement(query);
-			pstmt.setInt(1, event_id);
-			rs = pstmt.executeQuery();
-			Integer id = null;
-			while (rs.next()) {
-				id = rs.getInt("tile_id");
-				tileIDList.add(id);
-			}
-			rs.close();
-			pstmt.close();
-		} finally {
-			if (connection != null) {
-				connection.close();
-			}
-		}
-
-		return tileIDList;
+		return TileGrid.getInstance().getTilesByEvent(event_id);
 	}
 	
+	/**
+	 * Assign a random terrain type to every tile and write them back in a
+	 * single batch.
+	 *
+	 * @throws SQLException
+	 */
 	public static void setTerrainType() throws SQLException {
-		Connection connection = null;
-		PreparedStatement pstmt = null;
-		connection = GameDB.getConnection();
-		int size = TileDAO.getTileList().size();
-		try {
-			for (int i = 1; i < size + 1; i++) {
-				String query = "UPDATE tile SET terrain_type = ? WHERE tile_id = ?";
-				int rand = 1 + (int)(Math.random() * ((4 - 1) + 1));
-				pstmt = connection.prepareStatement(query);
-				pstmt.setInt(1, rand);
-				pstmt.setInt(2, i);
-				pstmt.execute();
+		TileGrid grid = TileGrid.getInstance();
 
-			}
-			pstmt.close();
-		} finally {
-			if (connection != null) {
-				connection.close();
-			}
+		for (int i = 1; i < grid.size(); i++) {
+			int rand = 1 + (int)(Math.random() * ((4 - 1) + 1));
+			grid.setTerrainType(i, rand);
 		}
+
+		grid.flush();
 	}
 
 	public static int getTileOwner(int tile_id) throws SQLException {
-		Connection connection = null;
-		PreparedStatement pstmt = null;
-                ResultSet rs = null;
-		int tile_owner = -1;
-
-		try {
-			String query = "SELECT tile_owner AS tile_owner FROM tile WHERE tile_id = ?";
-			connection = GameDB.getConnection();
-			pstmt = connection.prepareStatement(query);
-			pstmt.setInt(1, tile_id);
-			rs = pstmt.executeQuery();
-			if (rs.next()) {
-				tile_owner = rs.getInt("tile_owner");
-			}
-			rs.close();
-			pstmt.close();
-		} finally {
-			if (connection != null) {
-				connection.close();
-			}
-		}
-
-		return tile_owner;
+		return TileGrid.getInstance().getOwner(tile_id);
 	}
 
 	/**
@@ -472,23 +197,16 @@ public final class TileDAO {
 	 * @throws SQLException
 	 */
 	public static void updateZone(int tile_id, int zone_id) throws SQLException {
-		Connection connection = null;
-		PreparedStatement pstmt = null;
-
-		try {
-			String query = "UPDATE tile SET zone_id = ? WHERE tile_id = ?";
+		TileGrid.getInstance().setZone(tile_id, zone_id);
+	}
 
-			connection = GameDB.getConnection();
-			pstmt = connection.prepareStatement(query);
-			pstmt.setInt(1, zone_id);
-			pstmt.setInt(2, tile_id);
-			pstmt.execute();
-			pstmt.close();
-		} finally {
-			if (connection != null) {
-				connection.close();
-			}
-		}
+	/**
+	 * Write any pending tile changes to the database now.
+	 *
+	 * @throws SQLException
+	 */
+	public static void flush() throws SQLException {
+		TileGrid.getInstance().flush();
 	}
 
 }
@@ -0,0 +1,510 @@
+package db;
+
+// Java Imports
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+// Other Imports
+import metadata.Constants;
+import model.Tile;
+import util.Log;
+
+/**
+ * The TileGrid class holds the authoritative copy of the "tile" table in
+ * memory as one primitive array per column, indexed by tile_id. Lookups are
+ * array reads, and a per-owner tile count and per-event tile set are kept up
+ * to date as tiles change.
+ *
+ * Changed tiles are marked in a dirty set and written back by flush() as a
+ * single batch of UPDATE statements. A background timer flushes every
+ * Constants.SAVE_INTERVAL milliseconds, and the grid is flushed once more at
+ * shutdown. Tiles whose owner is NULL in the table are kept NULL until their
+ * owner is changed.
+ */
+public final class TileGrid {
+
+    private static TileGrid grid;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread("TileGrid-Shutdown") {
+            @Override
+            public void run() {
+                TileGrid tileGrid;
+                synchronized (TileGrid.class) {
+                    tileGrid = grid;
+                }
+                if (tileGrid != null) {
+                    try {
+                        tileGrid.flush();
+                    } catch (SQLException ex) {
+                        Log.println_e(ex.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    private final int size;
+    private final boolean[] exists;
+    private final int[] owner;
+    private final int[] terrain;
+    private final int[] zone;
+    private final int[] event;
+    private final int[] vegetation;
+    private final int[] x;
+    private final int[] y;
+    private final int[] z;
+    // Player ID -> Number of Tiles Owned
+    private final Map<Integer, Integer> ownerCounts = new HashMap<Integer, Integer>();
+    // Event ID -> Tile IDs
+    private final Map<Integer, BitSet> eventTiles = new HashMap<Integer, BitSet>();
+    // Player ID -> Username
+    private final Map<Integer, String> usernames = new HashMap<Integer, String>();
+    // Tiles whose tile_owner is NULL in the table (owner[] holds TILE_NO_OWNER)
+    private final BitSet ownerNull = new BitSet();
+    private final BitSet dirty = new BitSet();
+    // Held for the whole of a flush, so flushes are written in order
+    private final Object flushLock = new Object();
+    private final Timer flushTimer = new Timer("TileGrid", true);
+
+    private TileGrid(int size) {
+        this.size = size;
+        exists = new boolean[size];
+        owner = new int[size];
+        terrain = new int[size];
+        zone = new int[size];
+        event = new int[size];
+        vegetation = new int[size];
+        x = new int[size];
+        y = new int[size];
+        z = new int[size];
+
+        flushTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (SQLException ex) {
+                    Log.println_e(ex.getMessage());
+                }
+            }
+        }, Constants.SAVE_INTERVAL, Constants.SAVE_INTERVAL);
+    }
+
+    /**
+     * Get the grid, loading it from the database on first use.
+     *
+     * @return TileGrid
+     * @throws SQLException
+     */
+    public static synchronized TileGrid getInstance() throws SQLException {
+        if (grid == null) {
+            grid = load();
+        }
+
+        return grid;
+    }
+
+    /**
+     * Discard the in-memory grid after flushing it, so the next access
+     * reloads from the database.
+     *
+     * @throws SQLException
+     */
+    public static synchronized void reload() throws SQLException {
+        if (grid != null) {
+            grid.flush();
+            grid.flushTimer.cancel();
+            grid = null;
+        }
+    }
+
+    private static TileGrid load() throws SQLException {
+        String query = "SELECT * FROM tile ORDER BY tile_id ASC";
+
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        List<int[]> rows = new ArrayList<int[]>();
+        BitSet nullOwners = new BitSet();
+        int maxId = Constants.TOTAL_GAME_TILES;
+
+        try {
+            connection = GameDB.getConnection();
+            pstmt = connection.prepareStatement(query);
+            rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                int tile_id = rs.getInt("tile_id");
+                int tile_owner = rs.getInt("tile_owner");
+                if (rs.wasNull()) {
+                    tile_owner = Constants.TILE_NO_OWNER;
+                    nullOwners.set(tile_id);
+                }
+                rows.add(new int[]{
+                    tile_id,
+                    tile_owner,
+                    rs.getInt("terrain_type"),
+                    rs.getInt("zone_id"),
+                    rs.getInt("event_id"),
+                    rs.getInt("vegetation_capacity"),
+                    rs.getInt("x_position"),
+                    rs.getInt("y_position"),
+                    rs.getInt("z_position")
+                });
+                maxId = Math.max(maxId, tile_id);
+            }
+        } finally {
+            GameDB.closeConnection(connection, pstmt, rs);
+        }
+
+        TileGrid tileGrid = new TileGrid(maxId + 1);
+        tileGrid.ownerNull.or(nullOwners);
+
+        for (int[] row : rows) {
+            int tile_id = row[0];
+            tileGrid.exists[tile_id] = true;
+            tileGrid.owner[tile_id] = row[1];
+            tileGrid.terrain[tile_id] = row[2];
+            tileGrid.zone[tile_id] = row[3];
+            tileGrid.event[tile_id] = row[4];
+            tileGrid.vegetation[tile_id] = row[5];
+            tileGrid.x[tile_id] = row[6];
+            tileGrid.y[tile_id] = row[7];
+            tileGrid.z[tile_id] = row[8];
+            tileGrid.addOwner(row[1], 1);
+            tileGrid.addEvent(row[4], tile_id);
+        }
+
+        return tileGrid;
+    }
+
+    private boolean valid(int tile_id) {
+        return tile_id >= 0 && tile_id < size && exists[tile_id];
+    }
+
+    private void addOwner(int tile_owner, int delta) {
+        if (tile_owner == Constants.TILE_NO_OWNER) {
+            return;
+        }
+
+        Integer count = ownerCounts.get(tile_owner);
+        int total = (count == null ? 0 : count) + delta;
+
+        if (total > 0) {
+            ownerCounts.put(tile_owner, total);
+        } else {
+            ownerCounts.remove(tile_owner);
+        }
+    }
+
+    private void addEvent(int event_id, int tile_id) {
+        if (event_id == 0) {
+            return;
+        }
+
+        BitSet tiles = eventTiles.get(event_id);
+        if (tiles == null) {
+            tiles = new BitSet(size);
+            eventTiles.put(event_id, tiles);
+        }
+        tiles.set(tile_id);
+    }
+
+    private void removeEvent(int event_id, int tile_id) {
+        BitSet tiles = eventTiles.get(event_id);
+
+        if (tiles != null) {
+            tiles.clear(tile_id);
+            if (tiles.isEmpty()) {
+                eventTiles.remove(event_id);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public synchronized boolean hasTile(int tile_id) {
+        return valid(tile_id);
+    }
+
+    public synchronized Tile getTile(int tile_id) {
+        if (!valid(tile_id)) {
+            return null;
+        }
+
+        Tile tile = new Tile(tile_id, x[tile_id], y[tile_id], z[tile_id]);
+        tile.setOwner(owner[tile_id]);
+        tile.setVegetationCapacity(vegetation[tile_id]);
+        tile.setTerrainType(terrain[tile_id]);
+        tile.setZoneID(zone[tile_id]);
+        tile.setEventID(event[tile_id]);
+
+        return tile;
+    }
+
+    public synchronized List<Tile> getTiles() {
+        List<Tile> tileList = new ArrayList<Tile>();
+
+        for (int tile_id = 0; tile_id < size; tile_id++) {
+            if (exists[tile_id]) {
+                tileList.add(getTile(tile_id));
+            }
+        }
+
+        return tileList;
+    }
+
+    public synchronized int getOwner(int tile_id) {
+        return valid(tile_id) ? owner[tile_id] : -1;
+    }
+
+    public synchronized int getTerrainType(int tile_id) {
+        return valid(tile_id) ? terrain[tile_id] : -1;
+    }
+
+    public synchronized int getZone(int tile_id) {
+        return valid(tile_id) ? zone[tile_id] : -1;
+    }
+
+    public synchronized int getEvent(int tile_id) {
+        return valid(tile_id) ? event[tile_id] : -1;
+    }
+
+    public synchronized int countOwned(int tile_owner) {
+        Integer count = ownerCounts.get(tile_owner);
+
+        if (count != null) {
+            return count;
+        }
+        if (tile_owner != Constants.TILE_NO_OWNER) {
+            return 0;
+        }
+
+        int total = 0;
+        for (int tile_id = 0; tile_id < size; tile_id++) {
+            if (exists[tile_id] && owner[tile_id] == Constants.TILE_NO_OWNER) {
+                total++;
+            }
+        }
+
+        return total;
+    }
+
+    public synchronized List<Integer> getTilesByEvent(int event_id) {
+        List<Integer> tileIDList = new ArrayList<Integer>();
+
+        if (event_id == 0) {
+            for (int tile_id = 0; tile_id < size; tile_id++) {
+                if (exists[tile_id] && event[tile_id] == 0) {
+                    tileIDList.add(tile_id);
+                }
+            }
+        } else {
+            BitSet tiles = eventTiles.get(event_id);
+            if (tiles != null) {
+                for (int tile_id = tiles.nextSetBit(0); tile_id >= 0; tile_id = tiles.nextSetBit(tile_id + 1)) {
+                    tileIDList.add(tile_id);
+                }
+            }
+        }
+
+        return tileIDList;
+    }
+
+    /**
+     * Get the username of a tile's owner. Usernames are looked up once per
+     * player and then kept.
+     *
+     * @param tile_id
+     * @return username, or an empty string if the tile has no owner
+     * @throws SQLException
+     */
+    public String getUsername(int tile_id) throws SQLException {
+        int tile_owner;
+
+        synchronized (this) {
+            tile_owner = getOwner(tile_id);
+            if (tile_owner <= Constants.TILE_NO_OWNER) {
+                return "";
+            }
+            if (usernames.containsKey(tile_owner)) {
+                return usernames.get(tile_owner);
+            }
+        }
+
+        String username = "";
+        String query = "SELECT username FROM player WHERE player_id = ?";
+
+        Connection connection = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            connection = GameDB.getConnection();
+            pstmt = connection.prepareStatement(query);
+            pstmt.setInt(1, tile_owner);
+            rs = pstmt.executeQuery();
+            if (rs.next()) {
+                username = rs.getString("username");
+            }
+        } finally {
+            GameDB.closeConnection(connection, pstmt, rs);
+        }
+
+        synchronized (this) {
+            usernames.put(tile_owner, username);
+        }
+
+        return username;
+    }
+
+    public synchronized void setOwner(int tile_id, int tile_owner) {
+        if (valid(tile_id) && owner[tile_id] != tile_owner) {
+            addOwner(owner[tile_id], -1);
+            addOwner(tile_owner, 1);
+            owner[tile_id] = tile_owner;
+            ownerNull.clear(tile_id);
+            dirty.set(tile_id);
+        }
+    }
+
+    public synchronized void setTerrainType(int tile_id, int terrain_type) {
+        if (valid(tile_id) && terrain[tile_id] != terrain_type) {
+            terrain[tile_id] = terrain_type;
+            dirty.set(tile_id);
+        }
+    }
+
+    public synchronized void setZone(int tile_id, int zone_id) {
+        if (valid(tile_id) && zone[tile_id] != zone_id) {
+            zone[tile_id] = zone_id;
+            dirty.set(tile_id);
+        }
+    }
+
+    public synchronized void setVegetationCapacity(int tile_id, int vegetation_capacity) {
+        if (valid(tile_id) && vegetation[tile_id] != vegetation_capacity) {
+            vegetation[tile_id] = vegetation_capacity;
+            dirty.set(tile_id);
+        }
+    }
+
+    public synchronized void setEvent(int tile_id, int event_id) {
+        if (valid(tile_id) && event[tile_id] != event_id) {
+            removeEvent(event[tile_id], tile_id);
+            addEvent(event_id, tile_id);
+            event[tile_id] = event_id;
+            dirty.set(tile_id);
+        }
+    }
+
+    public synchronized void clearEvent(int event_id) {
+        BitSet tiles = eventTiles.remove(event_id);
+
+        if (tiles != null) {
+            for (int tile_id = tiles.nextSetBit(0); tile_id >= 0; tile_id = tiles.nextSetBit(tile_id + 1)) {
+                event[tile_id] = 0;
+                dirty.set(tile_id);
+            }
+        }
+    }
+
+    public synchronized void clearEventsByOwner(int tile_owner) {
+        for (int tile_id = 0; tile_id < size; tile_id++) {
+            if (exists[tile_id] && owner[tile_id] == tile_owner && event[tile_id] != 0) {
+                removeEvent(event[tile_id], tile_id);
+                event[tile_id] = 0;
+                dirty.set(tile_id);
+            }
+        }
+    }
+
+    /**
+     * Write every changed tile back to the database in a single batch.
+     * Flushes are serialized, so an older snapshot is never written after a
+     * newer one.
+     *
+     * @throws SQLException
+     */
+    public void flush() throws SQLException {
+        synchronized (flushLock) {
+            List<int[]> rows = new ArrayList<int[]>();
+            BitSet nullRows = new BitSet();
+
+            synchronized (this) {
+                if (dirty.isEmpty()) {
+                    return;
+                }
+
+                for (int tile_id = dirty.nextSetBit(0); tile_id >= 0; tile_id = dirty.nextSetBit(tile_id + 1)) {
+                    if (ownerNull.get(tile_id)) {
+                        nullRows.set(rows.size());
+                    }
+                    rows.add(new int[]{
+                        owner[tile_id], vegetation[tile_id], terrain[tile_id],
+                        zone[tile_id], event[tile_id], tile_id
+                    });
+                }
+
+                dirty.clear();
+            }
+
+            String query = "UPDATE tile SET tile_owner = ?, vegetation_capacity = ?, terrain_type = ?, zone_id = ?, event_id = ? WHERE tile_id = ?";
+
+            Connection connection = null;
+            PreparedStatement pstmt = null;
+            boolean done = false;
+
+            try {
+                connection = GameDB.getConnection();
+                connection.setAutoCommit(false);
+                pstmt = connection.prepareStatement(query);
+
+                for (int r = 0; r < rows.size(); r++) {
+                    int[] row = rows.get(r);
+                    for (int i = 0; i < row.length; i++) {
+                        pstmt.setInt(i + 1, row[i]);
+                    }
+                    if (nullRows.get(r)) {
+                        pstmt.setNull(1, Types.INTEGER);
+                    }
+                    pstmt.addBatch();
+                }
+
+                pstmt.executeBatch();
+                connection.commit();
+                done = true;
+            } finally {
+                if (!done) {
+                    // Mark the rows dirty again so the next flush retries them
+                    synchronized (this) {
+                        for (int[] row : rows) {
+                            dirty.set(row[5]);
+                        }
+                    }
+                }
+                if (connection != null) {
+                    if (!done) {
+                        connection.rollback();
+                    }
+                    connection.setAutoCommit(true);
+                }
+                GameDB.closeConnection(connection, pstmt);
+            }
+        }
+    }
+}
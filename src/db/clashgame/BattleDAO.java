@@ -2,6 +2,8 @@ package db.clashgame;
 
 // Java Imports
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 
 // Other Imports
 import model.clashgame.Battle;
@@ -28,6 +30,14 @@ public final class BattleDAO {
     private static final String UPDATE_QUERY = "UPDATE `clash_battle` SET `outcome` = ?, `time_ended` = ? "
         + " WHERE `clash_battle_id` = ?";
 
+    private static final String FIND_COMPLETED_RESULTS = "SELECT `clash_attack_config`.`player_id` AS `attacker_id`,"
+        + " `clash_defense_config`.`player_id` AS `defender_id`, `clash_battle`.`outcome`"
+        + " FROM `clash_battle`"
+        + " INNER JOIN `clash_attack_config` ON `clash_attack_config`.`clash_attack_config_id` = `clash_battle`.`clash_attack_config_id`"
+        + " INNER JOIN `clash_defense_config` ON `clash_defense_config`.`clash_defense_config_id` = `clash_battle`.`clash_defense_config_id`"
+        + " WHERE `clash_battle`.`outcome` IS NOT NULL"
+        + " ORDER BY `clash_battle`.`time_ended`, `clash_battle`.`clash_battle_id`";
+
     private BattleDAO() {}
 
     public static Battle create(Battle battle) {
@@ -120,4 +130,34 @@ public final class BattleDAO {
 
         return updated;
     }
+
+    /**
+     * @return attacker ID, defender ID and outcome of every finished battle,
+     *         oldest first
+     */
+    public static List<int[]> findCompletedResults() {
+        List<int[]> results = new ArrayList<int[]>();
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = GameDB.getConnection();
+            pstmt = con.prepareStatement(FIND_COMPLETED_RESULTS);
+            rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                results.add(new int[]{
+                    rs.getInt("attacker_id"), rs.getInt("defender_id"), rs.getInt("outcome")
+                });
+            }
+        } catch (SQLException ex) {
+            Log.println_e(ex.getMessage());
+        } finally {
+            GameDB.closeConnection(con, pstmt, rs);
+        }
+
+        return results;
+    }
 }
@@ -1,4 +1,5 @@
 package db.clashgame;
+import core.ClashOpponentIndex;
 import db.GameDB;
 
 // Java Imports
@@ -83,9 +84,13 @@ public final class DefenseConfigDAO {
 
         } catch (SQLException ex) {
             Log.println_e(ex.getMessage());
+            return dc;
         } finally {
             GameDB.closeConnection(con, pstmt, rs);
         }
+
+        // The player can now be challenged
+        ClashOpponentIndex.getInstance().add(ClashPlayerDAO.findById(dc.playerId));
         return dc;
     }
 
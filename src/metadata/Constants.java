@@ -60,6 +60,7 @@ public class Constants {
     // Other
     public final static float TIME_MODIFIER = 1f;
     public final static int SAVE_INTERVAL = 60000;
+    public final static int CREDIT_FLUSH_INTERVAL = 5000;
     public final static int SHOP_PROCESS_DELAY = 0;//20000;
     public final static float BIOMASS_SCALE = 1000;
     public final static String CLIENT_VERSION = "1.00";
@@ -69,6 +70,8 @@ public class Constants {
     public final static int MONTH_DURATION = 180;
     public final static int MAX_SPECIES_SIZE = 10;
     public final static String CSV_SAVE_PATH = "src/log/";
+    public final static String SCORE_SKETCH_PATH = "src/log/score_sketch.dat";
+    public final static String SERIES_SAVE_PATH = "src/log/series/";
     public final static int MAX_CLIENT_THREADS = 10;
     public final static int ECOSYSTEM_TYPE = 1;
     public final static int TICK_RATE = 30;
@@ -13,14 +13,13 @@ import java.util.Random;
 // Other Imports
 import core.GameEngine;
 import core.world.World;
-import db.CSVDAO;
+import db.ChartSeriesDAO;
 import db.ScoreDAO;
 import db.ZoneNodeAddDAO;
 import metadata.Constants;
 import net.response.ResponseChart;
 import net.response.ResponseUpdateEnvironmentScore;
 import simulation.SpeciesZoneType;
-import util.CSVParser;
 import util.NetworkFunctions;
 
 /**
@@ -51,7 +50,6 @@ public class Ecosystem {
     private final Map<Integer, Integer> nodeList = new HashMap<Integer, Integer>();
     // Node ID -> Biomass
     private Map<Integer, Integer> addNodeList = new HashMap<Integer, Integer>();
-    private List<List<String>> score_csv;
     private Map<Integer, Integer> speciesChangeList = new HashMap<Integer, Integer>();
     private Random random;
     //5/5/14, JTC, new hashmap to store persistent lists of specieszonetypes for each player
@@ -105,14 +103,6 @@ public class Ecosystem {
         return this.type = type;
     }
 
-    public List<List<String>> getScoreCSV() {
-        return this.score_csv;
-    }
-
-    public List<List<String>> setScoreCSV(List<List<String>> score_csv) {
-        return this.score_csv = score_csv;
-    }
-
     public String getManipulationID() {
         return manip_id;
     }
@@ -259,26 +249,11 @@ public class Ecosystem {
     public void updateScore() {
         updateEcosystemScore();
 
-        List<String> rowFirst = score_csv.get(0), rowSecond = score_csv.get(1);
-
-        int lastMonth = Integer.valueOf(rowFirst.get(rowFirst.size() - 1));
-        int currentMonth = gameEngine.getCurrentMonth();
-
-        for (int i = lastMonth; i <= currentMonth; i++) {
-            if (i == lastMonth && i == currentMonth) {
-                rowSecond.set(i, Integer.toString(score));
-            } else if (i != lastMonth) {
-                rowFirst.add(Integer.toString(i));
-                rowSecond.add(Integer.toString(score));
-            }
-        }
-
-        String csv = CSVParser.createCSV(score_csv);
-        CSVDAO.createScoreCSV(eco_id, csv);
+        ChartSeriesDAO.updateScore(eco_id, gameEngine.getCurrentMonth(), score);
 
         ResponseChart response = new ResponseChart();
         response.setType(2);
-        response.setCSV(csv);
+        response.setCSV(ChartSeriesDAO.getScoreCSV(eco_id));
         NetworkFunctions.sendToWorld(response, world_id);
 
         updateAccumEnvScore();
@@ -10,6 +10,7 @@ import java.util.Map;
 // Other Imports
 import db.SpeciesDAO;
 import simulation.simjob.SimTestNode;
+import simulation.simjob.SimTestParams;
 
 /**
  * The SpeciesType class is an abstract class that is used to represent a single
@@ -33,11 +34,6 @@ public class SpeciesType {
     protected int[] preyList = new int[0];
     protected int[] predatorList = new int[0];
     protected Map<Integer, Float> nodeDistribution = new HashMap<Integer, Float>();
-    /* 4/21/14, JTC, new parameter lists needed for testing simulations
-     only loaded for simulations run from SimJobMenu; added here due to
-     similarity to nodeDistribution setup */
-    protected Map<Integer, SimTestNode> simTestNodeParams;
-    protected Map<Integer, Consume> simTestLinkParams;
 
     public SpeciesType() {
     }
@@ -274,21 +270,14 @@ public class SpeciesType {
     }
 
     /**
-     * setter for simTestNodeParams.
-     *
-     * @param simTestNodeParams
-     */
-    public void setSimTestNodeParams(Map<Integer, SimTestNode> simTestNodeParams) {
-        this.simTestNodeParams = simTestNodeParams;
-    }
-
-    /**
-     * getter for simTestNodeParams.
+     * getter for simTestNodeParams. Values come from the shared, read-only
+     * SimTestParams snapshot rather than being stored per species.
      *
      * @return
      */
     public Map<Integer, SimTestNode> getSimTestNodeParams() {
-        return simTestNodeParams;
+        SimTestParams params = SimTestParams.getCurrent();
+        return params == null ? null : params.getNodeParams(species_id);
     }
 
     /**
@@ -298,24 +287,18 @@ public class SpeciesType {
      * @return
      */
     public SimTestNode getSimTestNode(int nodeId) {
-        return simTestNodeParams.get(nodeId);
+        SimTestParams params = SimTestParams.getCurrent();
+        return params == null ? null : params.getNode(species_id, nodeId);
     }
 
     /**
      * Load sim test node parameters from database.  JTC 4/2014
      * 9/13/14 - JTC - added param eco_type.
+     * Only hits the database if the shared snapshot has not been loaded yet;
+     * use SimTestParams.reload() to pick up table changes.
      */
     public static void loadSimTestNodeParams(int eco_type) {
-        SpeciesDAO.loadSimTestNodeParams(eco_type);
-    }
-
-    /**
-     * setter for simTestLinkParams.  JTC 4/2014
-     *
-     * @param simTestLinkParams
-     */
-    public void setSimTestLinkParams(Map<Integer, Consume> simTestLinkParams) {
-        this.simTestLinkParams = simTestLinkParams;
+        SimTestParams.load(eco_type);
     }
 
     /**
@@ -325,15 +308,17 @@ public class SpeciesType {
      * @return Consume
      */
     public Consume getSimTestLinks(int speciesId) {
-        return simTestLinkParams.get(speciesId);
+        SimTestParams params = SimTestParams.getCurrent();
+        return params == null ? null : params.getLink(species_id, speciesId);
     }
 
     /**
      * Load simtest_nod_params table from database into simTestLinkParams.
      * 9/13/14 - JTC - added param eco_type.
+     * Shares the snapshot loaded by loadSimTestNodeParams.
      */
     public static void loadSimTestLinkParams(int eco_type) {
-        SpeciesDAO.loadSimTestLinkParams(eco_type);
+        SimTestParams.load(eco_type);
     }
 
     /**
@@ -5,10 +5,9 @@ import java.io.DataInputStream;
 import java.io.IOException;
 
 // Other Imports
-import db.CSVDAO;
 import core.world.World;
-import db.EcosystemDAO;
-import model.Ecosystem;
+import db.AsyncDAO;
+import db.DBCallback;
 import net.response.ResponseChart;
 import util.DataReader;
 
@@ -26,21 +25,23 @@ public class RequestChart extends GameRequest {
         World world = client.getPlayer().getWorld();
 
         if (world != null) {
-            Ecosystem ecosystem = EcosystemDAO.getEcosystem(world.getID(), client.getPlayer().getID());
-
-            String csv;
-            if (type == 0) {
-                csv = CSVDAO.getBiomassCSV(ecosystem.getManipulationID());
-            } else {
-                csv = CSVDAO.getScoreCSV(ecosystem.getID());
-            }
-
-            if (csv != null) {
-                ResponseChart response = new ResponseChart();
-                response.setType(type);
-                response.setCSV(csv);
-                client.add(response);
-            }
+            AsyncDAO.getChartCSV(world.getID(), client.getPlayer().getID(), type).addCallback(new DBCallback<String>() {
+                @Override
+                public void onSuccess(String csv) {
+                    if (csv != null) {
+                        ResponseChart response = new ResponseChart();
+                        response.setType(type);
+                        response.setCSV(csv);
+                        client.add(response);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    super.onFailure(cause);
+                    onSuccess(null);
+                }
+            }, client);
         }
     }
 }
@@ -21,7 +21,7 @@ import java.io.IOException;
 
 // Other Imports
 import util.DataReader;
-import db.PlayerDAO;
+import db.CreditLedger;
 import net.response.ResponseEndGame;
 
 public class RequestEndGame extends GameRequest {
@@ -41,7 +41,6 @@ public class RequestEndGame extends GameRequest {
     @Override
     public void process() throws Exception {
         int creditDiff = 0;
-        int oldCredits = client.getPlayer().getCredits();
         
         switch (game_id) {
             case 1: //don't eat me - use credits variable
@@ -53,8 +52,12 @@ public class RequestEndGame extends GameRequest {
                 break;
         }
         
-        PlayerDAO.updateCredits(client.getPlayer().getID(), oldCredits+creditDiff);
-        client.getPlayer().setCredits(oldCredits+creditDiff);
+        int balance = CreditLedger.getInstance().add(client.getPlayer().getID(), creditDiff);
+        if (balance >= 0) {
+            client.getPlayer().setCredits(balance);
+        } else {
+            creditDiff = 0;
+        }
         
         ResponseEndGame response = new ResponseEndGame();
         response.setCreditDiff(creditDiff);
@@ -6,8 +6,8 @@ import java.io.IOException;
 
 // Other Imports
 import core.GameServer;
-import db.AccountDAO;
-import db.PlayerDAO;
+import db.AsyncDAO;
+import db.DBCallback;
 import model.Player;
 import model.Account;
 import net.response.ResponseLogin;
@@ -36,40 +36,74 @@ public class RequestLogin extends GameRequest {
     @Override
     public void process() throws Exception {
         Log.printf("User '%s' is connecting...", user_id);
-        ResponseLogin response = new ResponseLogin();
 
-        if (client.getAccount() == null) {
-            Account account = AccountDAO.getAccount(user_id, password);
-
-            if (account != null) {
-                // If account is already in use, remove and disconnect the client
-                if (GameServer.getInstance().hasAccount(account.getID())) {
-                    account = GameServer.getInstance().getActiveAccount(account.getID());
-                    account.getClient().logout();
-
-                    response.setStatus(ResponseLogin.IN_USE);
-                    Log.printf("User '%s' account was already in use.  User has now been logged out.", user_id);
-                } else {
-                    Player player = PlayerDAO.getPlayerByAccount(account.getID());
-
-                    if (player != null) {
-                        client.login(account);
-
-                        response.setStatus(ResponseLogin.SUCCESS);
-                        response.setAccount(account.getID(), account.getUsername(), account.getLastLogout());
-                        Log.printf("User '%s' has successfully logged in.", account.getUsername());
-                    } else {
-                        Log.println_e("Player not found");
-                    }
-                }
-            } else {
-                response.setStatus(ResponseLogin.FAILED);
-                Log.printf("User '%s' not found. Login attempt failed.", user_id);
+        if (client.getAccount() != null) {
+            send(ResponseLogin.LOGGED_IN);
+            return;
+        }
+
+        AsyncDAO.getAccount(user_id, password).addCallback(new DBCallback<Account>() {
+            @Override
+            public void onSuccess(Account account) {
+                onAccount(account);
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                Log.printf_e("User '%s' login failed: %s", user_id, cause);
+                send(ResponseLogin.FAILED);
             }
+        }, client);
+    }
+
+    private void onAccount(final Account account) {
+        if (client.getAccount() != null) {
+            send(ResponseLogin.LOGGED_IN);
+        } else if (account == null) {
+            send(ResponseLogin.FAILED);
+            Log.printf("User '%s' not found. Login attempt failed.", user_id);
+        } else if (GameServer.getInstance().hasAccount(account.getID())) {
+            // If account is already in use, remove and disconnect the client
+            GameServer.getInstance().getActiveAccount(account.getID()).getClient().logout();
+
+            send(ResponseLogin.IN_USE);
+            Log.printf("User '%s' account was already in use.  User has now been logged out.", user_id);
         } else {
-            response.setStatus(ResponseLogin.LOGGED_IN);
+            AsyncDAO.getPlayerByAccount(account.getID()).addCallback(new DBCallback<Player>() {
+                @Override
+                public void onSuccess(Player player) {
+                    onPlayer(account, player);
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    Log.printf_e("User '%s' login failed: %s", user_id, cause);
+                    send(ResponseLogin.FAILED);
+                }
+            }, client);
         }
+    }
+
+    private void onPlayer(Account account, Player player) {
+        if (player == null) {
+            Log.println_e("Player not found");
+            client.add(new ResponseLogin());
+        } else if (client.getAccount() != null) {
+            send(ResponseLogin.LOGGED_IN);
+        } else {
+            client.login(account);
 
+            ResponseLogin response = new ResponseLogin();
+            response.setStatus(ResponseLogin.SUCCESS);
+            response.setAccount(account.getID(), account.getUsername(), account.getLastLogout());
+            client.add(response);
+            Log.printf("User '%s' has successfully logged in.", account.getUsername());
+        }
+    }
+
+    private void send(short status) {
+        ResponseLogin response = new ResponseLogin();
+        response.setStatus(status);
         client.add(response);
     }
 }
@@ -25,7 +25,7 @@ import java.io.IOException;
 
 // Other Imports
 import util.DataReader;
-import db.PlayerDAO;
+import db.CreditLedger;
 import net.response.ResponsePlayGame;
 
 public class RequestPlayGame extends GameRequest {
@@ -41,7 +41,6 @@ public class RequestPlayGame extends GameRequest {
     public void process() throws Exception {
         short status = 0;
         int creditDiff = 0;
-        int oldCredits = client.getPlayer().getCredits();
         
         switch (game_id) {
             case 0: //converge - 0 credits
@@ -50,11 +49,11 @@ public class RequestPlayGame extends GameRequest {
                 break;
             
             default: //all other games cost 10 credits
-                if (oldCredits >= 10) {
+                int balance = CreditLedger.getInstance().debit(client.getPlayer().getID(), 10);
+                if (balance >= 0) {
                     creditDiff = 10;
                     status = 1;
-                    PlayerDAO.updateCredits(client.getPlayer().getID(), oldCredits-creditDiff);
-                    client.getPlayer().setCredits(oldCredits-creditDiff);
+                    client.getPlayer().setCredits(balance);
                 }
                 break;
         }
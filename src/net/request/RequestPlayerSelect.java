@@ -5,7 +5,8 @@ import java.io.DataInputStream;
 import java.io.IOException;
 
 // Other Imports
-import db.PlayerDAO;
+import db.AsyncDAO;
+import db.DBCallback;
 import model.Player;
 import util.DataReader;
 
@@ -20,10 +21,19 @@ public class RequestPlayerSelect extends GameRequest {
 
     @Override
     public void process() throws Exception {
-        Player player = PlayerDAO.getPlayerByAccount(client.getAccount().getID());
+        AsyncDAO.getPlayerByAccount(client.getAccount().getID()).addCallback(new DBCallback<Player>() {
+            @Override
+            public void onSuccess(Player player) {
+                if (player != null) {
+                    client.select(player);
+                }
+            }
 
-        if (player != null) {
-            client.select(player);
-        }
+            @Override
+            public void onFailure(Throwable cause) {
+                super.onFailure(cause);
+                onSuccess(null);
+            }
+        }, client);
     }
 }
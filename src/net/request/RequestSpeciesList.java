@@ -5,8 +5,7 @@ import java.io.DataInputStream;
 import java.io.IOException;
 
 // Other Imports
-import db.ShopDAO;
-import net.response.ResponseSpeciesList;
+import core.ShopCatalog;
 
 public class RequestSpeciesList extends GameRequest {
 
@@ -16,8 +15,6 @@ public class RequestSpeciesList extends GameRequest {
 
     @Override
     public void process() throws Exception {
-        ResponseSpeciesList response = new ResponseSpeciesList();
-        response.setSpeciesList(ShopDAO.getItems("level:0,99"));
-        client.add(response);
+        client.add(ShopCatalog.getSpeciesListResponse(0, 99));
     }
 }
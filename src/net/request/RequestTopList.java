@@ -6,8 +6,7 @@ import java.io.IOException;
 import java.util.List;
 
 // Other Imports
-import db.PlayerDAO;
-import db.ScoreDAO;
+import core.Leaderboard;
 import net.response.ResponseTopList;
 
 public class RequestTopList extends GameRequest {
@@ -19,15 +18,15 @@ public class RequestTopList extends GameRequest {
     @Override
     public void process() throws Exception {
         ResponseTopList response = new ResponseTopList();
-        String names[] = new String[3];
+        String names[] = new String[]{"", "", ""};
         int scores[] = new int[3];
-        List<String[]> scoreList = ScoreDAO.getBestEnvScore_2(0, 3);
+        List<String[]> scoreList = Leaderboard.getHighScores().getTop(3);
         
-        for (int i=0; i<3; i++) {
-            names[i] = PlayerDAO.getPlayer(Integer.parseInt(scoreList.get(i)[0])).getName();
+        for (int i=0; i<scoreList.size(); i++) {
+            names[i] = scoreList.get(i)[0];
             scores[i] = Integer.parseInt(scoreList.get(i)[1]);
         }
         response.setData(names[0], scores[0], names[1], scores[1], names[2], scores[2]);
         client.add(response);
     }
-}
\ No newline at end of file
+}
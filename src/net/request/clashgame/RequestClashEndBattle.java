@@ -8,8 +8,9 @@ package net.request.clashgame;
 import java.io.DataInputStream;
 import java.io.IOException;
 
+import core.ClashOpponentIndex;
 import core.GameServer;
-import db.PlayerDAO;
+import db.CreditLedger;
 import db.clashgame.DefenseConfigDAO;
 import net.request.GameRequest;
 import net.response.clashgame.ResponseClashEndBattle;
@@ -70,28 +71,31 @@ public class RequestClashEndBattle extends GameRequest {
         BattleDAO.save(battle);
 
         DefenseConfig df = DefenseConfigDAO.findByDefenseConfigId(battle.defenseConfigId);
-        Player defender = PlayerDAO.getPlayer(df.playerId);
+        CreditLedger ledger = CreditLedger.getInstance();
 
-        int attackerCredits = PlayerDAO.getPlayer(p.getID()).getCredits();
-        int defenderCredits = defender.getCredits();
+        int attackerCredits;
 
         switch (outcome){
             case WIN:
-                attackerCredits += 50;
+                attackerCredits = ledger.add(p.getID(), 50);
                 break;
             case LOSE:
-                defenderCredits += 25;
+                ledger.add(df.playerId, 25);
+                attackerCredits = ledger.getBalance(p.getID());
                 break;
-            case DRAW:
+            default:
+                attackerCredits = ledger.getBalance(p.getID());
                 break;
         }
 
-        PlayerDAO.updateCredits(p.getID(), attackerCredits);
-        p.setCredits(attackerCredits);
-        PlayerDAO.updateCredits(defender.getID(), defenderCredits);
+        if (attackerCredits >= 0) {
+            p.setCredits(attackerCredits);
+        }
+
+        ClashOpponentIndex.getInstance().recordBattle(p.getID(), df.playerId, outcome);
 
         ResponseClashEndBattle response = new ResponseClashEndBattle();
-        response.setCredits(attackerCredits);
+        response.setCredits(p.getCredits());
         client.add(response);
     }
     
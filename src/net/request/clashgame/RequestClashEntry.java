@@ -14,7 +14,8 @@ import java.util.HashMap;
 import model.clashgame.DefenseConfig;
 import net.request.GameRequest;
 import net.response.clashgame.ResponseClashEntry;
-import db.clashgame.DefenseConfigDAO;
+import db.AsyncDAO;
+import db.DBCallback;
 import util.Vector2;
 
 /**
@@ -40,24 +41,38 @@ public class RequestClashEntry extends GameRequest{
      */
     @Override
     public void process() throws Exception {
-        DefenseConfig defense = DefenseConfigDAO.findByPlayerId(this.client.getPlayer().getID());
-        boolean isNewClashPlayer;
-        if(defense == null){
-            isNewClashPlayer = true;
-        }else{
-            isNewClashPlayer = false;
-        }
+        AsyncDAO.findDefenseConfig(this.client.getPlayer().getID()).addCallback(new DBCallback<DefenseConfig>() {
+            @Override
+            public void onSuccess(DefenseConfig defense) {
+                boolean isNewClashPlayer;
+                if(defense == null){
+                    isNewClashPlayer = true;
+                }else{
+                    isNewClashPlayer = false;
+                }
 
-        ResponseClashEntry response = new ResponseClashEntry();
-        response.setNewClashPlayer(isNewClashPlayer);
-        if(!isNewClashPlayer){
-            //add existing defense setup
-            response.setDefenseTerrain(defense.terrain);
-            for (Map.Entry<Integer, ArrayList<Vector2<Float>>> en : defense.layout.entrySet()) {
-                response.addSpecies(en.getKey(), en.getValue());
+                ResponseClashEntry response = new ResponseClashEntry();
+                response.setNewClashPlayer(isNewClashPlayer);
+                if(!isNewClashPlayer){
+                    //add existing defense setup
+                    response.setDefenseTerrain(defense.terrain);
+                    for (Map.Entry<Integer, ArrayList<Vector2<Float>>> en : defense.layout.entrySet()) {
+                        response.addSpecies(en.getKey(), en.getValue());
+                    }
+                }
+                client.add(response);
             }
-        }
-        client.add(response);        
+
+            @Override
+            public void onFailure(Throwable cause) {
+                super.onFailure(cause);
+                // Reply with an empty defense rather than none, so the
+                // player is not offered a new defense over an existing one
+                DefenseConfig defense = new DefenseConfig();
+                defense.terrain = "";
+                onSuccess(defense);
+            }
+        }, client);
     }
     
 }
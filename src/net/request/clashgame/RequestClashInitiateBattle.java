@@ -10,7 +10,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 
-import db.PlayerDAO;
+import db.CreditLedger;
 import db.clashgame.AttackConfigDAO;
 import db.clashgame.BattleDAO;
 import db.clashgame.DefenseConfigDAO;
@@ -67,18 +67,15 @@ public class RequestClashInitiateBattle extends GameRequest{
 
         Player player = client.getPlayer();
 
-        // Subtract the cost of attacking from the player's credits
-        int currentCredits = PlayerDAO.getPlayer(player.getID()).getCredits();
+        // Charge the player the cost of attacking, if they can afford it
+        int currentCredits = attackConfig.size() > 5 ? -1
+                : CreditLedger.getInstance().debit(player.getID(), 10);
 
-        if (attackConfig.size() > 5 || currentCredits < 10) {
+        if (currentCredits < 0) {
             response.setValid(false);
         } else {
             response.setValid(true);
-
-            // Charge the player the cost of attacking
-            currentCredits -= 10;
             player.setCredits(currentCredits);
-            PlayerDAO.updateCredits(player.getID(), currentCredits);
 
             DefenseConfig target = DefenseConfigDAO.findByPlayerId(playerToAttack);
 
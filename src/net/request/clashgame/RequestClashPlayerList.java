@@ -8,11 +8,9 @@ package net.request.clashgame;
 import core.GameServer;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Random;
 
-import db.clashgame.ClashPlayerDAO;
-import db.clashgame.DefenseConfigDAO;
+import core.ClashOpponentIndex;
 import net.request.GameRequest;
 import net.response.clashgame.ResponseClashPlayerList;
 import model.clashgame.Player;
@@ -30,22 +28,28 @@ public class RequestClashPlayerList extends GameRequest{
     public void parse(DataInputStream dataInput) throws IOException {
     }
 
+    /**
+     * Most opponents listed at once
+     */
+    public static final int MAX_LISTED = 20;
+
+    private static final Random random = new Random();
+
     /**
      * Generates a response containing a list of players of
-     * Clash of Species
+     * Clash of Species, taken from the opponent index: those closest
+     * in strength to the player, topped up with a random selection
      * @throws Exception
      */
     @Override
     public void process() throws Exception {
         ResponseClashPlayerList response = new ResponseClashPlayerList();
 
-        List<Player> eligible = ClashPlayerDAO.findEligiblePlayers();
-        for(Player pl : eligible){
-            // Players don't need to be active to initialize a battle.
-            // Don't display yourself in the list of potential opponents
-            if(pl.id != client.getPlayer().getID()) {
-                response.addPlayer(pl);
-            }
+        // Players don't need to be active to initialize a battle.
+        // Don't display yourself in the list of potential opponents
+        for (Player pl : ClashOpponentIndex.getInstance().getOpponents(
+                client.getPlayer().getID(), MAX_LISTED, random)) {
+            response.addPlayer(pl);
         }
         client.add(response);
     }
@@ -9,10 +9,9 @@ import db.PlayerDAO;
 import java.io.DataInputStream;
 import java.io.IOException;
 
-import db.clashgame.ClashPlayerDAO;
-import db.clashgame.DefenseConfigDAO;
+import db.AsyncDAO;
+import db.DBCallback;
 import model.clashgame.DefenseConfig;
-import model.clashgame.Player;
 import net.request.GameRequest;
 import net.response.clashgame.ResponseClashPlayerView;
 import util.DataReader;
@@ -47,16 +46,21 @@ public class RequestClashPlayerView extends GameRequest{
      */
     @Override
     public void process() throws Exception {
-        ResponseClashPlayerView response = new ResponseClashPlayerView();
+        // Null if the player or their defense is missing
+        AsyncDAO.findClashDefense(playerID).addCallback(new DBCallback<DefenseConfig>() {
+            @Override
+            public void onSuccess(DefenseConfig defcon) {
+                ResponseClashPlayerView response = new ResponseClashPlayerView();
+                response.setDefenseConfig(defcon);
+                client.add(response);
+            }
 
-        Player target = ClashPlayerDAO.findById(playerID);
-        DefenseConfig defcon = DefenseConfigDAO.findByPlayerId(playerID);
-
-        if (target != null) {
-            response.setDefenseConfig(defcon);
-            //response.setPlayer(target);
-        }
-        client.add(response);
+            @Override
+            public void onFailure(Throwable cause) {
+                super.onFailure(cause);
+                onSuccess(null);
+            }
+        }, client);
     }
     
 }
@@ -5,7 +5,9 @@
  */
 package net.request.convergegame;
 
-import db.ConvergeHintDAO;
+import convergegame.ConvergeHint;
+import db.AsyncDAO;
+import db.DBCallback;
 import java.io.DataInputStream;
 import java.io.IOException;
 import net.request.GameRequest;
@@ -29,10 +31,20 @@ public class RequestConvergeHint extends GameRequest {
 
     @Override
     public void process() throws Exception {
-        ResponseConvergeHint response = new ResponseConvergeHint();
-        response.setConvergeHint(
-                    ConvergeHintDAO.getNextConvergeHint(hintIdOffset));
-        client.add(response);
-        Log.consoleln("Processed RequestConvergeHint");
+        AsyncDAO.getNextConvergeHint(hintIdOffset).addCallback(new DBCallback<ConvergeHint>() {
+            @Override
+            public void onSuccess(ConvergeHint hint) {
+                ResponseConvergeHint response = new ResponseConvergeHint();
+                response.setConvergeHint(hint);
+                client.add(response);
+                Log.consoleln("Processed RequestConvergeHint");
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                super.onFailure(cause);
+                onSuccess(null);
+            }
+        }, client);
     }
 }
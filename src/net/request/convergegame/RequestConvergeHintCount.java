@@ -5,7 +5,8 @@
  */
 package net.request.convergegame;
 
-import db.ConvergeHintDAO;
+import db.AsyncDAO;
+import db.DBCallback;
 import java.io.DataInputStream;
 import java.io.IOException;
 import net.request.GameRequest;
@@ -25,10 +26,21 @@ public class RequestConvergeHintCount extends GameRequest {
 
     @Override
     public void process() throws Exception {
-        ResponseConvergeHintCount response = new ResponseConvergeHintCount();
-        response.setCount(ConvergeHintDAO.getConvergeHintCount());
+        AsyncDAO.getConvergeHintCount().addCallback(new DBCallback<Integer>() {
+            @Override
+            public void onSuccess(Integer count) {
+                ResponseConvergeHintCount response = new ResponseConvergeHintCount();
+                response.setCount(count);
 
-        client.add(response);
-        Log.consoleln("Processed RequestConvergeHintCount");
+                client.add(response);
+                Log.consoleln("Processed RequestConvergeHintCount");
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                super.onFailure(cause);
+                onSuccess(0);
+            }
+        }, client);
     }
 }
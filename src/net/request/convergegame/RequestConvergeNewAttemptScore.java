@@ -5,7 +5,8 @@
  */
 package net.request.convergegame;
 
-import db.ConvergeAttemptDAO;
+import db.AsyncDAO;
+import db.DBCallback;
 
 import java.io.DataInputStream;
 import java.io.IOException;
@@ -37,12 +38,22 @@ public class RequestConvergeNewAttemptScore extends GameRequest {
 
     @Override
     public void process() throws Exception {
-        ResponseConvergeNewAttemptScore response = new ResponseConvergeNewAttemptScore();
-        response.setStatus(
-                ConvergeAttemptDAO.updateConvergeAttemptScore(
-                        playerId, ecosystemId, attemptId, score));
+        AsyncDAO.updateConvergeAttemptScore(playerId, ecosystemId, attemptId, score).addCallback(new DBCallback<Integer>() {
+            @Override
+            public void onSuccess(Integer status) {
+                ResponseConvergeNewAttemptScore response = new ResponseConvergeNewAttemptScore();
+                response.setStatus(status);
 
-        client.add(response);
-        Log.consoleln("Processing RequestConvergeNewAttemptScore"); 
+                client.add(response);
+                Log.consoleln("Processing RequestConvergeNewAttemptScore"); 
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                super.onFailure(cause);
+                // Status the DAO returns when the update fails
+                onSuccess(1);
+            }
+        }, client);
     }
 }
@@ -5,7 +5,9 @@
  */
 package net.request.convergegame;
 
-import db.ConvergeAttemptDAO;
+import convergegame.ConvergeAttempt;
+import db.AsyncDAO;
+import db.DBCallback;
 import java.io.DataInputStream;
 import java.io.IOException;
 import net.request.GameRequest;
@@ -33,12 +35,21 @@ public class RequestConvergePriorAttempt extends GameRequest {
 
     @Override
     public void process() throws Exception {
-        ResponseConvergePriorAttempt response = new ResponseConvergePriorAttempt(
-        playerId, ecosystemId);
-        response.setConvergePriorAttempt(
-                    ConvergeAttemptDAO.getNextConvergeAttempt(
-                    playerId, ecosystemId, attemptIdOffset));
-        client.add(response);
-        Log.consoleln("Processed RequestConvergePriorAttempt");
+        AsyncDAO.getNextConvergeAttempt(playerId, ecosystemId, attemptIdOffset).addCallback(new DBCallback<ConvergeAttempt>() {
+            @Override
+            public void onSuccess(ConvergeAttempt attempt) {
+                ResponseConvergePriorAttempt response = new ResponseConvergePriorAttempt(
+                playerId, ecosystemId);
+                response.setConvergePriorAttempt(attempt);
+                client.add(response);
+                Log.consoleln("Processed RequestConvergePriorAttempt");
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                super.onFailure(cause);
+                onSuccess(null);
+            }
+        }, client);
     }
 }
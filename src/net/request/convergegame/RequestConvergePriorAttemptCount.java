@@ -5,7 +5,8 @@
  */
 package net.request.convergegame;
 
-import db.ConvergeAttemptDAO;
+import db.AsyncDAO;
+import db.DBCallback;
 import java.io.DataInputStream;
 import java.io.IOException;
 import metadata.Constants;
@@ -32,20 +33,48 @@ public class RequestConvergePriorAttemptCount extends GameRequest {
 
     @Override
     public void process() throws Exception {
-        ResponseConvergePriorAttemptCount response = new ResponseConvergePriorAttemptCount(
-        playerId, ecosystemId);
         //if ecosystem not specified, return most recent ecosystem's first attempt
         //for this player
         if (ecosystemId == Constants.ID_NOT_SET) {
         	Log.consoleln("Call getMostRecentConvergeAttemptCount");
-            response.setConvergePriorAttemptInfo(
-                    ConvergeAttemptDAO.getMostRecentConvergeAttemptCount(playerId));
+            AsyncDAO.getMostRecentConvergeAttemptCount(playerId).addCallback(new DBCallback<int[]>() {
+                @Override
+                public void onSuccess(int[] info) {
+                    ResponseConvergePriorAttemptCount response = newResponse();
+                    response.setConvergePriorAttemptInfo(info);
+                    send(response);
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    super.onFailure(cause);
+                    onSuccess(new int[] {Constants.ID_NOT_SET, 0});
+                }
+            }, client);
         } else {
         	Log.consoleln("Call getConvergeAttemptCount");
-            response.setCount(
-                    ConvergeAttemptDAO.getConvergeAttemptCount(
-                    playerId, ecosystemId));
+            AsyncDAO.getConvergeAttemptCount(playerId, ecosystemId).addCallback(new DBCallback<Integer>() {
+                @Override
+                public void onSuccess(Integer count) {
+                    ResponseConvergePriorAttemptCount response = newResponse();
+                    response.setCount(count);
+                    send(response);
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    super.onFailure(cause);
+                    onSuccess(0);
+                }
+            }, client);
         }
+    }
+
+    private ResponseConvergePriorAttemptCount newResponse() {
+        return new ResponseConvergePriorAttemptCount(playerId, ecosystemId);
+    }
+
+    private void send(ResponseConvergePriorAttemptCount response) {
         client.add(response);
         Log.consoleln("Processed RequestConvergePriorAttemptCount");
     }
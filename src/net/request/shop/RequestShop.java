@@ -6,9 +6,8 @@ import java.io.IOException;
 
 // Other Imports
 
-import db.ShopDAO;
+import core.ShopCatalog;
 import net.request.GameRequest;
-import net.response.shop.ResponseShop;
 
 public class RequestShop extends GameRequest {
 
@@ -18,8 +17,6 @@ public class RequestShop extends GameRequest {
 
     @Override
     public void process() throws Exception {
-        ResponseShop response = new ResponseShop();
-        response.setShopList(ShopDAO.getItems("level:0,99"));
-        client.add(response);
+        client.add(ShopCatalog.getShopResponse(0, 99));
     }
 }
@@ -16,26 +16,36 @@ public class ResponseSpeciesList extends GameResponse {
         response_id = NetworkCode.SPECIES_LIST;
     }
 
+    /**
+     * The packet is built once; a response may be cached and sent to
+     * many clients.
+     *
+     * @return the response as bytes
+     */
     @Override
-    public byte[] getBytes() {
-        GamePacket packet = new GamePacket(response_id);
-        packet.addShort16((short) speciesList.size());
-
-        for (ShopItem species : speciesList) {
-            packet.addInt32(species.getID());
-            packet.addShort16((short) species.getLevel());
-            packet.addString(species.getName());
-            packet.addString(species.getDescription());
-
-            packet.addShort16((short) species.getExtraArgs().size());
-            for (String s : species.getExtraArgs()) {
-                packet.addString(s);
+    public synchronized byte[] getBytes() {
+        if (bytes == null) {
+            GamePacket packet = new GamePacket(response_id);
+            packet.addShort16((short) speciesList.size());
+
+            for (ShopItem species : speciesList) {
+                packet.addInt32(species.getID());
+                packet.addShort16((short) species.getLevel());
+                packet.addString(species.getName());
+                packet.addString(species.getDescription());
+
+                packet.addShort16((short) species.getExtraArgs().size());
+                for (String s : species.getExtraArgs()) {
+                    packet.addString(s);
+                }
+
+                packet.addString(species.getCategoryListAsString());
             }
 
-            packet.addString(species.getCategoryListAsString());
+            bytes = packet.getBytes();
         }
 
-        return packet.getBytes();
+        return bytes;
     }
 
     public void setSpeciesList(List<ShopItem> speciesList) {
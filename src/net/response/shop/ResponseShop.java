@@ -18,28 +18,38 @@ public class ResponseShop extends GameResponse {
         response_id = NetworkCode.SHOP;
     }
 
+    /**
+     * The packet is built once; a response may be cached and sent to
+     * many clients.
+     *
+     * @return the response as bytes
+     */
     @Override
-    public byte[] getBytes() {
-        GamePacket packet = new GamePacket(response_id);
-        packet.addShort16((short) shopList.size());
-
-        for (ShopItem item : shopList) {
-            packet.addInt32(item.getID());
-            packet.addShort16((short) item.getLevel());
-            packet.addString(item.getName());
-            packet.addShort16((short) item.getPrice());
-            packet.addString(item.getDescription());
-
-            packet.addShort16((short) item.getExtraArgs().size());
-            for (String s : item.getExtraArgs()) {
-                packet.addString(s);
+    public synchronized byte[] getBytes() {
+        if (bytes == null) {
+            GamePacket packet = new GamePacket(response_id);
+            packet.addShort16((short) shopList.size());
+
+            for (ShopItem item : shopList) {
+                packet.addInt32(item.getID());
+                packet.addShort16((short) item.getLevel());
+                packet.addString(item.getName());
+                packet.addShort16((short) item.getPrice());
+                packet.addString(item.getDescription());
+
+                packet.addShort16((short) item.getExtraArgs().size());
+                for (String s : item.getExtraArgs()) {
+                    packet.addString(s);
+                }
+
+                packet.addString(item.getCategoryListAsString());
+                packet.addString(item.getTagListAsString());
             }
 
-            packet.addString(item.getCategoryListAsString());
-            packet.addString(item.getTagListAsString());
+            bytes = packet.getBytes();
         }
 
-        return packet.getBytes();
+        return bytes;
     }
 
     public void setShopList(List<ShopItem> shopList) {
@@ -0,0 +1,634 @@
+package simulation;
+
+// Java Imports
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Web Services Imports
+import org.datacontract.schemas._2004._07.ManipulationParameter.NodeBiomass;
+
+// Other Imports
+import atn.ATNWeb;
+import atn.Integrator;
+import atn.IntegratorType;
+import atn.LinkParams;
+import atn.NodeRelationships;
+import atn.ODESystem;
+import atn.SteadyStateDetector;
+import metadata.Constants;
+import model.ZoneNodes;
+import simulation.simjob.PathTable;
+import util.Log;
+
+/**
+ * LocalSimulationBackend runs simulations in-process with the ATN model
+ * (atn.ATNWeb and the atn.Integrator named by "integratorDefault"), in place of
+ * the remote IN3DService. Link parameters are read from the same
+ * SimulationEngineConfig.properties defaults that SimulationEngine submits to
+ * the service, and predator/prey links come from the species table.
+ *
+ * Networks and manipulations are held in memory, shared by all instances, for
+ * the life of the server. A manipulation that is no longer held (e.g. after a
+ * restart) is rebuilt by getPrediction from the player's ZoneNodes.
+ *
+ * As with the service, a manipulation at timestep t sets biomass at t and
+ * runs "timestepsToRunDefault" timesteps; running from t replaces any later
+ * timesteps.
+ *
+ * Each manipulation keeps its web and integrator between runs, so a run is a
+ * warm-started continuation over only the timesteps requested: biomass
+ * changes (purchases, updateBiomass) are applied to the stored state as
+ * discrete impulses, and the integrator keeps its step size (and order)
+ * hints. Both are rebuilt only when species are added or their node
+ * parameters change. Once the web is steady or extinct (see
+ * atn.SteadyStateDetector), the rest of a run holds the last state.
+ */
+public class LocalSimulationBackend implements SimulationBackend {
+
+    //timestep interval and error tolerance of the integration, as ATNEngine
+    private static final double TIME_INTVL = 0.1;
+    private static final double MAX_ERR = 1.0E-3;
+
+    //node lists by network ID; manipulations by manipulation ID
+    private static final Map<String, int[]> networks
+            = new ConcurrentHashMap<String, int[]>();
+    private static final Map<String, Manipulation> manipulations
+            = new ConcurrentHashMap<String, Manipulation>();
+
+    private final Properties propertiesConfig;
+    private final LinkParams linkParams;
+    private final IntegratorType integratorType;
+    private final int timestepsToRun;
+
+    private static class Manipulation {
+
+        final String manipId;
+        final String netId;
+        //species and their node parameters, by node ID
+        final Map<Integer, SpeciesZoneType> nodes = new TreeMap<Integer, SpeciesZoneType>();
+        //biomass / BIOMASS_SCALE of each node, by timestep
+        final List<Map<Integer, Double>> timesteps = new ArrayList<Map<Integer, Double>>();
+        //built from nodes when first needed after a change, and kept with
+        //the integrator (and its step size hints) until the next change
+        ATNWeb web;
+        int[] webNodes;
+        Integrator integrator;
+        double[] biomass;
+
+        Manipulation(String manipId, String netId) {
+            this.manipId = manipId;
+            this.netId = netId;
+        }
+    }
+
+    public LocalSimulationBackend() {
+        propertiesConfig = new Properties();
+        try {
+            propertiesConfig.load(new FileInputStream(
+                    "conf/simulation/SimulationEngineConfig.properties"));
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        linkParams = new LinkParams(propertiesConfig);
+        integratorType = IntegratorType.fromName(
+                propertiesConfig.getProperty("integratorDefault"));
+        timestepsToRun = Integer.valueOf(
+                propertiesConfig.getProperty("timestepsToRunDefault", "1"));
+    }
+
+    @Override
+    public String getPropertiesConfig(String propName) {
+        return propertiesConfig.getProperty(propName);
+    }
+
+    @Override
+    public String createSeregenttiSubFoodweb(String networkName, int nodeList[],
+            boolean overwrite) throws SimulationException {
+        if (nodeList == null) {
+            throw new SimulationException("Error (createSeregenttiSubFoodweb): "
+                    + "nodeList is null");
+        }
+        String netId = UUID.randomUUID().toString();
+        networks.put(netId, nodeList.clone());
+        return netId;
+    }
+
+    @Override
+    public String createAndRunSeregenttiSubFoodweb(int nodeList[], String foodwebName,
+            int beginingTimestep, int timestepsToRun, boolean overwrite)
+            throws SimulationException {
+        SimulationIds simIds = createAndRunSeregenttiSubFoodwebForSimJob(
+                nodeList, foodwebName, beginingTimestep, timestepsToRun, overwrite);
+        return simIds == null ? null : simIds.getManipId();
+    }
+
+    @Override
+    public SimulationIds createAndRunSeregenttiSubFoodwebForSimJob(
+            int nodeList[],
+            String foodwebName,
+            int beginingTimestep,
+            int timestepsToRun,
+            boolean overwrite
+    ) throws SimulationException {
+        if (nodeList == null) {
+            return null;
+        }
+        String netId = createSeregenttiSubFoodweb(foodwebName, nodeList, overwrite);
+        Manipulation m = newManipulation(netId);
+        synchronized (m) {
+            integrate(m, beginingTimestep, timestepsToRun);
+        }
+        return new SimulationIds(m.manipId, netId);
+    }
+
+    @Override
+    public void deleteManipulation(String manpId) {
+        manipulations.remove(manpId);
+    }
+
+    @Override
+    public void deleteNetwork(String networkId) {
+        networks.remove(networkId);
+    }
+
+    @Override
+    public SpeciesZoneType createSpeciesZoneType(int node_id, int biomass) {
+        return new SpeciesZoneType("", node_id, 0, 0, biomass, null);
+    }
+
+    @Override
+    public void setParameters2(List<SpeciesZoneType> species, int timestep,
+            String manipulation_id) {
+        try {
+            manipulate(species, timestep, false, manipulation_id, false);
+        } catch (SimulationException ex) {
+            Log.println_e(ex.getMessage());
+        }
+    }
+
+    @Override
+    public String addSpeciesType(
+            SpeciesZoneType species,
+            HashMap<Integer, SpeciesZoneType> fullSpeciesMap,
+            int timestep,
+            boolean isFirstManipulation,
+            String networkOrManipulationId
+    ) throws SimulationException {
+        return manipulate(Collections.singletonList(species), timestep,
+                isFirstManipulation, networkOrManipulationId, false);
+    }
+
+    @Override
+    public String addMultipleSpeciesType(
+            HashMap<Integer, SpeciesZoneType> manipSpeciesMap,
+            HashMap<Integer, SpeciesZoneType> fullSpeciesMap,
+            int timestep,
+            boolean isFirstManipulation,
+            String networkOrManipulationId
+    ) throws SimulationException {
+        return manipulate(manipSpeciesMap.values(), timestep,
+                isFirstManipulation, networkOrManipulationId, false);
+    }
+
+    @Override
+    public String increaseSpeciesType(
+            SpeciesZoneType species,
+            HashMap<Integer, SpeciesZoneType> fullSpeciesMap,
+            int timestep,
+            boolean isFirstManipulation,
+            String networkOrManipulationId
+    ) throws SimulationException {
+        return manipulate(Collections.singletonList(species), timestep,
+                isFirstManipulation, networkOrManipulationId, false);
+    }
+
+    @Override
+    public String increaseMultipleSpeciesType(
+            HashMap<Integer, SpeciesZoneType> manipSpeciesMap,
+            HashMap<Integer, SpeciesZoneType> fullSpeciesMap,
+            int timestep,
+            boolean isFirstManipulation,
+            String networkOrManipulationId
+    ) throws SimulationException {
+        return manipulate(manipSpeciesMap.values(), timestep,
+                isFirstManipulation, networkOrManipulationId, false);
+    }
+
+    @Override
+    public String reduceSpeciesType(
+            SpeciesZoneType species,
+            HashMap<Integer, SpeciesZoneType> fullSpeciesMap,
+            int timestep,
+            boolean isFirstManipulation,
+            String networkOrManipulationId
+    ) throws SimulationException {
+        return manipulate(Collections.singletonList(species), timestep,
+                isFirstManipulation, networkOrManipulationId, false);
+    }
+
+    @Override
+    public String removeSpeciesType(
+            SpeciesZoneType species,
+            HashMap<Integer, SpeciesZoneType> fullSpeciesMap,
+            int timestep,
+            boolean isFirstManipulation,
+            String networkOrManipulationId
+    ) throws SimulationException {
+        return manipulate(Collections.singletonList(species), timestep,
+                isFirstManipulation, networkOrManipulationId, true);
+    }
+
+    @Override
+    public void updateBiomass(
+            String manipulationId,
+            List<NodeBiomass> lNodeBiomass,
+            int timestep
+    ) throws SimulationException {
+        Manipulation m = getManipulation(manipulationId);
+        synchronized (m) {
+            Map<Integer, Double> state = stateAt(m, timestep);
+            for (NodeBiomass nodeBiomass : lNodeBiomass) {
+                //note: already divided by BIOMASS_SCALE
+                state.put(nodeBiomass.getNodeIdx(), nodeBiomass.getBiomass());
+            }
+            integrate(m, timestep, timestepsToRun);
+        }
+    }
+
+    @Override
+    public void run(int startTimestep, int runTimestep, String manipulationId) {
+        long milliseconds = System.currentTimeMillis();
+
+        try {
+            Manipulation m = getManipulation(manipulationId);
+            synchronized (m) {
+                integrate(m, startTimestep, runTimestep);
+            }
+        } catch (SimulationException ex) {
+            Log.println_e(ex.getMessage());
+        }
+
+        Log.printf(
+                "Total Time (Run %d-%d): %.2f seconds",
+                startTimestep, startTimestep + runTimestep,
+                Math.round((System.currentTimeMillis() - milliseconds) / 10.0) / 100.0);
+    }
+
+    @Override
+    public HashMap<Integer, SpeciesZoneType> getBiomass(String manipulationId,
+            int nodeIndex, int timestep) throws SimulationException {
+        HashMap<Integer, SpeciesZoneType> mSpecies = new HashMap<Integer, SpeciesZoneType>();
+
+        Manipulation m = getManipulation(manipulationId);
+        synchronized (m) {
+            if (timestep >= m.timesteps.size() || m.timesteps.get(timestep).isEmpty()) {
+                throw new SimulationException("No Species Found!");
+            }
+            for (Map.Entry<Integer, Double> entry : m.timesteps.get(timestep).entrySet()) {
+                SpeciesZoneType szt = m.nodes.get(entry.getKey());
+                mSpecies.put(entry.getKey(), new SpeciesZoneType(szt.getName(),
+                        entry.getKey(), 0, 0,
+                        entry.getValue() * Constants.BIOMASS_SCALE, null));
+            }
+        }
+
+        return mSpecies;
+    }
+
+    /*
+     Same bookkeeping as SimulationEngine.getPrediction(), but node parameters
+     are taken from zoneNodes for every species, so changes made to all plants
+     (e.g. carrying capacity) are always applied.
+     */
+    @Override
+    public HashMap<Integer, SpeciesZoneType> getPrediction(String networkOrManipulationId,
+            int startTimestep, int runTimestep, Map<Integer, Integer> addSpeciesNodeList,
+            ZoneNodes zoneNodes) throws SimulationException {
+        long milliseconds = System.currentTimeMillis();
+
+        Log.printf("\nPrediction at %d\n", startTimestep);
+
+        //a copy: new species are added to zoneNodes only once predicted
+        HashMap<Integer, SpeciesZoneType> masterSpeciesList
+                = new HashMap<Integer, SpeciesZoneType>(zoneNodes.getNodes());
+        HashMap<Integer, SpeciesZoneType> mNewSpecies = new HashMap<Integer, SpeciesZoneType>();
+
+        SpeciesZoneType szt;
+
+        for (int node_id : addSpeciesNodeList.keySet()) {
+            int addedBiomass = addSpeciesNodeList.get(node_id);
+
+            if (!masterSpeciesList.containsKey(node_id)) {
+                szt = createSpeciesZoneType(node_id, addedBiomass);
+                mNewSpecies.put(node_id, szt);
+                masterSpeciesList.put(node_id, szt);
+            } else {
+                szt = masterSpeciesList.get(node_id);
+
+                szt.setCurrentBiomass(Math.max(0, szt.getCurrentBiomass() + addedBiomass));
+                szt.setBiomassUpdated(true);
+            }
+        }
+
+        Manipulation m = manipulations.get(networkOrManipulationId);
+        boolean rebuilt = (m == null);
+        if (rebuilt) {
+            Log.printf("Rebuilding manipulation %s from zone nodes\n", networkOrManipulationId);
+            m = new Manipulation(networkOrManipulationId, null);
+            manipulations.put(networkOrManipulationId, m);
+        }
+
+        Map<Integer, Double> predicted;
+        synchronized (m) {
+            Map<Integer, Double> state = stateAt(m, startTimestep);
+            for (SpeciesZoneType species : masterSpeciesList.values()) {
+                putNode(m, species);
+                if (rebuilt || mNewSpecies.containsKey(species.getNodeIndex())
+                        || species.paramUpdated || species.biomassUpdated) {
+                    state.put(species.getNodeIndex(),
+                            species.getCurrentBiomass() / Constants.BIOMASS_SCALE);
+                }
+                species.setParamUpdated(false);
+                species.setBiomassUpdated(false);
+            }
+
+            integrate(m, startTimestep, runTimestep);
+            if (startTimestep + runTimestep >= m.timesteps.size()) {
+                Log.println_e("Error (getPrediction): integration failed");
+                return null;
+            }
+            predicted = new HashMap<Integer, Double>(
+                    m.timesteps.get(startTimestep + runTimestep));
+        }
+        zoneNodes.addNodes(mNewSpecies);
+
+        for (SpeciesZoneType priorS : masterSpeciesList.values()) {
+            Double biomass = predicted.get(priorS.getNodeIndex());
+            if (biomass != null && biomass != 0) {
+                priorS.setCurrentBiomass(Math.ceil(biomass * Constants.BIOMASS_SCALE));
+            } else {
+                zoneNodes.removeNode(priorS.getNodeIndex());
+            }
+        }
+
+        Log.printf("Total Time (Get Prediction): %.2f seconds",
+                Math.round((System.currentTimeMillis() - milliseconds) / 10.0) / 100.0);
+
+        return new HashMap<Integer, SpeciesZoneType>(zoneNodes.getNodes());
+    }
+
+    /*
+     Same layout as SimulationEngine.getBiomassCSVString(): a header of
+     timesteps, then one row per node sorted by label.
+     */
+    @Override
+    public String getBiomassCSVString(String manipulation_id) {
+        Manipulation m = manipulations.get(manipulation_id);
+        if (m == null) {
+            System.err.println("Error (getBiomassCSVString): manipulation "
+                    + manipulation_id + " not found");
+            return "";
+        }
+
+        StringBuilder biomassCSV = new StringBuilder();
+        synchronized (m) {
+            int maxTimestep = m.timesteps.size() - 1;
+            for (int i = 1; i <= maxTimestep; i++) {
+                biomassCSV.append(",").append(i);
+            }
+
+            Map<String, Integer> nodeLabels = new TreeMap<String, Integer>();
+            for (SpeciesZoneType szt : m.nodes.values()) {
+                nodeLabels.put(szt.getName().replaceAll(",", " ")
+                        + " [" + szt.getNodeIndex() + "]", szt.getNodeIndex());
+            }
+            float extinction = 1.E-15f;
+            for (Map.Entry<String, Integer> label : nodeLabels.entrySet()) {
+                biomassCSV.append("\n").append(label.getKey());
+                for (int i = 1; i < maxTimestep; i++) {
+                    biomassCSV.append(",");
+                    Double biomass = m.timesteps.get(i).get(label.getValue());
+                    if (biomass != null && biomass > 0) {
+                        biomass *= Constants.BIOMASS_SCALE;
+                        biomassCSV.append(biomass > extinction ? Math.ceil(biomass) : 0);
+                    }
+                }
+            }
+        }
+
+        return biomassCSV.toString();
+    }
+
+    @Override
+    public void saveBiomassCSVFileSimJob(String manipulation_id, String header,
+            String biomassCSV) {
+        SimulationEngine.writeBiomassCSVFile(manipulation_id, header, biomassCSV);
+    }
+
+    private Manipulation newManipulation(String netId) throws SimulationException {
+        int[] nodeList = networks.get(netId);
+        if (nodeList == null) {
+            throw new SimulationException("Error (newManipulation): network "
+                    + netId + " not found");
+        }
+        Manipulation m = new Manipulation(UUID.randomUUID().toString(), netId);
+        for (int nodeId : nodeList) {
+            //no biomass until set by a manipulation
+            m.nodes.put(nodeId, createSpeciesZoneType(nodeId, 0));
+        }
+        manipulations.put(m.manipId, m);
+        return m;
+    }
+
+    private Manipulation getManipulation(String manipId) throws SimulationException {
+        Manipulation m = manipulations.get(manipId);
+        if (m == null) {
+            throw new SimulationException("Error: manipulation " + manipId + " not found");
+        }
+        return m;
+    }
+
+    /*
+     manipulate() - set biomass (0 if removing) and node parameters of species
+     at timestep, then run timestepsToRun timesteps
+     */
+    private String manipulate(
+            Collection<SpeciesZoneType> species,
+            int timestep,
+            boolean isFirstManipulation,
+            String networkOrManipulationId,
+            boolean remove
+    ) throws SimulationException {
+        Manipulation m = isFirstManipulation
+                ? newManipulation(networkOrManipulationId)
+                : getManipulation(networkOrManipulationId);
+
+        synchronized (m) {
+            Map<Integer, Double> state = stateAt(m, timestep);
+            for (SpeciesZoneType szt : species) {
+                if (!remove || !m.nodes.containsKey(szt.getNodeIndex())) {
+                    putNode(m, szt);
+                }
+                state.put(szt.getNodeIndex(),
+                        remove ? 0 : szt.getCurrentBiomass() / Constants.BIOMASS_SCALE);
+            }
+            integrate(m, timestep, timestepsToRun);
+        }
+        return m.manipId;
+    }
+
+    /*
+     putNode() - store a copy of species in m, dropping the web (and with it
+     the integrator) if the species is new or its node parameters changed
+     */
+    private static void putNode(Manipulation m, SpeciesZoneType species) {
+        SpeciesZoneType held = m.nodes.put(species.getNodeIndex(),
+                new SpeciesZoneType(species));
+        if (held == null
+                || held.getParamX() != species.getParamX()
+                || held.getParamR() != species.getParamR()
+                || held.getParamK() != species.getParamK()) {
+            m.web = null;
+        }
+    }
+
+    /*
+     stateAt() - biomass at timestep, carrying the last earlier timestep
+     forward if it has not been reached yet
+     */
+    private static Map<Integer, Double> stateAt(Manipulation m, int timestep) {
+        while (m.timesteps.size() <= timestep) {
+            m.timesteps.add(m.timesteps.isEmpty()
+                    ? new HashMap<Integer, Double>()
+                    : new HashMap<Integer, Double>(m.timesteps.get(m.timesteps.size() - 1)));
+        }
+        return m.timesteps.get(timestep);
+    }
+
+    /*
+     integrate() - replace timesteps after startTimestep with runTimestep
+     timesteps integrated from the biomass at startTimestep
+     */
+    private void integrate(Manipulation m, int startTimestep, int runTimestep) {
+        Map<Integer, Double> state = stateAt(m, startTimestep);
+        while (m.timesteps.size() > startTimestep + 1) {
+            m.timesteps.remove(m.timesteps.size() - 1);
+        }
+        if (runTimestep <= 0 || m.nodes.isEmpty()) {
+            return;
+        }
+
+        if (m.web == null) {
+            int speciesCnt = m.nodes.size();
+            m.webNodes = new int[speciesCnt];
+            SpeciesZoneType[] sztArray = new SpeciesZoneType[speciesCnt];
+            int i = 0;
+            for (SpeciesZoneType szt : m.nodes.values()) {
+                m.webNodes[i] = szt.getNodeIndex();
+                sztArray[i] = szt;
+                i++;
+            }
+            m.web = new ATNWeb(m.webNodes, sztArray,
+                    createRelationships(m.webNodes, sztArray), linkParams);
+            m.integrator = integratorType.create(
+                    TIME_INTVL, new ODESystem(m.web), MAX_ERR);
+            m.biomass = new double[speciesCnt];
+        }
+
+        //continue from the stored state, including any impulses applied to it
+        final int speciesCnt = m.webNodes.length;
+        final Integrator integrator = m.integrator;
+        final double[] biomass = m.biomass;
+        for (int i = 0; i < speciesCnt; i++) {
+            Double bm = state.get(m.webNodes[i]);
+            biomass[i] = (bm == null) ? 0 : bm;
+        }
+
+        //once the web is steady or extinct, hold the last state
+        SteadyStateDetector detector = new SteadyStateDetector(speciesCnt,
+                TIME_INTVL, propertiesConfig);
+        if (detector.update(biomass)) {
+            holdState(m, startTimestep + runTimestep);
+            return;
+        }
+        for (int t = startTimestep; t < startTimestep + runTimestep; t++) {
+            if (!integrator.performIntegration(t * TIME_INTVL, biomass)) {
+                Log.println_e(String.format("Error (integrate): integration "
+                        + "failed to converge, manipulation %s, timestep %d\n%s",
+                        m.manipId, t + 1,
+                        integrator.stateToString((int) Constants.BIOMASS_SCALE)));
+                return;
+            }
+            integrator.copyYNew(biomass);
+
+            Map<Integer, Double> next = new HashMap<Integer, Double>();
+            for (int i = 0; i < speciesCnt; i++) {
+                next.put(m.webNodes[i], biomass[i]);
+            }
+            m.timesteps.add(next);
+
+            if (detector.update(biomass)) {
+                holdState(m, startTimestep + runTimestep);
+                return;
+            }
+        }
+    }
+
+    /*
+     holdState() - repeat the last timestep through lastTimestep
+     */
+    private static void holdState(Manipulation m, int lastTimestep) {
+        Map<Integer, Double> last = m.timesteps.get(m.timesteps.size() - 1);
+        while (m.timesteps.size() <= lastTimestep) {
+            m.timesteps.add(new HashMap<Integer, Double>(last));
+        }
+    }
+
+    /*
+     createRelationships() - relationship of every pair of nodes, as PathTable
+     labels them, from the prey lists of the species table
+     */
+    private static Map<Integer, NodeRelationships> createRelationships(
+            int[] nodeIDs, SpeciesZoneType[] sztArray) {
+        final int n = nodeIDs.length;
+        List<List<Integer>> preyNodes = new ArrayList<List<Integer>>();
+        for (SpeciesZoneType szt : sztArray) {
+            preyNodes.add(szt.getSpeciesType().getPreyNodeIDs());
+        }
+
+        Map<Integer, NodeRelationships> relationships
+                = new HashMap<Integer, NodeRelationships>();
+        for (int i = 0; i < n; i++) {
+            NodeRelationships nodeRelns = new NodeRelationships(nodeIDs[i]);
+            for (int j = 0; j < n; j++) {
+                boolean iEatsJ = preyNodes.get(i).contains(nodeIDs[j]);
+                boolean jEatsI = preyNodes.get(j).contains(nodeIDs[i]);
+                String reln;
+                if (i == j) {
+                    reln = iEatsJ ? PathTable.IS_CANNIBAL : "";
+                } else if (iEatsJ && jEatsI) {
+                    reln = PathTable.IS_BOTH;
+                } else if (iEatsJ) {
+                    reln = PathTable.IS_PREDATOR;
+                } else if (jEatsI) {
+                    reln = PathTable.IS_PREY;
+                } else {
+                    reln = "";
+                }
+                nodeRelns.addRelationship(nodeIDs[j], reln, 0, 0);
+            }
+            relationships.put(nodeIDs[i], nodeRelns);
+        }
+        return relationships;
+    }
+}
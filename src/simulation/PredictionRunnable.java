@@ -9,11 +9,10 @@ import java.util.Map.Entry;
 import model.Species;
 import model.SpeciesType;
 import net.response.ResponseChart;
-import util.CSVParser;
 import util.Log;
 import core.GameEngine;
 import model.ZoneNodes;
-import db.CSVDAO;
+import db.ChartSeriesDAO;
 import model.Ecosystem;  //9/25/14, integration with Gary's version zone->ecosystem
 import util.NetworkFunctions;
 
@@ -27,7 +26,7 @@ public class PredictionRunnable implements Runnable {
     private long executionTime;
     private GameEngine gameEngine;
     private Ecosystem zone;
-    private SimulationEngine simulationEngine;
+    private SimulationBackend simulationEngine;
     private Map<Integer, Species> speciesList;
     private Map<Integer, Integer> newSpeciesNodeList;
     private Map<Integer, Integer> currentSpeciesList = new HashMap<Integer, Integer>();
@@ -40,7 +39,7 @@ public class PredictionRunnable implements Runnable {
     //4/9/14, JTC, persistent zone nodes
     private ZoneNodes zoneNodes;
 
-    public PredictionRunnable(GameEngine gameEngine, Ecosystem zone, SimulationEngine simulationEngine, 
+    public PredictionRunnable(GameEngine gameEngine, Ecosystem zone, SimulationBackend simulationEngine, 
             String manipulation_id, int startTimestep,
             Map<Integer, Species> speciesList, Map<Integer, Integer> newSpeciesNodeList,
             ZoneNodes zoneNodes) {
@@ -132,8 +131,7 @@ public class PredictionRunnable implements Runnable {
         String csv = simulationEngine.getBiomassCSVString(manipulation_id);
 
         try {
-            String biomass_csv = CSVParser.removeNodesFromCSV(csv);
-            CSVDAO.createBiomassCSV(manipulation_id, biomass_csv);
+            String biomass_csv = ChartSeriesDAO.updateBiomass(manipulation_id, csv);
 
             ResponseChart response = new ResponseChart();
             response.setType(0);
@@ -0,0 +1,162 @@
+package simulation;
+
+// Java Imports
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Web Services Imports
+import org.datacontract.schemas._2004._07.ManipulationParameter.NodeBiomass;
+
+// Other Imports
+import model.ZoneNodes;
+
+/**
+ * SimulationBackend is the part of SimulationEngine that the game and the
+ * simulation jobs depend on: creating a sub-foodweb of the Serengeti network,
+ * manipulating its species (add, increase, reduce, remove; biomass and
+ * parameter updates), running it for a number of timesteps and reading back
+ * the biomass. SimulationEngine implements it against the remote IN3DService;
+ * LocalSimulationBackend implements it in-process with the ATN model.
+ *
+ * Networks and manipulations are identified by the strings returned when they
+ * are created. Biomass passed in SpeciesZoneType objects is on the game's
+ * scale; NodeBiomass values are already divided by Constants.BIOMASS_SCALE.
+ * Use SimulationBackendType to create the configured implementation.
+ */
+public interface SimulationBackend {
+
+    /**
+     * @param propName
+     * @return string value of requested SimulationEngineConfig property
+     */
+    String getPropertiesConfig(String propName);
+
+    /**
+     * @param networkName
+     * @param nodeList
+     * @param overwrite
+     * @return network ID
+     * @throws SimulationException
+     */
+    String createSeregenttiSubFoodweb(String networkName, int nodeList[],
+            boolean overwrite) throws SimulationException;
+
+    /**
+     * Create a sub-foodweb and a manipulation of it, run for timestepsToRun.
+     *
+     * @return manipulation ID, or null on failure
+     * @throws SimulationException
+     */
+    String createAndRunSeregenttiSubFoodweb(int nodeList[], String foodwebName,
+            int beginingTimestep, int timestepsToRun, boolean overwrite)
+            throws SimulationException;
+
+    /**
+     * As createAndRunSeregenttiSubFoodweb, also returning the network ID.
+     *
+     * @return manipulation and network IDs, or null on failure
+     * @throws SimulationException
+     */
+    SimulationIds createAndRunSeregenttiSubFoodwebForSimJob(
+            int nodeList[],
+            String foodwebName,
+            int beginingTimestep,
+            int timestepsToRun,
+            boolean overwrite
+    ) throws SimulationException;
+
+    void deleteManipulation(String manpId);
+
+    void deleteNetwork(String networkId);
+
+    SpeciesZoneType createSpeciesZoneType(int node_id, int biomass);
+
+    /**
+     * Set initial biomass and node parameters of species at timestep.
+     */
+    void setParameters2(List<SpeciesZoneType> species, int timestep, String manipulation_id);
+
+    String addSpeciesType(
+            SpeciesZoneType species,
+            HashMap<Integer, SpeciesZoneType> fullSpeciesMap,
+            int timestep,
+            boolean isFirstManipulation,
+            String networkOrManipulationId
+    ) throws SimulationException;
+
+    String addMultipleSpeciesType(
+            HashMap<Integer, SpeciesZoneType> manipSpeciesMap,
+            HashMap<Integer, SpeciesZoneType> fullSpeciesMap,
+            int timestep,
+            boolean isFirstManipulation,
+            String networkOrManipulationId
+    ) throws SimulationException;
+
+    String increaseSpeciesType(
+            SpeciesZoneType species,
+            HashMap<Integer, SpeciesZoneType> fullSpeciesMap,
+            int timestep,
+            boolean isFirstManipulation,
+            String networkOrManipulationId
+    ) throws SimulationException;
+
+    String increaseMultipleSpeciesType(
+            HashMap<Integer, SpeciesZoneType> manipSpeciesMap,
+            HashMap<Integer, SpeciesZoneType> fullSpeciesMap,
+            int timestep,
+            boolean isFirstManipulation,
+            String networkOrManipulationId
+    ) throws SimulationException;
+
+    String reduceSpeciesType(
+            SpeciesZoneType species,
+            HashMap<Integer, SpeciesZoneType> fullSpeciesMap,
+            int timestep,
+            boolean isFirstManipulation,
+            String networkOrManipulationId
+    ) throws SimulationException;
+
+    String removeSpeciesType(
+            SpeciesZoneType species,
+            HashMap<Integer, SpeciesZoneType> fullSpeciesMap,
+            int timestep,
+            boolean isFirstManipulation,
+            String networkOrManipulationId
+    ) throws SimulationException;
+
+    void updateBiomass(
+            String manipulationId,
+            List<NodeBiomass> lNodeBiomass,
+            int timestep
+    ) throws SimulationException;
+
+    /**
+     * Run a manipulation from startTimestep for runTimestep timesteps.
+     */
+    void run(int startTimestep, int runTimestep, String manipulationId);
+
+    /**
+     * @return biomass of each species at timestep, keyed by node ID
+     * @throws SimulationException
+     */
+    HashMap<Integer, SpeciesZoneType> getBiomass(String manipulationId,
+            int nodeIndex, int timestep) throws SimulationException;
+
+    /**
+     * Apply the player's changes (addSpeciesNodeList, and biomass/parameter
+     * updates flagged in zoneNodes) at startTimestep, run runTimestep
+     * timesteps and update zoneNodes with the predicted biomass.
+     *
+     * @return zoneNodes' updated node map
+     * @throws SimulationException
+     */
+    HashMap<Integer, SpeciesZoneType> getPrediction(String networkOrManipulationId,
+            int startTimestep, int runTimestep, Map<Integer, Integer> addSpeciesNodeList,
+            ZoneNodes zoneNodes) throws SimulationException;
+
+    String getBiomassCSVString(String manipulation_id);
+
+    void saveBiomassCSVFileSimJob(String manipulation_id, String header,
+            String biomassCSV);
+}
@@ -0,0 +1,73 @@
+package simulation;
+
+// Java Imports
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * The simulation backends, by the name used for the "simulationBackend" entry
+ * of SimulationEngineConfig.properties: "remote" for the IN3DService
+ * (SimulationEngine), "local" for the in-process ATN model
+ * (LocalSimulationBackend).
+ */
+public enum SimulationBackendType {
+
+    REMOTE("remote"),
+    LOCAL("local");
+
+    private final String name;
+
+    private SimulationBackendType(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name
+     * @return the matching type, or REMOTE if name is null or unknown
+     */
+    public static SimulationBackendType fromName(String name) {
+        if (name != null) {
+            for (SimulationBackendType type : values()) {
+                if (type.name.equalsIgnoreCase(name.trim())) {
+                    return type;
+                }
+            }
+        }
+        return REMOTE;
+    }
+
+    /**
+     * @return the type configured in SimulationEngineConfig.properties
+     */
+    public static SimulationBackendType fromConfig() {
+        Properties propertiesConfig = new Properties();
+        try {
+            propertiesConfig.load(new FileInputStream(
+                    "conf/simulation/SimulationEngineConfig.properties"));
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return fromName(propertiesConfig.getProperty("simulationBackend"));
+    }
+
+    /**
+     * @return a new backend of the configured type
+     */
+    public static SimulationBackend createDefault() {
+        return fromConfig().create();
+    }
+
+    public SimulationBackend create() {
+        switch (this) {
+            case LOCAL:
+                return new LocalSimulationBackend();
+            default:
+                return new SimulationEngine();
+        }
+    }
+}
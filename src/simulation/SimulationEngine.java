@@ -57,7 +57,11 @@ import simulation.config.ModelType;
 import util.Log;
 import model.ZoneNodes;
 
-public class SimulationEngine {
+/**
+ * SimulationEngine runs simulations on the remote IN3DService (wsdlurl in
+ * SimulationEngineConfig.properties) through SOAP requests.
+ */
+public class SimulationEngine implements SimulationBackend {
 
     private IN3DService svc;
     private User user;
@@ -1711,6 +1715,19 @@ public class SimulationEngine {
      */
     public void saveBiomassCSVFileSimJob(String manipulation_id, String header,
             String biomassCSV) {
+        writeBiomassCSVFile(manipulation_id, header, biomassCSV);
+    }
+
+    /**
+     * Save a biomass CSV string (with header) to the next free
+     * WoB_Data_n.csv in Constants.CSV_SAVE_PATH; shared by all backends.
+     *
+     * @param manipulation_id
+     * @param header
+     * @param biomassCSV
+     */
+    public static void writeBiomassCSVFile(String manipulation_id, String header,
+            String biomassCSV) {
         //9/16/14 - jtc - had to change WOB to WoB for replaceFirst to work.
         //cannot figure out why this used to work!
         final String name = "WoB_Data", extension = ".csv";
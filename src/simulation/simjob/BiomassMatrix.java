@@ -0,0 +1,715 @@
+package simulation.simjob;
+
+// Java Imports
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Other Imports
+import org.apache.axis.encoding.Base64;
+import util.Log;
+
+/**
+ * The BiomassMatrix class holds the biomass/time chart found in sim_job and
+ * converge_attempt CSVs (one "name [node_id]" line per species, one value per
+ * timestep) in a columnar binary form.
+ *
+ * Each node's values are stored as XOR-compressed doubles: a value equal to
+ * the previous one costs a single bit, and nearby values only store the bits
+ * that changed. The text before and after the chart is kept verbatim, so
+ * toCSV() reproduces the original string.
+ *
+ * In the encoded form the node directory, the surrounding text and each
+ * node's block are deflated separately, so a matrix read back from it only
+ * inflates the directory up front; a node's block is inflated and decoded
+ * when that node (or a leading range of its timesteps) is first asked for,
+ * and the text only when toCSV() or getSuffix() needs it. The result is
+ * Base64 encoded behind a short prefix so it fits in the existing LONGTEXT
+ * columns next to rows still stored as CSV. Values written by the first
+ * format, which deflated the whole matrix at once, are still read.
+ */
+public class BiomassMatrix {
+
+    private static final String PREFIX = "#BM2:";
+    // First format: the whole matrix deflated at once
+    private static final String PREFIX_V1 = "#BM1:";
+    private static final int MAGIC = 0x424D5458; // "BMTX"
+    private static final int FORMAT_VERSION = 2;
+    private static final String GRAINS = "Grains, seeds";
+    // Value Formats
+    private static final byte FORMAT_DOUBLE = 0;
+    private static final byte FORMAT_INTEGER = 1;
+
+    private String prefix = "";
+    private String suffix = "";
+    private String separator = ",";
+    private final List<Node> nodes = new ArrayList<Node>();
+    private boolean exact = true;
+    // Encoded values, or null if the matrix was parsed from CSV
+    private byte[] data;
+    // Whether node blocks in data are deflated (FORMAT_VERSION 2)
+    private boolean deflated;
+    // Deflated prefix and suffix within data, until they are first read
+    private int textOffset = -1;
+    private int textLength;
+
+    private BiomassMatrix() {
+    }
+
+    /**
+     * Parse the biomass chart out of a CSV string. Lines before the first
+     * species line and after the last one are kept as they are.
+     *
+     * @param csv
+     * @return BiomassMatrix
+     */
+    public static BiomassMatrix parse(String csv) {
+        BiomassMatrix matrix = new BiomassMatrix();
+
+        if (csv == null) {
+            return matrix;
+        }
+
+        String[] lines = csv.split("\n", -1);
+        int matrixStart = -1, matrixEnd = -1;
+
+        for (int i = 0, pos = 0; i < lines.length; pos += lines[i].length() + 1, i++) {
+            Node node = parseLine(lines[i]);
+
+            if (node == null) {
+                if (matrixStart >= 0) {
+                    break;
+                }
+                continue;
+            }
+
+            if (matrixStart < 0) {
+                matrixStart = pos;
+                if (node.cells.length > 0 && node.cells[0].startsWith(" ")) {
+                    matrix.separator = ", ";
+                }
+            }
+
+            node.cells = null;
+            matrix.nodes.add(node);
+            matrixEnd = pos + lines[i].length();
+        }
+
+        if (matrixStart < 0) {
+            matrix.prefix = csv;
+            return matrix;
+        }
+
+        matrix.prefix = csv.substring(0, matrixStart);
+        matrix.suffix = csv.substring(matrixEnd);
+        matrix.exact = matrix.toCSV().equals(csv);
+
+        return matrix;
+    }
+
+    /**
+     * Read a matrix from a stored value, which may be either plain CSV or the
+     * output of encode().
+     *
+     * @param stored
+     * @return BiomassMatrix
+     */
+    public static BiomassMatrix load(String stored) {
+        if (!isEncoded(stored)) {
+            return parse(stored);
+        }
+
+        try {
+            if (stored.startsWith(PREFIX_V1)) {
+                return fromBytes(inflate(Base64.decode(stored.substring(PREFIX_V1.length()))));
+            }
+            return fromBytes(Base64.decode(stored.substring(PREFIX.length())));
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Corrupt biomass matrix: " + ex.getMessage());
+        }
+    }
+
+    public static boolean isEncoded(String stored) {
+        return stored != null && (stored.startsWith(PREFIX) || stored.startsWith(PREFIX_V1));
+    }
+
+    /**
+     * Convert a CSV to its stored form. CSVs without a biomass chart, or that
+     * would not come back out exactly the same, are returned unchanged.
+     *
+     * @param csv
+     * @return encoded string or the original CSV
+     */
+    public static String encode(String csv) {
+        if (csv == null || isEncoded(csv)) {
+            return csv;
+        }
+
+        try {
+            BiomassMatrix matrix = parse(csv);
+
+            if (matrix.exact && !matrix.nodes.isEmpty()) {
+                String encoded = matrix.toEncoded();
+                if (encoded.length() < csv.length()) {
+                    return encoded;
+                }
+            }
+        } catch (RuntimeException ex) {
+            Log.println_e("Biomass matrix encoding failed: " + ex.getMessage());
+        }
+
+        return csv;
+    }
+
+    public String toEncoded() {
+        return PREFIX + Base64.encode(toBytes());
+    }
+
+    /**
+     * @return true if toCSV() reproduces the CSV this matrix was parsed from
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * @return the text following the biomass chart, e.g. the prey list and
+     * relationship charts of a completed job
+     */
+    public String getSuffix() {
+        readText();
+        return suffix;
+    }
+
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    public List<Integer> getNodeList() {
+        List<Integer> nodeList = new ArrayList<Integer>(nodes.size());
+
+        for (Node node : nodes) {
+            nodeList.add(node.nodeId);
+        }
+
+        return nodeList;
+    }
+
+    /**
+     * Number of timesteps, taken from the first node as the CSV readers do.
+     *
+     * @return timesteps
+     */
+    public int getTimesteps() {
+        return nodes.isEmpty() ? 0 : nodes.get(0).valueCount;
+    }
+
+    /**
+     * Get a node's biomass over a range of timesteps. Only the values up to
+     * the end of the range are decoded.
+     *
+     * @param node_id
+     * @param from first timestep, inclusive
+     * @param to last timestep, exclusive
+     * @return values, 0 where the node has none, or null if the node is absent
+     */
+    public double[] getBiomass(int node_id, int from, int to) {
+        for (Node node : nodes) {
+            if (node.nodeId == node_id) {
+                double[] values = getValues(node, Math.min(to, node.valueCount));
+                double[] range = new double[Math.max(0, to - from)];
+
+                for (int i = from; i < to && i < values.length; i++) {
+                    range[i - from] = values[i];
+                }
+
+                return range;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Build the same EcosystemTimesteps that ExtractCSVData produces from the
+     * CSV form.
+     *
+     * @return EcosystemTimesteps
+     */
+    public EcosystemTimesteps getEcosystemTimesteps() {
+        EcosystemTimesteps ecosysTimesteps = new EcosystemTimesteps();
+        putTimesteps(ecosysTimesteps);
+        return ecosysTimesteps;
+    }
+
+    public void putTimesteps(EcosystemTimesteps ecosysTimesteps) {
+        int steps = getTimesteps();
+
+        for (Node node : nodes) {
+            double[] values = getValues(node, Math.min(steps, node.valueCount));
+            NodeTimesteps nodeTimesteps = new NodeTimesteps(node.nodeId, steps);
+
+            for (int i = 0; i < values.length; i++) {
+                nodeTimesteps.setBiomass(i, values[i]);
+            }
+
+            ecosysTimesteps.putNodeTimesteps(node.nodeId, nodeTimesteps);
+        }
+    }
+
+    /**
+     * Render the CSV form.
+     *
+     * @return CSV string
+     */
+    public String toCSV() {
+        readText();
+        StringBuilder csv = new StringBuilder(prefix);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            double[] values = getValues(node, node.valueCount);
+
+            if (i > 0) {
+                csv.append('\n');
+            }
+            csv.append(node.label);
+
+            for (int col = 0; col < node.cellCount; col++) {
+                csv.append(separator);
+                if (col < values.length) {
+                    if (node.format == FORMAT_INTEGER) {
+                        csv.append((long) values[col]);
+                    } else {
+                        csv.append(values[col]);
+                    }
+                }
+            }
+        }
+
+        return csv.append(suffix).toString();
+    }
+
+    public byte[] toBytes() {
+        readText();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            List<byte[]> blocks = new ArrayList<byte[]>(nodes.size());
+            ByteArrayOutputStream dirBytes = new ByteArrayOutputStream();
+            DataOutputStream dir = new DataOutputStream(dirBytes);
+
+            writeString(dir, separator);
+            dir.writeInt(nodes.size());
+            for (Node node : nodes) {
+                byte[] block;
+                if (data == null) {
+                    block = deflate(encodeValues(node.values));
+                } else if (deflated) {
+                    block = Arrays.copyOfRange(data, node.offset, node.offset + node.length);
+                } else {
+                    block = deflate(Arrays.copyOfRange(data, node.offset, node.offset + node.length));
+                }
+                blocks.add(block);
+
+                dir.writeInt(node.nodeId);
+                writeString(dir, node.label);
+                dir.writeByte(node.format);
+                dir.writeInt(node.valueCount);
+                dir.writeInt(node.cellCount);
+                dir.writeInt(block.length);
+            }
+
+            ByteArrayOutputStream textBytes = new ByteArrayOutputStream();
+            DataOutputStream text = new DataOutputStream(textBytes);
+            writeString(text, prefix);
+            writeString(text, suffix);
+
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            writeBytes(out, deflate(dirBytes.toByteArray()));
+            writeBytes(out, deflate(textBytes.toByteArray()));
+            for (byte[] block : blocks) {
+                out.write(block);
+            }
+        } catch (IOException ex) {
+            // Not thrown by an in-memory stream
+            throw new IllegalStateException(ex);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read the output of toBytes(), or of the first format after inflating
+     * it. Only the node directory is inflated here.
+     *
+     * @param bytes
+     * @return BiomassMatrix
+     * @throws IOException
+     */
+    public static BiomassMatrix fromBytes(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Bad magic number");
+        }
+        int version = in.readByte();
+        if (version != 1 && version != FORMAT_VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+
+        BiomassMatrix matrix = new BiomassMatrix();
+        DataInputStream dir = in;
+
+        if (version == 1) {
+            matrix.prefix = readString(in);
+            matrix.suffix = readString(in);
+        } else {
+            matrix.deflated = true;
+            dir = new DataInputStream(new ByteArrayInputStream(inflate(readBytes(in))));
+            matrix.textLength = in.readInt();
+            matrix.textOffset = bytes.length - in.available();
+            if (in.skipBytes(matrix.textLength) != matrix.textLength) {
+                throw new IOException("Truncated biomass matrix");
+            }
+        }
+        matrix.separator = readString(dir);
+
+        int count = dir.readInt();
+        int dataLength = 0;
+
+        for (int i = 0; i < count; i++) {
+            Node node = new Node();
+            node.nodeId = dir.readInt();
+            node.label = readString(dir);
+            node.format = dir.readByte();
+            node.valueCount = dir.readInt();
+            node.cellCount = dir.readInt();
+            node.length = dir.readInt();
+            node.offset = dataLength;
+            dataLength += node.length;
+            matrix.nodes.add(node);
+        }
+
+        // Node blocks follow the directory
+        int dataStart = bytes.length - dataLength;
+        if (dataStart < 0 || in.available() != dataLength) {
+            throw new IOException("Truncated biomass matrix");
+        }
+        for (Node node : matrix.nodes) {
+            node.offset += dataStart;
+        }
+        matrix.data = bytes;
+
+        return matrix;
+    }
+
+    // Inflate the prefix and suffix of a matrix read by fromBytes()
+    private synchronized void readText() {
+        if (textOffset < 0) {
+            return;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                    inflate(Arrays.copyOfRange(data, textOffset, textOffset + textLength))));
+            prefix = readString(in);
+            suffix = readString(in);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Corrupt biomass matrix: " + ex.getMessage());
+        }
+        textOffset = -1;
+    }
+
+    // A node's XOR-compressed values, inflated on first use
+    private synchronized byte[] getBlock(Node node) {
+        if (node.block == null) {
+            try {
+                node.block = inflate(Arrays.copyOfRange(data, node.offset, node.offset + node.length));
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Corrupt biomass matrix: " + ex.getMessage());
+            }
+        }
+
+        return node.block;
+    }
+
+    private static class Node {
+
+        private int nodeId;
+        private String label;
+        private byte format;
+        private int valueCount;
+        private int cellCount;
+        // Values parsed from CSV; null when reading from data
+        private double[] values;
+        // Raw cells, only used while parsing
+        private String[] cells;
+        // Location of the node's block within data
+        private int offset;
+        private int length;
+        // The deflated block, inflated, once read
+        private byte[] block;
+    }
+
+    // Species lines start with a label containing "[node_id]"; anything else
+    // returns null.
+    private static Node parseLine(String line) {
+        int labelEnd = labelEnd(line);
+        String label = line.substring(0, labelEnd);
+
+        int open = label.lastIndexOf('['), close = label.lastIndexOf(']');
+        if (open < 0 || close < open) {
+            return null;
+        }
+
+        Node node = new Node();
+        try {
+            node.nodeId = Integer.valueOf(label.substring(open + 1, close));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+
+        node.label = label;
+        node.cells = labelEnd < line.length()
+                ? line.substring(labelEnd + 1).split(",", -1)
+                : new String[0];
+        node.cellCount = node.cells.length;
+        node.format = FORMAT_INTEGER;
+
+        // Trailing empty cells hold no value; empty cells before the last
+        // value read as 0
+        int valueCount = node.cells.length;
+        while (valueCount > 0 && node.cells[valueCount - 1].trim().isEmpty()) {
+            valueCount--;
+        }
+
+        node.valueCount = valueCount;
+        node.values = new double[valueCount];
+
+        for (int i = 0; i < valueCount; i++) {
+            String cell = node.cells[i].trim();
+
+            if (!cell.isEmpty()) {
+                node.values[i] = Double.valueOf(cell);
+                if (!isInteger(cell)) {
+                    node.format = FORMAT_DOUBLE;
+                }
+            }
+        }
+
+        return node;
+    }
+
+    private static boolean isInteger(String cell) {
+        for (int i = 0; i < cell.length(); i++) {
+            char c = cell.charAt(i);
+            if (!(Character.isDigit(c) || (i == 0 && c == '-'))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // The CSV readers treat "Grains, seeds" as part of a species name.
+    private static int labelEnd(String line) {
+        int comma = line.indexOf(',');
+
+        while (comma >= 0 && line.startsWith(GRAINS, comma - GRAINS.indexOf(','))) {
+            comma = line.indexOf(',', comma + 1);
+        }
+
+        return comma < 0 ? line.length() : comma;
+    }
+
+    private double[] getValues(Node node, int count) {
+        if (node.values != null) {
+            return node.values.length == count ? node.values : Arrays.copyOf(node.values, count);
+        }
+
+        if (deflated) {
+            return decodeValues(getBlock(node), 0, count);
+        }
+
+        return decodeValues(data, node.offset, count);
+    }
+
+    /**
+     * XOR compression: '0' repeats the previous value; '10' stores the
+     * changed bits inside the previous window of meaningful bits; '11' opens
+     * a new window (6 bits of leading zeros, 6 bits of length - 1).
+     */
+    private static byte[] encodeValues(double[] values) {
+        BitWriter out = new BitWriter();
+        long previous = 0;
+        int leading = -1, trailing = 0;
+
+        for (double value : values) {
+            long bits = Double.doubleToRawLongBits(value);
+            long xor = bits ^ previous;
+            previous = bits;
+
+            if (xor == 0) {
+                out.write(0, 1);
+                continue;
+            }
+
+            int newLeading = Long.numberOfLeadingZeros(xor);
+            int newTrailing = Long.numberOfTrailingZeros(xor);
+
+            if (leading >= 0 && newLeading >= leading && newTrailing >= trailing) {
+                out.write(2, 2);
+                out.write(xor >>> trailing, 64 - leading - trailing);
+            } else {
+                leading = newLeading;
+                trailing = newTrailing;
+                int length = 64 - leading - trailing;
+                out.write(3, 2);
+                out.write(leading, 6);
+                out.write(length - 1, 6);
+                out.write(xor >>> trailing, length);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    private static double[] decodeValues(byte[] data, int offset, int count) {
+        BitReader in = new BitReader(data, offset);
+        double[] values = new double[count];
+        long previous = 0;
+        int leading = 0, trailing = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (in.read(1) != 0) {
+                if (in.read(1) != 0) {
+                    leading = (int) in.read(6);
+                    trailing = 64 - leading - ((int) in.read(6) + 1);
+                }
+                previous ^= in.read(64 - leading - trailing) << trailing;
+            }
+            values[i] = Double.longBitsToDouble(previous);
+        }
+
+        return values;
+    }
+
+    private static class BitWriter {
+
+        private byte[] buffer = new byte[64];
+        private int bitCount;
+
+        // Write the low-order bits of value, most significant first
+        private void write(long value, int bits) {
+            for (int i = bits - 1; i >= 0; i--) {
+                if (bitCount == buffer.length * 8) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                if (((value >>> i) & 1) != 0) {
+                    buffer[bitCount >> 3] |= 0x80 >>> (bitCount & 7);
+                }
+                bitCount++;
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, (bitCount + 7) >> 3);
+        }
+    }
+
+    private static class BitReader {
+
+        private final byte[] data;
+        private int bit;
+
+        private BitReader(byte[] data, int offset) {
+            this.data = data;
+            this.bit = offset * 8;
+        }
+
+        private long read(int bits) {
+            long value = 0;
+
+            for (int i = 0; i < bits; i++, bit++) {
+                value = (value << 1) | ((data[bit >> 3] >>> (7 - (bit & 7))) & 1);
+            }
+
+            return value;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 16);
+        byte[] buffer = new byte[4096];
+
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] bytes) throws IOException {
+        Inflater inflater = new Inflater();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+        byte[] buffer = new byte[4096];
+
+        try {
+            inflater.setInput(bytes);
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated deflate stream");
+                }
+                out.write(buffer, 0, count);
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException(ex.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -749,7 +749,7 @@ public class FormParamAnalSim extends javax.swing.JFrame {
         SimJob oldJob = SimJobDAO.loadCompletedJob(Integer.parseInt(jobStr));
         EcosystemTimesteps ecosysTimesteps = null;
         if (oldJob != null) {
-            ecosysTimesteps = ExtractCSVData.extractCSVData(oldJob.getCsv());
+            ecosysTimesteps = oldJob.getBiomassMatrix().getEcosystemTimesteps();
         }
         String includeList = "," + 
                 nodeListPlant.getText() + "," + 
@@ -152,6 +152,8 @@ public class SimJob {
     protected String manipulation_Id = null;  //9/25/14, JTC, had to change to null
     protected String manip_Timestamp = "";
     protected String csv = "";
+    //biomass chart read from csv; set directly when loaded in encoded form
+    protected BiomassMatrix biomassMatrix = null;
     protected boolean include = true;
     //11/9/14, jtc, add new option to use simtest node param values or not:
     protected boolean useSimTestNodeVals = DFLT_USE_SIMTESTNODE_VALS;
@@ -220,7 +222,16 @@ public class SimJob {
     }
 
     public void setCsv(String csv) {
+        if (BiomassMatrix.isEncoded(csv)) {
+            //render the csv only if it is asked for
+            this.biomassMatrix = BiomassMatrix.load(csv);
+            this.csv = null;
+            Log.consoleln(String.format("csv for %d (%d nodes, encoded)",
+                    job_Id, biomassMatrix.getNodeCount()));
+            return;
+        }
         this.csv = csv;
+        this.biomassMatrix = null;
         String str = String.format("csv for %d %s", job_Id, csv);
         Log.consoleln(str);
     }
@@ -258,9 +269,20 @@ public class SimJob {
     }
 
     public String getCsv() {
+        if (csv == null && biomassMatrix != null) {
+            csv = biomassMatrix.toCSV();
+        }
         return csv;
     }
 
+    //biomass/time chart from csv, parsed once
+    public BiomassMatrix getBiomassMatrix() {
+        if (biomassMatrix == null) {
+            biomassMatrix = BiomassMatrix.parse(csv);
+        }
+        return biomassMatrix;
+    }
+
     public boolean getInclude() {
         return include;
     }
@@ -10,7 +10,6 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import metadata.Constants;
-import model.SpeciesType;
 import util.CSVParser;
 
 /**
@@ -28,10 +27,10 @@ public class SimJobConverge {
     public SimJobConverge(String config, int timesteps) {
 
         GameServer.getInstance();  //load species information
-        /* read in experimental variables only used for running simulation jobs*/
+        /* read in experimental variables only used for running simulation jobs;
+         loaded once and shared by all converge attempts */
         if (SimJob.DFLT_USE_SIMTESTNODE_VALS) {
-            SpeciesType.loadSimTestNodeParams(Constants.ECOSYSTEM_TYPE);
-            SpeciesType.loadSimTestLinkParams(Constants.ECOSYSTEM_TYPE); 
+            SimTestParams.load(Constants.ECOSYSTEM_TYPE);
         }
 
 
@@ -12,7 +12,8 @@ import atn.ATNEngine;
 import metadata.Constants;
 //import db.ManipulationIdDAO;
 import db.SimJobDAO;
-import simulation.SimulationEngine;
+import simulation.SimulationBackend;
+import simulation.SimulationBackendType;
 import simulation.SimulationException;
 import simulation.SimulationIds;
 import util.Log;
@@ -25,7 +26,7 @@ import util.Log;
  */
 public final class SimJobManager {
 
-    private SimulationEngine simEngine;
+    private SimulationBackend simEngine;
     private SimJob job;
     private String manipId;
     private int status = Constants.STATUS_FAILURE;
@@ -36,13 +37,13 @@ public final class SimJobManager {
         this.simEngine = newSimEngine();
     }
 
-    public SimulationEngine newSimEngine() {
-        this.simEngine = new SimulationEngine();
+    public SimulationBackend newSimEngine() {
+        this.simEngine = SimulationBackendType.createDefault();
         this.atnEngine = new ATNEngine();
         return this.simEngine;
     }
 
-    public SimulationEngine getSimEngine() {
+    public SimulationBackend getSimEngine() {
         return this.simEngine;
     }
 
@@ -115,7 +116,7 @@ public final class SimJobManager {
             );
 
             /*runs manipulation timestep 2+ (executeManipulationRequest)*/
-            simEngine.run(++nextTimestep, job.getTimesteps(), manipId, false);
+            simEngine.run(++nextTimestep, job.getTimesteps(), manipId);
             double simDuration = (System.currentTimeMillis() - simStartTime) / 1000f;
 
             //save job with biomass information and job ID info
@@ -178,6 +178,8 @@ public class SimJobRandom extends SimJob {
     private Map<Integer,SubNodes> subNodeMap;
 
     private RandomGen rand;
+    //null for a seed from the clock
+    private Long seed = null;
     /*9/29/14, jtc, make it optional to include base ecosystem species.  The functionality
      exists to increase likelihood of viable predator/prey relationships into the i
      initial ecosystem*/
@@ -206,6 +208,7 @@ public class SimJobRandom extends SimJob {
         this.maxBiomass = srcJob.maxBiomass;
         this.minSpecies = srcJob.minSpecies;
         this.maxSpecies = srcJob.maxSpecies;
+        this.seed = srcJob.seed;
     }
 
     /*one species has multiple nodes; need to break into individual nodes for use
@@ -337,7 +340,7 @@ public class SimJobRandom extends SimJob {
         boolean success;
 
         //set biomass for primary producer
-        rand = new RandomGen();
+        rand = (seed == null) ? new RandomGen() : new RandomGen(seed);
         if (randomGrassBiomass) {
             ppTotalBiomass += getRandomBiomass();
         }
@@ -505,6 +508,16 @@ public class SimJobRandom extends SimJob {
         this.randomGrassBiomass = randomGrass;
     }
 
+    /**
+     * Seed the species and biomass choices of configRandomSimJob, so the
+     * same seed gives the same job.
+     *
+     * @param seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
     public void setPrune(boolean prune) {
         this.prune = prune;
     }
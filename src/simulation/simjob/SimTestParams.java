@@ -0,0 +1,144 @@
+package simulation.simjob;
+
+// Java Imports
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Other Imports
+import db.SpeciesDAO;
+import model.Consume;
+
+/**
+ * SimTestParams is an immutable snapshot of the simtest_node_params and
+ * consume (link) tables for a single eco_type. A snapshot is loaded once and
+ * then shared read-only by all simulations; a reload builds a new snapshot
+ * and swaps it in atomically, so readers never see a partially loaded one.
+ *
+ * The SpeciesType getters look up getCurrent() on every call, so a reload
+ * during a simulation takes effect for the rest of that simulation. Code that
+ * needs a consistent version throughout should call getCurrent() once and
+ * read from that snapshot.
+ */
+public final class SimTestParams {
+
+    private static final AtomicReference<SimTestParams> current =
+            new AtomicReference<SimTestParams>();
+    private static int nextVersion = 1;
+
+    private final int version;
+    private final int eco_type;
+    // Species ID -> (Node ID -> SimTestNode)
+    private final Map<Integer, Map<Integer, SimTestNode>> nodeParams;
+    // Predator ID -> (Prey ID -> Consume)
+    private final Map<Integer, Map<Integer, Consume>> linkParams;
+
+    private SimTestParams(int version, int eco_type,
+            Map<Integer, Map<Integer, SimTestNode>> nodeParams,
+            Map<Integer, Map<Integer, Consume>> linkParams) {
+        this.version = version;
+        this.eco_type = eco_type;
+        this.nodeParams = freeze(nodeParams);
+        this.linkParams = freeze(linkParams);
+    }
+
+    private static <T> Map<Integer, Map<Integer, T>> freeze(Map<Integer, Map<Integer, T>> src) {
+        Map<Integer, Map<Integer, T>> copy = new HashMap<Integer, Map<Integer, T>>();
+        for (Map.Entry<Integer, Map<Integer, T>> entry : src.entrySet()) {
+            copy.put(entry.getKey(),
+                    Collections.unmodifiableMap(new HashMap<Integer, T>(entry.getValue())));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Return the current snapshot, loading it from the database only if no
+     * snapshot exists yet or the existing one was built for another eco_type.
+     *
+     * @param eco_type
+     * @return SimTestParams
+     */
+    public static SimTestParams load(int eco_type) {
+        SimTestParams params = current.get();
+        if (params != null && params.eco_type == eco_type) {
+            return params;
+        }
+        synchronized (SimTestParams.class) {
+            params = current.get();
+            if (params == null || params.eco_type != eco_type) {
+                params = fetch(eco_type);
+                current.set(params);
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Re-read both tables from the database and atomically replace the
+     * current snapshot.
+     *
+     * @param eco_type
+     * @return the new snapshot
+     */
+    public static SimTestParams reload(int eco_type) {
+        synchronized (SimTestParams.class) {
+            SimTestParams params = fetch(eco_type);
+            current.set(params);
+            return params;
+        }
+    }
+
+    /**
+     * Current snapshot, or null if none has been loaded.
+     *
+     * @return SimTestParams
+     */
+    public static SimTestParams getCurrent() {
+        return current.get();
+    }
+
+    private static SimTestParams fetch(int eco_type) {
+        return new SimTestParams(nextVersion++, eco_type,
+                SpeciesDAO.loadSimTestNodeParams(eco_type),
+                SpeciesDAO.loadSimTestLinkParams(eco_type));
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getEcoType() {
+        return eco_type;
+    }
+
+    /**
+     * Node parameters for a single species, or null if it has none.
+     *
+     * @param species_id
+     * @return Map of node ID to SimTestNode
+     */
+    public Map<Integer, SimTestNode> getNodeParams(int species_id) {
+        return nodeParams.get(species_id);
+    }
+
+    public SimTestNode getNode(int species_id, int node_id) {
+        Map<Integer, SimTestNode> nodeList = nodeParams.get(species_id);
+        return nodeList == null ? null : nodeList.get(node_id);
+    }
+
+    /**
+     * Link parameters for a single predator, or null if it has none.
+     *
+     * @param predator_id
+     * @return Map of prey ID to Consume
+     */
+    public Map<Integer, Consume> getLinkParams(int predator_id) {
+        return linkParams.get(predator_id);
+    }
+
+    public Consume getLink(int predator_id, int prey_id) {
+        Map<Integer, Consume> linkList = linkParams.get(predator_id);
+        return linkList == null ? null : linkList.get(prey_id);
+    }
+}
@@ -0,0 +1,249 @@
+package util;
+
+// Java Imports
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The QuantileSketch class summarizes a stream of non-negative values with a
+ * fixed amount of memory. Values are counted in logarithmically sized buckets
+ * so any quantile is reported within a fixed relative error. Unlike a t-digest
+ * or KLL sketch, counts can also be removed, which lets a value be replaced in
+ * place when, for example, an ecosystem's high score changes.
+ *
+ * Bucket counts are kept in a Fenwick tree, so rank and quantile queries are
+ * O(log b) for b buckets. Two sketches built with the same accuracy can be
+ * merged by adding their counts.
+ */
+public class QuantileSketch {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int NUM_BUCKETS = 2048;
+
+    private final double accuracy;
+    private final double gamma;
+    private final double logGamma;
+    // Fenwick tree over bucket counts (1-based)
+    private final long[] tree = new long[NUM_BUCKETS + 1];
+    // Count per bucket, kept alongside the tree for checks and persistence
+    private final long[] counts = new long[NUM_BUCKETS];
+    private long total;
+
+    /**
+     * @param accuracy relative error of reported values, e.g. 0.01 for 1%
+     */
+    public QuantileSketch(double accuracy) {
+        this.accuracy = accuracy;
+        this.gamma = (1 + accuracy) / (1 - accuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    public synchronized long getCount() {
+        return total;
+    }
+
+    public synchronized void add(double value) {
+        change(bucketOf(value), 1);
+    }
+
+    /**
+     * Remove one occurrence of a value previously added. Removing a value
+     * that was never added leaves the sketch unchanged.
+     *
+     * @param value
+     * @return false if the value was not in the sketch, i.e. the sketch has
+     * drifted from the values it summarizes
+     */
+    public synchronized boolean remove(double value) {
+        return change(bucketOf(value), -1);
+    }
+
+    /**
+     * Replace one occurrence of oldValue with newValue. newValue is added
+     * even if oldValue was not in the sketch.
+     *
+     * @param oldValue previous value, or null if there was none
+     * @param newValue
+     * @return false if oldValue was not in the sketch
+     */
+    public synchronized boolean replace(Double oldValue, double newValue) {
+        boolean found = true;
+        if (oldValue != null) {
+            found = change(bucketOf(oldValue), -1);
+        }
+        change(bucketOf(newValue), 1);
+        return found;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(tree, 0);
+        Arrays.fill(counts, 0);
+        total = 0;
+    }
+
+    /**
+     * Add every count from another sketch into this one.
+     *
+     * @param other sketch built with the same accuracy
+     */
+    public synchronized void merge(QuantileSketch other) {
+        if (other.accuracy != accuracy) {
+            throw new IllegalArgumentException("Sketch accuracy mismatch");
+        }
+
+        long[] otherCounts;
+        synchronized (other) {
+            otherCounts = other.counts.clone();
+        }
+
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            if (otherCounts[i] > 0) {
+                change(i, otherCounts[i]);
+            }
+        }
+    }
+
+    /**
+     * Approximate number of values less than or equal to value.
+     *
+     * @param value
+     * @return count
+     */
+    public synchronized long rank(double value) {
+        return prefix(bucketOf(value));
+    }
+
+    /**
+     * Approximate value at the given quantile.
+     *
+     * @param q quantile between 0 and 1
+     * @return value, or 0 if the sketch is empty
+     */
+    public synchronized double getQuantile(double q) {
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.floor(Math.max(0, Math.min(1, q)) * (total - 1));
+        return valueOf(select(target));
+    }
+
+    /**
+     * Approximate largest value.
+     *
+     * @return value, or 0 if the sketch is empty
+     */
+    public synchronized double getMax() {
+        return total == 0 ? 0 : valueOf(select(total - 1));
+    }
+
+    public synchronized void write(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeDouble(accuracy);
+
+        int used = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                used++;
+            }
+        }
+
+        out.writeInt(used);
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            if (counts[i] > 0) {
+                out.writeShort(i);
+                out.writeLong(counts[i]);
+            }
+        }
+    }
+
+    public static QuantileSketch read(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported sketch version " + version);
+        }
+
+        QuantileSketch sketch = new QuantileSketch(in.readDouble());
+
+        int used = in.readInt();
+        for (int i = 0; i < used; i++) {
+            int bucket = in.readShort();
+            long count = in.readLong();
+            if (bucket < 0 || bucket >= NUM_BUCKETS || count < 0) {
+                throw new IOException("Corrupt sketch bucket " + bucket);
+            }
+            sketch.change(bucket, count);
+        }
+
+        return sketch;
+    }
+
+    // Bucket 0 holds zero (and anything below 1); bucket i > 0 covers
+    // (gamma^(i-2), gamma^(i-1)].
+    private int bucketOf(double value) {
+        if (value < 1) {
+            return 0;
+        }
+
+        int bucket = 1 + (int) Math.ceil(Math.log(value) / logGamma);
+        return Math.min(bucket, NUM_BUCKETS - 1);
+    }
+
+    private double valueOf(int bucket) {
+        if (bucket == 0) {
+            return 0;
+        }
+
+        return 2 * Math.pow(gamma, bucket - 1) / (gamma + 1);
+    }
+
+    // Returns false, changing nothing, if the bucket would go negative
+    private boolean change(int bucket, long delta) {
+        if (counts[bucket] + delta < 0) {
+            return false;
+        }
+        if (delta == 0) {
+            return true;
+        }
+
+        counts[bucket] += delta;
+        total += delta;
+
+        for (int i = bucket + 1; i <= NUM_BUCKETS; i += i & -i) {
+            tree[i] += delta;
+        }
+        return true;
+    }
+
+    // Sum of counts in buckets 0..bucket
+    private long prefix(int bucket) {
+        long sum = 0;
+
+        for (int i = bucket + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+
+        return sum;
+    }
+
+    // Bucket holding the value at 0-based position index
+    private int select(long index) {
+        int pos = 0;
+
+        for (int step = Integer.highestOneBit(NUM_BUCKETS); step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next <= NUM_BUCKETS && tree[next] <= index) {
+                pos = next;
+                index -= tree[next];
+            }
+        }
+
+        return Math.min(pos, NUM_BUCKETS - 1);
+    }
+}
@@ -0,0 +1,468 @@
+package util;
+
+// Java Imports
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Other Imports
+import metadata.Constants;
+
+/**
+ * The TimeSeriesStore class keeps chart data in compact, append-only segment
+ * files, one file per series. A series is a set of rows (such as one per
+ * species node), and each row holds integral values by column (timestep).
+ *
+ * Each row's points are written as zig-zag varint deltas of column and value
+ * from the row's previous point, so an append costs O(new points). A later
+ * point for a column replaces an earlier one when the file is read back.
+ * The legacy CSV form is rendered only when asked for.
+ */
+public class TimeSeriesStore {
+
+    private static final int MAGIC = 0x57534552; // "WSER"
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_CACHED = 256;
+    // Record Types
+    private static final byte RECORD_ROW = 1;
+    private static final byte RECORD_POINTS = 2;
+    private static final byte RECORD_LENGTH = 3;
+    private static final byte RECORD_CLEAR = 4;
+
+    private static TimeSeriesStore store;
+
+    private final File directory;
+    // Series Name -> Series, least recently used first
+    private final Map<String, Series> cache = new LinkedHashMap<String, Series>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Series> eldest) {
+            if (size() <= MAX_CACHED) {
+                return false;
+            }
+            try {
+                eldest.getValue().commit();
+            } catch (IOException ex) {
+                Log.println_e(ex.getMessage());
+            }
+            return true;
+        }
+    };
+    // Series Name -> every Series still reachable, including those evicted
+    // from the cache but held by a caller. Each row's delta state lives in
+    // its Series, so there must never be two instances of the same file.
+    private final Map<String, WeakReference<Series>> instances = new HashMap<String, WeakReference<Series>>();
+
+    public TimeSeriesStore(String path) {
+        directory = new File(path);
+    }
+
+    public static synchronized TimeSeriesStore getInstance() {
+        if (store == null) {
+            store = new TimeSeriesStore(Constants.SERIES_SAVE_PATH);
+        }
+
+        return store;
+    }
+
+    /**
+     * Open a series, reading it from disk the first time it is used.
+     *
+     * @param name file-safe series name
+     * @return Series
+     * @throws IOException
+     */
+    public synchronized Series open(String name) throws IOException {
+        Series series = cache.get(name);
+
+        if (series == null) {
+            WeakReference<Series> ref = instances.get(name);
+            series = ref == null ? null : ref.get();
+
+            if (series == null) {
+                series = new Series(new File(directory, name + ".ts"));
+                series.read();
+                purgeInstances();
+                instances.put(name, new WeakReference<Series>(series));
+            }
+            cache.put(name, series);
+        }
+
+        return series;
+    }
+
+    // Drop registry entries for series that have been garbage collected
+    private void purgeInstances() {
+        if (instances.size() < 2 * MAX_CACHED) {
+            return;
+        }
+        for (Iterator<WeakReference<Series>> it = instances.values().iterator(); it.hasNext();) {
+            if (it.next().get() == null) {
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized boolean exists(String name) {
+        return cache.containsKey(name) || new File(directory, name + ".ts").exists();
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * A single series. Rows are kept decoded in memory while the series is
+     * cached; changes are buffered until commit() appends them to the file.
+     */
+    public static class Series {
+
+        private final File file;
+        private final List<Row> rows = new ArrayList<Row>();
+        private final Map<String, Row> rowsByKey = new HashMap<String, Row>();
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private final DataOutputStream pendingOut = new DataOutputStream(pending);
+
+        private Series(File file) {
+            this.file = file;
+        }
+
+        public synchronized boolean isEmpty() {
+            return rows.isEmpty();
+        }
+
+        /**
+         * Get a row's ID, creating the row if needed.
+         *
+         * @param sortKey rows are rendered in ascending order of this key
+         * @param label first CSV cell of the row
+         * @param decimal render values as decimals ("12.0") rather than integers
+         * @return row ID
+         * @throws IOException
+         */
+        public synchronized int defineRow(String sortKey, String label, boolean decimal) throws IOException {
+            Row row = rowsByKey.get(sortKey);
+
+            if (row == null) {
+                row = addRow(sortKey, label, decimal);
+                pendingOut.writeByte(RECORD_ROW);
+                writeVarLong(pendingOut, row.id);
+                pendingOut.writeUTF(sortKey);
+                pendingOut.writeUTF(label);
+                pendingOut.writeBoolean(decimal);
+            }
+
+            return row.id;
+        }
+
+        public synchronized int getRow(String sortKey) {
+            Row row = rowsByKey.get(sortKey);
+            return row == null ? -1 : row.id;
+        }
+
+        public synchronized int getLength(int row_id) {
+            return rows.get(row_id).length;
+        }
+
+        public synchronized boolean has(int row_id, int column) {
+            return rows.get(row_id).present.get(column);
+        }
+
+        public synchronized long get(int row_id, int column) {
+            return rows.get(row_id).get(column);
+        }
+
+        /**
+         * Set values starting at a column, writing only those that changed.
+         *
+         * @param row_id
+         * @param column first column
+         * @param values
+         * @throws IOException
+         */
+        public synchronized void put(int row_id, int column, long... values) throws IOException {
+            Row row = rows.get(row_id);
+            List<long[]> changed = new ArrayList<long[]>();
+
+            for (int i = 0; i < values.length; i++) {
+                int col = column + i;
+                if (!row.present.get(col) || row.get(col) != values[i]) {
+                    changed.add(new long[]{col, values[i]});
+                }
+            }
+
+            if (changed.isEmpty()) {
+                return;
+            }
+
+            pendingOut.writeByte(RECORD_POINTS);
+            writeVarLong(pendingOut, row_id);
+            writeVarLong(pendingOut, changed.size());
+
+            for (long[] point : changed) {
+                writeVarLong(pendingOut, zigzag(point[0] - row.lastColumn));
+                writeVarLong(pendingOut, zigzag(point[1] - row.lastValue));
+                row.set((int) point[0], point[1]);
+            }
+        }
+
+        /**
+         * Remove a value so it renders as an empty cell.
+         */
+        public synchronized void clear(int row_id, int column) throws IOException {
+            Row row = rows.get(row_id);
+
+            if (row.present.get(column)) {
+                row.present.clear(column);
+                pendingOut.writeByte(RECORD_CLEAR);
+                writeVarLong(pendingOut, row_id);
+                writeVarLong(pendingOut, column);
+            }
+        }
+
+        /**
+         * Set the number of cells a row renders. Shrinking a row drops its
+         * values beyond the new length.
+         */
+        public synchronized void setLength(int row_id, int length) throws IOException {
+            Row row = rows.get(row_id);
+
+            if (row.length != length) {
+                row.setLength(length);
+                pendingOut.writeByte(RECORD_LENGTH);
+                writeVarLong(pendingOut, row_id);
+                writeVarLong(pendingOut, length);
+            }
+        }
+
+        /**
+         * Append all buffered changes to the series file.
+         *
+         * @throws IOException
+         */
+        public synchronized void commit() throws IOException {
+            if (pending.size() == 0) {
+                return;
+            }
+
+            boolean isNew = !file.exists() || file.length() == 0;
+            if (isNew && file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            try {
+                if (isNew) {
+                    out.writeInt(MAGIC);
+                    out.writeByte(FORMAT_VERSION);
+                }
+                pending.writeTo(out);
+            } finally {
+                out.close();
+            }
+
+            pending.reset();
+        }
+
+        /**
+         * Render the series in the legacy CSV layout: one line per row, the
+         * label followed by one cell per column starting at column 1.
+         *
+         * @return CSV string
+         */
+        public synchronized String toCSV() {
+            List<Row> sorted = new ArrayList<Row>(rows);
+            Collections.sort(sorted, new Comparator<Row>() {
+                @Override
+                public int compare(Row r1, Row r2) {
+                    return r1.sortKey.compareTo(r2.sortKey);
+                }
+            });
+
+            StringBuilder csv = new StringBuilder();
+
+            for (int i = 0; i < sorted.size(); i++) {
+                Row row = sorted.get(i);
+
+                if (i > 0) {
+                    csv.append('\n');
+                }
+                csv.append(row.label);
+
+                for (int col = 1; col <= row.length; col++) {
+                    csv.append(',');
+                    if (row.present.get(col)) {
+                        if (row.decimal) {
+                            csv.append((double) row.get(col));
+                        } else {
+                            csv.append(row.get(col));
+                        }
+                    }
+                }
+            }
+
+            return csv.toString();
+        }
+
+        private Row addRow(String sortKey, String label, boolean decimal) {
+            Row row = new Row(rows.size(), sortKey, label, decimal);
+            rows.add(row);
+            rowsByKey.put(sortKey, row);
+            return row;
+        }
+
+        private void read() throws IOException {
+            if (!file.exists() || file.length() == 0) {
+                return;
+            }
+
+            byte[] data = new byte[(int) file.length()];
+            DataInputStream fileIn = new DataInputStream(new FileInputStream(file));
+            try {
+                fileIn.readFully(data);
+            } finally {
+                fileIn.close();
+            }
+
+            ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+            DataInputStream in = new DataInputStream(bytes);
+            // End of the last complete record
+            int end = 0;
+
+            try {
+                if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+                    throw new IOException("Unrecognized series file " + file.getName());
+                }
+                end = data.length - bytes.available();
+
+                while (bytes.available() > 0) {
+                    int type = in.readByte();
+
+                    // Each record is read in full before it is applied
+                    if (type == RECORD_ROW) {
+                        int row_id = (int) readVarLong(in);
+                        String sortKey = in.readUTF(), label = in.readUTF();
+                        boolean decimal = in.readBoolean();
+                        Row row = addRow(sortKey, label, decimal);
+                        if (row.id != row_id) {
+                            throw new IOException("Out of order row in " + file.getName());
+                        }
+                    } else if (type == RECORD_POINTS) {
+                        Row row = rows.get((int) readVarLong(in));
+                        long[] deltas = new long[(int) readVarLong(in) * 2];
+                        for (int i = 0; i < deltas.length; i++) {
+                            deltas[i] = unzigzag(readVarLong(in));
+                        }
+                        for (int i = 0; i < deltas.length; i += 2) {
+                            row.set((int) (row.lastColumn + deltas[i]), row.lastValue + deltas[i + 1]);
+                        }
+                    } else if (type == RECORD_LENGTH) {
+                        Row row = rows.get((int) readVarLong(in));
+                        row.setLength((int) readVarLong(in));
+                    } else if (type == RECORD_CLEAR) {
+                        Row row = rows.get((int) readVarLong(in));
+                        row.present.clear((int) readVarLong(in));
+                    } else {
+                        throw new IOException("Corrupt series file " + file.getName());
+                    }
+                    end = data.length - bytes.available();
+                }
+            } catch (EOFException ex) {
+                // Drop a partially written trailing record, so the next
+                // commit() appends after the last complete one
+                Log.println_e("Truncated series file " + file.getName());
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.setLength(end);
+                } finally {
+                    raf.close();
+                }
+            }
+        }
+    }
+
+    private static class Row {
+
+        private final int id;
+        private final String sortKey;
+        private final String label;
+        private final boolean decimal;
+        private long[] values = new long[16];
+        private final BitSet present = new BitSet();
+        private int length;
+        private long lastColumn;
+        private long lastValue;
+
+        private Row(int id, String sortKey, String label, boolean decimal) {
+            this.id = id;
+            this.sortKey = sortKey;
+            this.label = label;
+            this.decimal = decimal;
+        }
+
+        private long get(int column) {
+            return column < values.length ? values[column] : 0;
+        }
+
+        private void set(int column, long value) {
+            if (column >= values.length) {
+                values = Arrays.copyOf(values, Math.max(column + 1, values.length * 2));
+            }
+            values[column] = value;
+            present.set(column);
+            lastColumn = column;
+            lastValue = value;
+        }
+
+        private void setLength(int length) {
+            if (length < this.length) {
+                present.clear(length + 1, Math.max(length + 1, present.length()));
+            }
+            this.length = length;
+        }
+    }
+}